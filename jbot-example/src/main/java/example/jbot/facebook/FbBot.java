@@ -88,6 +88,30 @@ public class FbBot extends Bot {
         }
     }
 
+    /**
+     * Registers the messages which are the same for every user, they are serialized once and
+     * then sent with {@link Bot#replyWithTemplate(Event, String)}.
+     */
+    @PostConstruct
+    public void registerTemplates() {
+        Element[] elements = new Element[]{
+                new Element().setTitle("AnimateScroll").setSubtitle("A jQuery Plugin for Animating Scroll.")
+                        .setImageUrl("https://plugins.compzets.com/images/as-logo.png")
+                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
+                        .setUrl("https://plugins.compzets.com/animatescroll/")),
+                new Element().setTitle("Windows on Top").setSubtitle("Keeps a specific Window on Top of all others.")
+                        .setImageUrl("https://plugins.compzets.com/images/compzets-logo.png")
+                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
+                        .setUrl("https://www.compzets.com/view-upload.php?id=702&action=view")),
+                new Element().setTitle("SimpleFill").setSubtitle("Simplest form filler ever.")
+                        .setImageUrl("https://plugins.compzets.com/simplefill/chrome-extension/icon-64.png")
+                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
+                        .setUrl("https://plugins.compzets.com/simplefill/"))
+        };
+        getTemplates().register("list", new Message().setAttachment(new Attachment().setType("template")
+                .setPayload(new Payload().setTemplateType("list").setElements(elements))));
+    }
+
     /**
      * This method is invoked when the user types "Show Buttons" or something which has "button" in it as defined
      * in the {@code pattern}.
@@ -112,22 +136,7 @@ public class FbBot extends Bot {
      */
     @Controller(events = EventType.MESSAGE, pattern = "(?i:list)")
     public void showList(Event event) {
-        Element[] elements = new Element[]{
-                new Element().setTitle("AnimateScroll").setSubtitle("A jQuery Plugin for Animating Scroll.")
-                        .setImageUrl("https://plugins.compzets.com/images/as-logo.png")
-                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
-                        .setUrl("https://plugins.compzets.com/animatescroll/")),
-                new Element().setTitle("Windows on Top").setSubtitle("Keeps a specific Window on Top of all others.")
-                        .setImageUrl("https://plugins.compzets.com/images/compzets-logo.png")
-                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
-                        .setUrl("https://www.compzets.com/view-upload.php?id=702&action=view")),
-                new Element().setTitle("SimpleFill").setSubtitle("Simplest form filler ever.")
-                        .setImageUrl("https://plugins.compzets.com/simplefill/chrome-extension/icon-64.png")
-                        .setDefaultAction(new Button().setType("web_url").setMessengerExtensions(true)
-                        .setUrl("https://plugins.compzets.com/simplefill/"))
-        };
-        reply(event, new Message().setAttachment(new Attachment().setType("template").setPayload(new Payload()
-                .setTemplateType("list").setElements(elements))));
+        replyWithTemplate(event, "list");
     }
 
     /**
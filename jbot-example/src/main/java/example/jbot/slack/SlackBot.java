@@ -7,9 +7,12 @@ import me.ramswaroop.jbot.core.common.Controller;
 import me.ramswaroop.jbot.core.common.EventType;
 import me.ramswaroop.jbot.core.common.JBot;
 import me.ramswaroop.jbot.core.slack.Bot;
+import me.ramswaroop.jbot.core.slack.FileUpload;
+import me.ramswaroop.jbot.core.slack.FileUploadService;
 import me.ramswaroop.jbot.core.slack.models.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.socket.WebSocketSession;
@@ -42,6 +45,9 @@ public class SlackBot extends Bot {
     @Value("${slackBotToken}")
     private String slackToken;
 
+    @Autowired
+    private FileUploadService fileUploadService;
+
     @Override
     public String getSlackToken() {
         return slackToken;
@@ -163,14 +169,17 @@ public class SlackBot extends Bot {
         Scanner in = new Scanner(System.in);
         String input=in.nextLine();
         File file = new File(input);
-        okhttp3.Response response = new Meteoroid.Builder()
+        fileUploadService.upload(new FileUpload.Builder()
             .token(slackToken)
             .channels(event.getChannelId())
-            .uploadFile(file)
-            .build()
-            .post();
-        reply(session, event, "File Shared.");
-        response.close();
+            .file(file.toPath())
+            .build()).whenComplete((uploaded, t) -> {
+                if (t != null) {
+                    reply(session, event, "Could not share the file: " + t.getMessage());
+                } else {
+                    reply(session, event, "File Shared.");
+                }
+            });
     }
 
     /**
@@ -185,13 +194,28 @@ public class SlackBot extends Bot {
         Scanner in = new Scanner(System.in);
         String input=in.nextLine();
         File file = new File(input);
-        okhttp3.Response response = new Meteoroid.Builder()
+        fileUploadService.upload(new FileUpload.Builder()
             .token(slackToken)
             .channels(event.getChannelId())
-            .uploadFile(file)
-            .build()
-            .post();
-        reply(session, event, "excel file received!");
+            .file(file.toPath())
+            .build()).whenComplete((uploaded, t) -> {
+                if (t != null) {
+                    reply(session, event, "Could not share the excel file: " + t.getMessage());
+                } else {
+                    reply(session, event, "excel file received!");
+                    replyWithCell(session, event, input);
+                }
+            });
+    }
+
+    /**
+     * Reply with the content of the cell at the (row,column) given in the text of the event, if any.
+     *
+     * @param session
+     * @param event
+     * @param input location of the excel file
+     */
+    private void replyWithCell(WebSocketSession session, Event event, String input) {
         String result;
         if(event.getText().contains(",")){
             String x="";
@@ -226,7 +250,6 @@ public class SlackBot extends Bot {
             }
             reply(session, event, "the element in the " + x + "line " + y + "column is: "+result);
         }
-        response.close();
     }
 
     /**
@@ -138,6 +138,14 @@ public class FbBotTest {
             return "page_access_token";
         }
 
+        /**
+         * The tests look for the replies as soon as the webhook answers.
+         */
+        @Override
+        public boolean isWaitForProcessing() {
+            return true;
+        }
+
         @Controller(events = EventType.POSTBACK, pattern = "^(?i)(hi|hello|hey)$")
         public void onReceivePostback(Event event) {
             reply(event, "Postback with payload `hi|hello|hey` received from facebook.");
@@ -6,6 +6,7 @@ import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,13 +36,21 @@ public abstract class BaseBot {
      * A List of Queues with each Queue holding all methods for a particular conversation. Methods
      * can be chained into a conversation by {@link Controller#next()}.
      */
-    protected final Map<String, Queue<MethodWrapper>> conversationQueueMap = new HashMap<>();
+    protected final Map<String, Queue<MethodWrapper>> conversationQueueMap = new ConcurrentHashMap<>();
 
     /**
      * Construct a map of all the controller methods to handle RTM Events.
      */
     public BaseBot() {
         Method[] methods = this.getClass().getMethods();
+        for (Method method : methods) { // first, as getMethods() returns the methods in no particular order
+            if (method.isAnnotationPresent(Controller.class)) {
+                String next = method.getAnnotation(Controller.class).next();
+                if (!StringUtils.isEmpty(next)) {
+                    conversationMethodNames.add(next);
+                }
+            }
+        }
         for (Method method : methods) {
             if (method.isAnnotationPresent(Controller.class)) {
                 Controller controller = method.getAnnotation(Controller.class);
@@ -50,10 +59,6 @@ public abstract class BaseBot {
                 int patternFlags = controller.patternFlags();
                 String next = controller.next();
 
-                if (!StringUtils.isEmpty(next)) {
-                    conversationMethodNames.add(next);
-                }
-
                 MethodWrapper methodWrapper = new MethodWrapper();
                 methodWrapper.setMethod(method);
                 methodWrapper.setPattern(pattern);
@@ -102,10 +107,13 @@ public abstract class BaseBot {
      * received from Slack/Facebook and also filter out the methods in {@code methodWrappers} whose
      * {@link Controller#pattern()} do not match.
      *
+     * Events may be handled concurrently, so the {@link Matcher} is never stored on the shared
+     * {@link MethodWrapper}, a copy holding it is returned for this invocation only.
+     *
      * @param text is the message from the user
      * @param methodWrappers
-     * @return the MethodWrapper whose method pattern match with that of the slack message received, {@code null} if no
-     * such method is found.
+     * @return a copy of the MethodWrapper whose method pattern match with that of the slack message received,
+     * holding the {@link Matcher} of {@code text}, {@code null} if no such method is found.
      */
     protected MethodWrapper getMethodWithMatchingPatternAndFilterUnmatchedMethods(String text, List<MethodWrapper> methodWrappers) {
         if (methodWrappers != null) {
@@ -124,8 +132,7 @@ public abstract class BaseBot {
                     Pattern p = Pattern.compile(pattern, patternFlags);
                     Matcher m = p.matcher(text);
                     if (m.find()) {
-                        methodWrapper.setMatcher(m);
-                        return methodWrapper;
+                        return methodWrapper.withMatcher(m);
                     } else {
                         listIterator.remove();  // remove methods from the original list whose pattern do not match
                     }
@@ -202,6 +209,20 @@ public abstract class BaseBot {
             this.next = next;
         }
 
+        /**
+         * @param matcher result of matching {@link #getPattern()} against the text of an event
+         * @return a copy of this wrapper holding {@code matcher}
+         */
+        MethodWrapper withMatcher(Matcher matcher) {
+            MethodWrapper copy = new MethodWrapper();
+            copy.setMethod(method);
+            copy.setPattern(pattern);
+            copy.setPatternFlags(patternFlags);
+            copy.setNext(next);
+            copy.setMatcher(matcher);
+            return copy;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -9,6 +9,8 @@ import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author ramswaroop
  * @version 05/06/2016
@@ -19,10 +21,21 @@ public class BotWebSocketHandler extends AbstractWebSocketHandler {
 
     private Bot bot;
 
+    /**
+     * Executor on which events are dispatched to the bot, {@code null} to dispatch
+     * on the web socket container thread.
+     */
+    private Executor dispatcher;
+
     public BotWebSocketHandler(Bot bot) {
         this.bot = bot;
     }
 
+    public BotWebSocketHandler(Bot bot, Executor dispatcher) {
+        this.bot = bot;
+        this.dispatcher = dispatcher;
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         bot.afterConnectionEstablished(session);
@@ -30,7 +43,11 @@ public class BotWebSocketHandler extends AbstractWebSocketHandler {
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        bot.handleTextMessage(session, message);
+        if (dispatcher != null) {
+            dispatcher.execute(() -> bot.handleTextMessage(session, message));
+        } else {
+            bot.handleTextMessage(session, message);
+        }
     }
 
     @Override
@@ -0,0 +1,197 @@
+package me.ramswaroop.jbot.core.common;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Map holding at most {@code maxEntries} entries, evicting with the CLOCK (second chance) algorithm when
+ * full. Entries sit in the slots of a ring, a lookup only sets the referenced bit of the entry, and the
+ * hand of the clock sweeps the ring to find an entry not referenced since its last pass, clearing the bits
+ * on its way. Entries in use keep getting a second chance, so hot entries survive a scan of cold ones,
+ * which is close enough to a LRU.
+ * <p>
+ * Lookups are lock free. Inserts and removals take a lock, they are far less frequent than lookups in a
+ * cache which is any use.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @author agent
+ * @since 4.1.2
+ */
+public class BoundedCache<K, V> {
+
+    private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final Node<K, V>[] ring;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int hand;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries maximum number of entries kept
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BoundedCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.ring = (Node<K, V>[]) new Node[maxEntries];
+        this.freeSlots = new int[maxEntries];
+        resetFreeSlots();
+    }
+
+    /**
+     * @param key the key
+     * @return the value, {@code null} if not cached
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Put {@code value}, evicting an entry if the cache is full.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            node.value = value;
+            node.referenced = true;
+        } else {
+            insert(key, value);
+        }
+    }
+
+    /**
+     * Put {@code value} unless a value is cached for {@code key} already.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the value cached already, {@code null} if {@code value} was put
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            node.referenced = true;
+            return node.value;
+        }
+        insert(key, value);
+        return null;
+    }
+
+    /**
+     * @param key the key
+     * @return the value removed, {@code null} if none was cached
+     */
+    public synchronized V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        release(node);
+        return node.value;
+    }
+
+    /**
+     * @param key   the key
+     * @param value the value expected
+     * @return {@code true} if {@code value} was cached for {@code key} and is removed
+     */
+    public synchronized boolean remove(K key, V value) {
+        Node<K, V> node = map.get(key);
+        if (node == null || !Objects.equals(node.value, value)) {
+            return false;
+        }
+        map.remove(key);
+        release(node);
+        return true;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        Arrays.fill(ring, null);
+        resetFreeSlots();
+    }
+
+    /**
+     * @return number of entries cached.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void insert(K key, V value) {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : evict();
+        Node<K, V> node = new Node<>(key, value, slot);
+        ring[slot] = node;
+        map.put(key, node);
+    }
+
+    /**
+     * Sweep the ring from the hand until an entry not referenced since the last pass is found. Every entry
+     * passed loses its referenced bit, so the sweep ends within two turns.
+     *
+     * @return the slot of the evicted entry
+     */
+    private int evict() {
+        while (true) {
+            Node<K, V> node = ring[hand];
+            int slot = hand;
+            hand = (hand + 1) % ring.length;
+            if (node.referenced) {
+                node.referenced = false;
+            } else {
+                map.remove(node.key);
+                evictions.increment();
+                return slot;
+            }
+        }
+    }
+
+    private void release(Node<K, V> node) {
+        if (ring[node.slot] == node) {
+            ring[node.slot] = null;
+            freeSlots[freeCount++] = node.slot;
+        }
+    }
+
+    private void resetFreeSlots() {
+        freeCount = 0;
+        for (int slot = ring.length - 1; slot >= 0; slot--) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final int slot;
+        volatile V value;
+        volatile boolean referenced;
+
+        Node(K key, V value, int slot) {
+            this.key = key;
+            this.value = value;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package me.ramswaroop.jbot.core.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel. Timeouts are hashed into a fixed number of buckets by their deadline and one
+ * thread advances the wheel a bucket per tick, so scheduling and cancelling are O(1) and any number of
+ * timeouts (pings, ack timeouts, etc.) can be driven by a single thread. Timeouts fire with an accuracy
+ * of one tick.
+ * <p>
+ * NOTE: Tasks run on the timer thread and must return quickly, hand anything slow off to an executor.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class HashedWheelTimer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final String name;
+    private final long tickNanos;
+    private final LinkedList<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private volatile Thread workerThread;
+    private volatile long startTime;
+    private volatile boolean stopped;
+    private long tick;
+
+    /**
+     * @param name          name of the timer thread
+     * @param tickDuration  duration of one tick
+     * @param unit          unit of {@code tickDuration}
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 2) - 1) << 1;
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new LinkedList[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new LinkedList<>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule {@code task} to run once after {@code delay}.
+     *
+     * @param task  to run on the timer thread
+     * @param delay delay after which to run the task
+     * @param unit  unit of {@code delay}
+     * @return handle to cancel the task
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        start();
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(delay) - startTime);
+        if (stopped) {
+            timeout.cancel();
+        } else {
+            newTimeouts.add(timeout);
+        }
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if (workerThread != null || stopped) return;
+        startTime = System.nanoTime();
+        workerThread = new Thread(this::run, name);
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    /**
+     * Stop the timer thread for good, pending timeouts never fire.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (workerThread != null) {
+            workerThread.interrupt();
+            workerThread = null;
+        }
+    }
+
+    private void run() {
+        while (workerThread == Thread.currentThread()) {
+            long sleepNanos = tickNanos * (tick + 1) - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferNewTimeouts();
+            expireTimeouts(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) continue;
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick); // deadlines in the past go to the current bucket
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(LinkedList<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCancelled()) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public static final class Timeout {
+        private static final int INIT = 0, CANCELLED = 1, EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private long remainingRounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return {@code true} if the task was cancelled, {@code false} if it had run or been cancelled already.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(INIT, CANCELLED);
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) return;
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error("Error running timer task: ", t);
+            }
+        }
+    }
+}
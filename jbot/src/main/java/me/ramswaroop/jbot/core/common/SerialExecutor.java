@@ -0,0 +1,65 @@
+package me.ramswaroop.jbot.core.common;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes tasks one after the other, in submission order, on a (shared) delegate executor. Many
+ * serial executors can share one thread pool while each of them still sees its tasks run in order,
+ * for example one per Slack workspace or per Facebook user.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SerialExecutor implements Executor {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor executor;
+    private Runnable active;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * @return {@code true} if no task is running or waiting to run.
+     */
+    public synchronized boolean isIdle() {
+        return active == null && tasks.isEmpty();
+    }
+
+    /**
+     * @return number of tasks waiting to run.
+     */
+    public synchronized int getPendingTasks() {
+        return tasks.size();
+    }
+
+    private synchronized void scheduleNext() {
+        if ((active = tasks.poll()) != null) {
+            try {
+                executor.execute(active);
+            } catch (RejectedExecutionException e) {
+                active = null;
+                tasks.clear();
+                throw e;
+            }
+        }
+    }
+}
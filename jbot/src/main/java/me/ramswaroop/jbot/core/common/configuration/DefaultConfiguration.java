@@ -1,26 +1,88 @@
 package me.ramswaroop.jbot.core.common.configuration;
 
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class DefaultConfiguration {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultConfiguration.class);
 
     /**
-     * @return a new rest template object without any additional configuration if there are no other RestTemplate beans,
+     * Maximum number of calls in flight to one host, e.g. graph.facebook.com or slack.com.
+     */
+    @Value("${httpMaxConnectionsPerHost:20}")
+    private int maxConnectionsPerHost = 20;
+
+    /**
+     * Maximum time a call waits for a connection to its host.
+     */
+    @Value("${httpConnectionWaitTimeoutMillis:10000}")
+    private long connectionWaitTimeoutMillis = 10000;
+
+    /**
+     * Time an idle connection is kept alive.
+     */
+    @Value("${httpKeepAliveMillis:300000}")
+    private long keepAliveMillis = 300000;
+
+    @Value("${httpConnectTimeoutMillis:5000}")
+    private long connectTimeoutMillis = 5000;
+
+    @Value("${httpReadTimeoutMillis:30000}")
+    private long readTimeoutMillis = 30000;
+
+    /**
+     * @return the limiter of calls in flight per host, exposes the time calls wait for a connection
+     */
+    @ConditionalOnMissingBean
+    @Bean
+    public HostConnectionLimiter hostConnectionLimiter() {
+        return new HostConnectionLimiter(maxConnectionsPerHost, connectionWaitTimeoutMillis);
+    }
+
+    /**
+     * @param hostConnectionLimiter limiter of calls in flight per host
+     * @return a http client keeping connections alive in a pool, speaking HTTP/2 where the server does,
+     * if there are no other OkHttpClient beans, otherwise user-defined bean will be used
+     */
+    @ConditionalOnMissingBean
+    @Bean
+    public OkHttpClient okHttpClient(HostConnectionLimiter hostConnectionLimiter) {
+        return new OkHttpClient.Builder()
+                // the bot mostly talks to a single host, so it keeps as many idle connections as calls to a host
+                .connectionPool(new ConnectionPool(maxConnectionsPerHost, keepAliveMillis, TimeUnit.MILLISECONDS))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(hostConnectionLimiter)
+                .build();
+    }
+
+    /**
+     * @param okHttpClient pooled http client
+     * @return a new rest template backed by the pooled http client if there are no other RestTemplate beans,
      * otherwise user-defined bean will be used
      */
     @ConditionalOnMissingBean
     @Bean
-    public RestTemplate restTemplate() {
+    public RestTemplate restTemplate(OkHttpClient okHttpClient) {
         LOGGER.info("There are no any rest template beans defined, creating default rest template...");
 
-        return new RestTemplate();
+        return new RestTemplate(new OkHttp3ClientHttpRequestFactory(okHttpClient));
     }
 
 }
@@ -0,0 +1,144 @@
+package me.ramswaroop.jbot.core.common.configuration;
+
+import me.ramswaroop.jbot.core.common.LatencyHistogram;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OkHttp interceptor bounding the number of calls in flight per host. OkHttp's dispatcher only limits
+ * asynchronous calls, whereas {@link org.springframework.web.client.RestTemplate} makes synchronous ones,
+ * so without this a burst of Facebook sends would open as many connections as there are threads.
+ * <p>
+ * The connection of a call is in use until its response body is read and closed, so the slot is only
+ * given back when the body is closed, or right away if the call fails or has no body.
+ * <p>
+ * A call waits for a free slot at most {@code maxWaitMillis}, the time spent waiting is recorded so that
+ * an undersized pool shows up in {@link #getWaitLatencies()}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class HostConnectionLimiter implements Interceptor {
+
+    private final int maxPerHost;
+    private final long maxWaitMillis;
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram waitLatencies = new LatencyHistogram();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * @param maxPerHost    maximum number of calls in flight per host
+     * @param maxWaitMillis maximum time a call waits for a slot before failing
+     */
+    public HostConnectionLimiter(int maxPerHost, long maxWaitMillis) {
+        this.maxPerHost = maxPerHost;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Semaphore semaphore = hosts.computeIfAbsent(chain.request().url().host(), h -> new Semaphore(maxPerHost));
+        long start = System.nanoTime();
+        try {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timedOut.increment();
+                throw new InterruptedIOException("No connection to " + chain.request().url().host()
+                        + " available within " + maxWaitMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection");
+        }
+        waitLatencies.record(System.nanoTime() - start);
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException | Error e) {
+            semaphore.release();
+            throw e;
+        }
+        if (response.body() == null) {
+            semaphore.release();
+            return response;
+        }
+        return response.newBuilder().body(new ReleasingBody(response.body(), semaphore)).build();
+    }
+
+    /**
+     * @return time calls waited for a free slot.
+     */
+    public LatencyHistogram getWaitLatencies() {
+        return waitLatencies;
+    }
+
+    /**
+     * @return number of calls which failed because no slot got free in time.
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @param host the host name
+     * @return number of calls in flight to {@code host}.
+     */
+    public int getInFlight(String host) {
+        Semaphore semaphore = hosts.get(host);
+        return semaphore == null ? 0 : maxPerHost - semaphore.availablePermits();
+    }
+
+    /**
+     * Response body giving the slot of its call back once closed.
+     */
+    private static class ReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        ReleasingBody(ResponseBody delegate, Semaphore semaphore) {
+            this.delegate = delegate;
+            AtomicBoolean released = new AtomicBoolean();
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            semaphore.release();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.facebook.models.Attachment;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+import me.ramswaroop.jbot.core.facebook.models.Payload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Uploads the media the bot sends with the
+ * <a href="https://developers.facebook.com/docs/messenger-platform/reference/attachment-upload-api">Attachment
+ * Upload API</a> and remembers their {@code attachment_id}, so that media sent again and again are sent by id
+ * instead of having facebook fetch the url every time.
+ * <p>
+ * Urls are keyed by the url, local files by the SHA-256 of their content. The ids are appended to a file as
+ * they are known and loaded from it on start, so they survive restarts. Attachment ids are specific to a page.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class AttachmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentCache.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Attachment types which carry media, templates can't be uploaded.
+     */
+    private static final Set<String> MEDIA_TYPES = new HashSet<>(Arrays.asList("image", "audio", "video", "file"));
+
+    private final RestTemplate restTemplate;
+    private final String uploadUrl;
+    private final Path file;
+
+    private final Map<String, String> attachmentIds = new ConcurrentHashMap<>();
+    private final Set<String> uploading = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder uploads = new LongAdder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "fb-attachment-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param restTemplate to call the Attachment Upload API with
+     * @param uploadUrl    Attachment Upload API url with the page access token
+     * @param file         where the attachment ids are kept
+     * @throws IOException if the file exists but can't be read
+     */
+    public AttachmentCache(RestTemplate restTemplate, String uploadUrl, Path file) throws IOException {
+        this.restTemplate = restTemplate;
+        this.uploadUrl = uploadUrl;
+        this.file = file;
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    attachmentIds.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            logger.debug("Loaded {} attachment ids from {}", attachmentIds.size(), file);
+        }
+    }
+
+    /**
+     * Send the media attachments of {@code message} by id when they were uploaded already. Media not
+     * uploaded yet are sent by url this time and uploaded in the background for the next times.
+     *
+     * @param message to send
+     */
+    public void rewrite(Message message) {
+        if (message.getAttachment() != null) {
+            message.setAttachment(rewrite(message.getAttachment()));
+        }
+        Attachment[] attachments = message.getAttachments();
+        if (attachments != null) {
+            for (int i = 0; i < attachments.length; i++) {
+                attachments[i] = rewrite(attachments[i]);
+            }
+        }
+    }
+
+    private Attachment rewrite(Attachment attachment) {
+        Payload payload = attachment.getPayload();
+        if (!MEDIA_TYPES.contains(attachment.getType()) || payload == null || payload.getUrl() == null
+                || payload.getAttachmentId() != null) {
+            return attachment;
+        }
+        String key = "url:" + payload.getUrl();
+        String attachmentId = attachmentIds.get(key);
+        if (attachmentId != null) {
+            hits.increment();
+            return new Attachment().setType(attachment.getType())
+                    .setPayload(new Payload().setAttachmentId(attachmentId));
+        }
+        if (uploading.add(key)) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        Attachment upload = new Attachment().setType(attachment.getType())
+                                .setPayload(new Payload().setUrl(payload.getUrl()).setReusable(true));
+                        put(key, upload(Collections.singletonMap("message",
+                                Collections.singletonMap("attachment", upload))));
+                    } catch (Exception e) {
+                        logger.warn("Error uploading attachment {}: {}", payload.getUrl(), e.getMessage());
+                    } finally {
+                        uploading.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                uploading.remove(key);
+            }
+        }
+        return attachment;
+    }
+
+    /**
+     * Upload a local file, unless a file with the same content was uploaded already.
+     *
+     * @param path file to upload
+     * @param type of the attachment, {@code image}, {@code audio}, {@code video} or {@code file}
+     * @return the {@code attachment_id} to send the file with
+     * @throws IOException if the file can't be read or facebook did not answer an id
+     */
+    public String upload(Path path, String type) throws IOException {
+        String key = "sha256:" + sha256(path);
+        String attachmentId = attachmentIds.get(key);
+        if (attachmentId != null) {
+            hits.increment();
+            return attachmentId;
+        }
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("message", mapper.writeValueAsString(Collections.singletonMap("attachment",
+                new Attachment().setType(type).setPayload(new Payload().setReusable(true)))));
+        parts.add("filedata", new FileSystemResource(path.toFile()));
+        attachmentId = upload(parts);
+        put(key, attachmentId);
+        return attachmentId;
+    }
+
+    private String upload(Object request) throws IOException {
+        JsonNode response = mapper.readTree(restTemplate.postForObject(uploadUrl, request, String.class));
+        String attachmentId = response == null ? null : response.path("attachment_id").asText(null);
+        if (attachmentId == null) {
+            throw new IOException("No attachment_id in response: " + response);
+        }
+        uploads.increment();
+        return attachmentId;
+    }
+
+    /**
+     * Save the id, then use it, so that every id in use is found in the file on the next start.
+     */
+    private synchronized void put(String key, String attachmentId) throws IOException {
+        Files.write(file, Collections.singletonList(key + "\t" + attachmentId), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        attachmentIds.put(key, attachmentId);
+    }
+
+    private static String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // digested as it's read
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return number of attachment ids known.
+     */
+    public int size() {
+        return attachmentIds.size();
+    }
+
+    /**
+     * @return number of attachments sent by id instead of being uploaded again.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of attachments uploaded.
+     */
+    public long getUploads() {
+        return uploads.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,293 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the Send API requests of many recipients together in
+ * <a href="https://developers.facebook.com/docs/graph-api/making-multiple-requests">Graph API batch requests</a>
+ * of up to 50 requests. A batch goes out as soon as it's full, or a few milliseconds after its first request
+ * was queued, and the response of each request completes the future of its caller.
+ * <p>
+ * The requests of a batch may be executed in any order, so a batch holds at most one request per recipient
+ * and the next request to a recipient waits for the batch of the previous one to be answered. Messages to
+ * a recipient are thus delivered in the order they were sent.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class BatchSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchSender.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Maximum number of requests the Graph API accepts in a batch.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
+    private final RestTemplate restTemplate;
+    private final String batchUrl;
+    private final String pageAccessToken;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+
+    private final Map<String, Queue<Request>> queues = new HashMap<>();
+    /**
+     * Recipients with a request queued and none in flight, in the order they became ready.
+     */
+    private final Set<String> ready = new LinkedHashSet<>();
+    private final Set<String> inFlight = new LinkedHashSet<>();
+    private boolean flushScheduled;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param restTemplate    to call the Graph API with
+     * @param batchUrl        url of the Graph API root, batches are posted to it
+     * @param pageAccessToken page access token
+     * @param maxBatchSize    maximum number of requests in a batch, at most {@link #MAX_BATCH_SIZE}
+     * @param lingerMillis    time a batch waits for more requests before it's sent
+     */
+    public BatchSender(RestTemplate restTemplate, String batchUrl, String pageAccessToken, int maxBatchSize,
+                       long lingerMillis) {
+        this(restTemplate, batchUrl, pageAccessToken, maxBatchSize, lingerMillis,
+                Executors.newScheduledThreadPool(4, r -> {
+                    Thread thread = new Thread(r, "fb-batch-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    BatchSender(RestTemplate restTemplate, String batchUrl, String pageAccessToken, int maxBatchSize,
+                long lingerMillis, ScheduledExecutorService executor) {
+        this.restTemplate = restTemplate;
+        this.batchUrl = batchUrl;
+        this.pageAccessToken = pageAccessToken;
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, MAX_BATCH_SIZE));
+        this.lingerMillis = lingerMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a Send API request.
+     *
+     * @param event the message or sender action to send
+     * @return future completed with the response to the request, an error response included, or failed if
+     * the batch could not be sent
+     */
+    public CompletableFuture<ResponseEntity<String>> send(Event event) {
+        return send(event, null);
+    }
+
+    /**
+     * Queue a Send API request whose message is serialized already, e.g. a rendered template.
+     *
+     * @param event   the request without its message
+     * @param message the message as json, {@code null} to send the message of {@code event}
+     * @return future completed with the response to the request, an error response included, or failed if
+     * the batch could not be sent
+     */
+    public CompletableFuture<ResponseEntity<String>> send(Event event, String message) {
+        String recipientId = event.getRecipient() != null ? event.getRecipient().getId() : null;
+        if (recipientId == null) {
+            recipientId = "";
+        }
+        Request request;
+        try {
+            request = new Request(message == null ? formBody(event)
+                    : formBody(event) + "&message=" + URLEncoder.encode(message, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        synchronized (this) {
+            queues.computeIfAbsent(recipientId, k -> new ArrayDeque<>()).add(request);
+            if (!inFlight.contains(recipientId)) {
+                ready.add(recipientId);
+            }
+            scheduleFlush();
+        }
+        return request.future;
+    }
+
+    /**
+     * Flush now if a batch is full, otherwise once the linger time is over. Call with the lock held.
+     */
+    private void scheduleFlush() {
+        try {
+            if (ready.size() >= maxBatchSize) {
+                executor.execute(this::flush);
+            } else if (!ready.isEmpty() && !flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(() -> {
+                    synchronized (this) {
+                        flushScheduled = false;
+                    }
+                    flush();
+                }, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.warn("Batch sender stopped, requests not sent.");
+        }
+    }
+
+    private void flush() {
+        Map<String, Request> batch = new HashMap<>();
+        List<String> recipientIds = new ArrayList<>();
+        synchronized (this) {
+            Iterator<String> iterator = ready.iterator();
+            while (iterator.hasNext() && recipientIds.size() < maxBatchSize) {
+                String recipientId = iterator.next();
+                iterator.remove();
+                Request request = queues.get(recipientId).poll();
+                if (request == null) continue;
+                inFlight.add(recipientId);
+                recipientIds.add(recipientId);
+                batch.put(recipientId, request);
+            }
+        }
+        if (recipientIds.isEmpty()) {
+            return;
+        }
+        try {
+            send(recipientIds, batch);
+        } finally {
+            synchronized (this) {
+                for (String recipientId : recipientIds) {
+                    inFlight.remove(recipientId);
+                    Queue<Request> queue = queues.get(recipientId);
+                    if (queue.isEmpty()) {
+                        queues.remove(recipientId);
+                    } else {
+                        ready.add(recipientId);
+                    }
+                }
+                scheduleFlush();
+            }
+        }
+    }
+
+    private void send(List<String> recipientIds, Map<String, Request> batch) {
+        List<Request> sent = new ArrayList<>(recipientIds.size());
+        try {
+            ArrayNode operations = mapper.createArrayNode();
+            for (String recipientId : recipientIds) {
+                Request request = batch.get(recipientId);
+                sent.add(request);
+                operations.addObject()
+                        .put("method", "POST")
+                        .put("relative_url", "me/messages")
+                        .put("body", request.body);
+            }
+            MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+            params.set("access_token", pageAccessToken);
+            params.set("include_headers", "false");
+            params.set("batch", operations.toString());
+            JsonNode responses = mapper.readTree(restTemplate.postForObject(batchUrl, params, String.class));
+            batches.increment();
+            requests.add(sent.size());
+            for (int i = 0; i < sent.size(); i++) {
+                JsonNode response = responses == null ? null : responses.get(i);
+                if (response == null || response.isNull()) {
+                    // fb answers null for requests it did not run, e.g. when the batch timed out
+                    sent.get(i).future.complete(new ResponseEntity<>(HttpStatus.GATEWAY_TIMEOUT));
+                } else {
+                    // the code as is, HttpStatus has no constant for some codes fb answers
+                    sent.get(i).future.complete(ResponseEntity.status(response.path("code").asInt(500))
+                            .body(response.path("body").asText(null)));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error sending batch of {} requests: ", sent.size(), e);
+            for (Request request : sent) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * The body of a batched request is form encoded, objects are sent as JSON strings.
+     */
+    private static String formBody(Event event) throws UnsupportedEncodingException {
+        StringBuilder body = new StringBuilder();
+        Iterator<Map.Entry<String, JsonNode>> fields = ((ObjectNode) mapper.valueToTree(event)).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isNull()) continue;
+            if (body.length() > 0) body.append('&');
+            String value = field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString();
+            body.append(field.getKey()).append('=').append(URLEncoder.encode(value, "UTF-8"));
+        }
+        return body.toString();
+    }
+
+    /**
+     * @return number of batches sent.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return number of requests sent in batches.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests waiting for a batch.
+     */
+    public synchronized int getQueued() {
+        int queued = 0;
+        for (Queue<Request> queue : queues.values()) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class Request {
+        final String body;
+        final CompletableFuture<ResponseEntity<String>> future = new CompletableFuture<>();
+
+        Request(String body) {
+            this.body = body;
+        }
+    }
+}
@@ -3,25 +3,46 @@ package me.ramswaroop.jbot.core.facebook;
 import me.ramswaroop.jbot.core.common.BaseBot;
 import me.ramswaroop.jbot.core.common.Controller;
 import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.common.SerialExecutor;
 import me.ramswaroop.jbot.core.facebook.models.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 
 /**
@@ -32,15 +53,110 @@ public abstract class Bot extends BaseBot {
 
     private static final Logger logger = LoggerFactory.getLogger(Bot.class);
 
+    /**
+     * What the webhook does with events which do not fit in the queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Answer 503 without queueing any event of the callback, so that Facebook delivers it again later.
+         */
+        REJECT,
+        /**
+         * Drop the events which do not fit, Facebook won't deliver them again.
+         */
+        DROP,
+        /**
+         * Process the events which do not fit on the request thread, slowing Facebook down.
+         */
+        CALLER_RUNS
+    }
+
     private String fbSendUrl;
     private String fbMessengerProfileUrl;
 
+    /**
+     * Secret of the facebook app, the signature of the callbacks is verified with it when set.
+     */
+    @Value("${fbAppSecret:}")
+    private String appSecret = "";
+
+    /**
+     * Whether the webhook answers once the events are processed instead of as soon as they are queued.
+     * Facebook expects an answer within 20 seconds, slow controllers then make it deliver the events again.
+     */
+    @Value("${fbWaitForProcessing:false}")
+    boolean waitForProcessing = false;
+
+    /**
+     * Number of threads processing the events, the events of different senders are processed in parallel.
+     */
+    @Value("${fbWorkerThreads:8}")
+    int workerThreads = 8;
+
+    /**
+     * Maximum number of events queued or being processed, the overflow policy applies to the events beyond.
+     */
+    @Value("${fbQueueCapacity:10000}")
+    int queueCapacity = 10000;
+
+    @Value("${fbOverflowPolicy:REJECT}")
+    OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+
+    /**
+     * Time a typing indicator is held back, it's not sent at all if the reply is sent within it.
+     */
+    @Value("${fbTypingCoalesceMillis:300}")
+    private long typingCoalesceMillis = 300;
+
+    /**
+     * Whether replies are sent in Graph API batch requests, see {@link BatchSender}.
+     */
+    @Value("${fbBatchSend:false}")
+    private boolean batchSend = false;
+
+    /**
+     * Time a batch waits for more replies before it's sent.
+     */
+    @Value("${fbBatchLingerMillis:5}")
+    private long batchLingerMillis = 5;
+
+    /**
+     * File the attachment ids of the media sent are kept in, empty to always send media by url.
+     */
+    @Value("${fbAttachmentCacheFile:}")
+    private String attachmentCacheFile = "";
+
+    /**
+     * Maximum number of broadcast messages in flight.
+     */
+    @Value("${fbBroadcastConcurrency:8}")
+    private int broadcastConcurrency = 8;
+
+    private CallbackReader callbackReader;
+    private Broadcaster broadcaster;
+    private AttachmentCache attachmentCache;
+    private TemplateRegistry templates;
+    private TypingIndicators typingIndicators;
+    private BatchSender batchSender;
+
+    private Semaphore queuePermits;
+    private ExecutorService workerPool;
+    private SerialExecutor[] senderExecutors;
+    private final LongAdder droppedEvents = new LongAdder();
+
     @Autowired
     protected RestTemplate restTemplate;
 
     @Autowired
     protected FbApiEndpoints fbApiEndpoints;
 
+    /**
+     * Shared by all the facebook bots, a bot without one sends with a scheduler of its own.
+     */
+    @Autowired(required = false)
+    protected OutboundScheduler outboundScheduler;
+    private OutboundScheduler ownOutboundScheduler;
+
     @PostConstruct
     private void constructFbSendUrl() {
         fbSendUrl = fbApiEndpoints.getFbSendUrl().replace("{PAGE_ACCESS_TOKEN}", getPageAccessToken());
@@ -64,6 +180,25 @@ public abstract class Bot extends BaseBot {
      */
     public abstract String getPageAccessToken();
 
+    /**
+     * Override this to take the app secret from elsewhere than the {@code fbAppSecret} property.
+     *
+     * @return facebook app secret, {@code null} or empty to accept callbacks without checking their signature
+     */
+    public String getAppSecret() {
+        return appSecret;
+    }
+
+    /**
+     * Override this to decide elsewhere than in the {@code fbWaitForProcessing} property.
+     *
+     * @return {@code true} if the webhook answers once the events are processed, {@code false} if it answers
+     * as soon as they are queued
+     */
+    public boolean isWaitForProcessing() {
+        return waitForProcessing;
+    }
+
     /**
      * @param mode
      * @param verifyToken
@@ -82,57 +217,98 @@ public abstract class Bot extends BaseBot {
     }
 
     /**
-     * Add webhook endpoint
+     * Add webhook endpoint. The body is read once, checking its {@code X-Hub-Signature-256} as it's read,
+     * and its events are then parsed one at a time, see {@link CallbackReader}. Each event is handed to the
+     * executor of its sender as soon as it's parsed, so the events of different senders are processed in
+     * parallel by a pool of workers and those of a sender in order. The endpoint answers as soon as the
+     * events are queued, so that Facebook's 20 seconds deadline is met whatever the controllers do, or once
+     * they are processed if {@link #isWaitForProcessing()}.
      *
-     * @param callback
-     * @return 200 OK response
+     * @param signature value of the {@code X-Hub-Signature-256} header
+     * @param body      of the request
+     * @return 200 OK response, 403 if the signature does not match, 503 if the queue is full and the overflow
+     * policy is {@link OverflowPolicy#REJECT}
      */
     @ResponseBody
     @PostMapping("/webhook")
-    public final ResponseEntity setupWebhookEndpoint(@RequestBody Callback callback) {
+    public final ResponseEntity<String> setupWebhookEndpoint(
+            @RequestHeader(value = "X-Hub-Signature-256", required = false) String signature, InputStream body) {
+        byte[] callback;
+        try {
+            callback = getCallbackReader().read(body, signature);
+        } catch (IOException e) {
+            logger.error("Error reading fb webhook request: ", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (callback == null) {
+            logger.warn("Signature of callback from fb does not match, ignoring it");
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        try {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Callback from fb: {}", new String(callback, StandardCharsets.UTF_8));
+            }
+            if (!isWaitForProcessing()) {
+                int count = overflowPolicy == OverflowPolicy.REJECT ? getCallbackReader().countEvents(callback) : 0;
+                // Checks this is an event from a page subscription
+                return enqueue(count, handler -> getCallbackReader().readEvents(callback, handler));
+            }
+            Phaser pending = new Phaser(1);
+            try {
+                if (!getCallbackReader().readEvents(callback, event -> submit(event, pending))) {
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                }
+            } finally {
+                pending.arriveAndAwaitAdvance();
+            }
+        } catch (IOException e) {
+            logger.error("Invalid callback from fb: ", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        // fb advises to send a 200 response within 20 secs
+        return ResponseEntity.ok("EVENT_RECEIVED");
+    }
+
+    /**
+     * Process a callback already parsed, like the webhook endpoint does.
+     *
+     * @param callback from facebook
+     * @return 200 OK response, 503 if the queue is full and the overflow policy is {@link OverflowPolicy#REJECT}
+     */
+    public final ResponseEntity<String> setupWebhookEndpoint(Callback callback) {
         try {
             // Checks this is an event from a page subscription
             if (!callback.getObject().equals("page")) {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
             logger.debug("Callback from fb: {}", callback);
-            for (Entry entry : callback.getEntry()) {
-                if (entry.getMessaging() != null) {
-                    for (Event event : entry.getMessaging()) {
-                        if (event.getMessage() != null) {
-                            if (event.getMessage().isEcho() != null &&
-                                    event.getMessage().isEcho()) {
-                                event.setType(EventType.MESSAGE_ECHO);
-                            } else if (event.getMessage().getQuickReply() != null) {
-                                event.setType(EventType.QUICK_REPLY);
-                            } else {
-                                event.setType(EventType.MESSAGE);
-                                // send typing on indicator to create a conversational experience
-                                sendTypingOnIndicator(event.getSender());
-                            }
-                        } else if (event.getDelivery() != null) {
-                            event.setType(EventType.MESSAGE_DELIVERED);
-                        } else if (event.getRead() != null) {
-                            event.setType(EventType.MESSAGE_READ);
-                        } else if (event.getPostback() != null) {
-                            event.setType(EventType.POSTBACK);
-                        } else if (event.getOptin() != null) {
-                            event.setType(EventType.OPT_IN);
-                        } else if (event.getReferral() != null) {
-                            event.setType(EventType.REFERRAL);
-                        } else if (event.getAccountLinking() != null) {
-                            event.setType(EventType.ACCOUNT_LINKING);
-                        } else {
-                            logger.debug("Callback/Event type not supported: {}", event);
-                            return ResponseEntity.ok("Callback not supported yet!");
+            if (!isWaitForProcessing()) {
+                int count = 0;
+                for (Entry entry : callback.getEntry()) {
+                    if (entry.getMessaging() != null) {
+                        count += entry.getMessaging().length;
+                    }
+                }
+                return enqueue(count, handler -> {
+                    for (Entry entry : callback.getEntry()) {
+                        if (entry.getMessaging() != null) {
+                            Arrays.stream(entry.getMessaging()).forEach(handler);
                         }
-                        if (isConversationOn(event)) {
-                            invokeChainedMethod(event);
-                        } else {
-                            invokeMethods(event);
+                    }
+                    return true;
+                });
+            }
+            Phaser pending = new Phaser(1);
+            try {
+                for (Entry entry : callback.getEntry()) {
+                    if (entry.getMessaging() != null) {
+                        for (Event event : entry.getMessaging()) {
+                            submit(event, pending);
                         }
                     }
                 }
+            } finally {
+                pending.arriveAndAwaitAdvance();
             }
         } catch (Exception e) {
             logger.error("Error in fb webhook: Callback: {} \nException: ", callback.toString(), e);
@@ -141,41 +317,443 @@ public abstract class Bot extends BaseBot {
         return ResponseEntity.ok("EVENT_RECEIVED");
     }
 
-    private void sendTypingOnIndicator(User recipient) {
-        restTemplate.postForEntity(fbSendUrl,
-                new Event().setRecipient(recipient).setSenderAction("typing_on"), Response.class);
+    /**
+     * Queue the events on the executor of their sender as they are read, applying the overflow policy to the
+     * events which do not fit. With {@link OverflowPolicy#REJECT}, room for all the {@code count} events is
+     * taken up front, so that a callback is queued whole or not at all.
+     *
+     * @param count  number of events, only needed with {@link OverflowPolicy#REJECT}
+     * @param events of a callback from facebook
+     * @return 200 OK response, 404 if the callback is not from a page subscription, or 503 if rejected
+     * @throws IOException if the events could not be read
+     */
+    private ResponseEntity<String> enqueue(int count, EventSource events) throws IOException {
+        Semaphore permits = getQueuePermits();
+        boolean page;
+        if (overflowPolicy == OverflowPolicy.REJECT) {
+            if (!permits.tryAcquire(count)) {
+                logger.warn("Event queue full, rejecting callback with {} events", count);
+                return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            int[] reserved = {count};
+            try {
+                page = events.read(event -> {
+                    if (reserved[0] > 0) {
+                        reserved[0]--;
+                        queue(event, permits);
+                    } else {
+                        overflow(event);
+                    }
+                });
+            } finally {
+                permits.release(reserved[0]); // not read
+            }
+        } else {
+            page = events.read(event -> {
+                if (permits.tryAcquire()) {
+                    queue(event, permits);
+                } else {
+                    overflow(event);
+                }
+            });
+        }
+        return page ? ResponseEntity.ok("EVENT_RECEIVED") : new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Process the event on the executor of its sender, the permit taken for it is released once it's processed.
+     */
+    private void queue(Event event, Semaphore permits) {
+        try {
+            getSenderExecutor(event).execute(() -> {
+                try {
+                    process(event);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            droppedEvents.increment();
+            logger.warn("Bot is shutting down, dropping event: {}", event);
+        }
+    }
+
+    /**
+     * Apply the overflow policy to an event which does not fit in the queue.
+     */
+    private void overflow(Event event) {
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            process(event);
+        } else {
+            droppedEvents.increment();
+            logger.warn("Event queue full, dropping event: {}", event);
+        }
     }
 
-    private void sendTypingOffIndicator(User recipient) {
-        restTemplate.postForEntity(fbSendUrl,
-                new Event().setRecipient(recipient).setSenderAction("typing_off"), Response.class);
+    /**
+     * Process the event on the executor of its sender, {@code pending} is advanced once it's processed.
+     */
+    private void submit(Event event, Phaser pending) {
+        pending.register();
+        try {
+            getSenderExecutor(event).execute(() -> {
+                try {
+                    process(event);
+                } finally {
+                    pending.arriveAndDeregister();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.arriveAndDeregister();
+            logger.warn("Bot is shutting down, processing event on the request thread: {}", event);
+            process(event);
+        }
     }
 
+    private void process(Event event) {
+        try {
+            if (setEventType(event)) {
+                dispatch(event);
+            } else {
+                logger.debug("Callback/Event type not supported: {}", event);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing fb event: {} \nException: ", event, e);
+        }
+    }
+
+    /**
+     * Set the type of the event from the fields present.
+     *
+     * @param event received from facebook
+     * @return {@code false} if the type of the event is not supported
+     */
+    private boolean setEventType(Event event) {
+        if (event.getMessage() != null) {
+            if (event.getMessage().isEcho() != null &&
+                    event.getMessage().isEcho()) {
+                event.setType(EventType.MESSAGE_ECHO);
+            } else if (event.getMessage().getQuickReply() != null) {
+                event.setType(EventType.QUICK_REPLY);
+            } else {
+                event.setType(EventType.MESSAGE);
+                // send typing on indicator to create a conversational experience
+                getTypingIndicators().typingOn(event.getSender());
+            }
+        } else if (event.getDelivery() != null) {
+            event.setType(EventType.MESSAGE_DELIVERED);
+        } else if (event.getRead() != null) {
+            event.setType(EventType.MESSAGE_READ);
+        } else if (event.getPostback() != null) {
+            event.setType(EventType.POSTBACK);
+        } else if (event.getOptin() != null) {
+            event.setType(EventType.OPT_IN);
+        } else if (event.getReferral() != null) {
+            event.setType(EventType.REFERRAL);
+        } else if (event.getAccountLinking() != null) {
+            event.setType(EventType.ACCOUNT_LINKING);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void dispatch(Event event) {
+        if (isConversationOn(event)) {
+            invokeChainedMethod(event);
+        } else {
+            invokeMethods(event);
+        }
+    }
+
+    /**
+     * Events of a sender always go to the same serial executor so that they are processed in order.
+     */
+    private synchronized SerialExecutor getSenderExecutor(Event event) {
+        if (senderExecutors == null) {
+            AtomicInteger count = new AtomicInteger();
+            workerPool = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread thread = new Thread(r, "fb-events-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            senderExecutors = new SerialExecutor[workerThreads * 4];
+            for (int i = 0; i < senderExecutors.length; i++) {
+                senderExecutors[i] = new SerialExecutor(workerPool);
+            }
+        }
+        String key = event.getSender() != null ? event.getSender().getId() : null;
+        return senderExecutors[key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % senderExecutors.length];
+    }
+
+    private synchronized Semaphore getQueuePermits() {
+        if (queuePermits == null) {
+            queuePermits = new Semaphore(queueCapacity);
+        }
+        return queuePermits;
+    }
+
+    /**
+     * @return number of events queued or being processed.
+     */
+    public final int getQueuedEvents() {
+        Semaphore permits = queuePermits;
+        return permits == null ? 0 : queueCapacity - permits.availablePermits();
+    }
+
+    /**
+     * @return number of events dropped because the queue was full.
+     */
+    public final long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Shutdown the worker pool, queued events are not processed, the typing indicators, the batch sender,
+     * the attachment uploads, the broadcasts which are saved to be resumed, and the outbound scheduler if the
+     * bot has one of its own.
+     */
+    @PreDestroy
+    public void destroy() {
+        synchronized (this) {
+            if (workerPool != null) {
+                workerPool.shutdownNow();
+            }
+            if (typingIndicators != null) {
+                typingIndicators.shutdown();
+            }
+            if (batchSender != null) {
+                batchSender.shutdown();
+            }
+            if (attachmentCache != null) {
+                attachmentCache.shutdown();
+            }
+            if (broadcaster != null) {
+                broadcaster.shutdown();
+            }
+            if (ownOutboundScheduler != null) {
+                ownOutboundScheduler.destroy();
+            }
+        }
+    }
+
+    private synchronized CallbackReader getCallbackReader() {
+        if (callbackReader == null) {
+            callbackReader = new CallbackReader(getAppSecret());
+        }
+        return callbackReader;
+    }
+
+    /**
+     * @return the scheduler the messages are sent with, exposes how many are in flight.
+     */
+    protected final synchronized OutboundScheduler getOutboundScheduler() {
+        if (outboundScheduler == null) {
+            outboundScheduler = ownOutboundScheduler = new OutboundScheduler();
+        }
+        return outboundScheduler;
+    }
+
+    /**
+     * @return the sender of the typing indicators, exposes how many were collapsed.
+     */
+    protected final synchronized TypingIndicators getTypingIndicators() {
+        if (typingIndicators == null) {
+            typingIndicators = new TypingIndicators(action -> getOutboundScheduler().submit(getPageAccessToken(),
+                    action.getRecipient().getId(), () -> send(action)), typingCoalesceMillis);
+        }
+        return typingIndicators;
+    }
+
+    /**
+     * @return cache of the attachment ids of the media sent, {@code null} if {@code fbAttachmentCacheFile}
+     * is not set
+     */
+    protected final synchronized AttachmentCache getAttachmentCache() {
+        if (attachmentCache == null && !StringUtils.isEmpty(attachmentCacheFile)) {
+            try {
+                attachmentCache = new AttachmentCache(restTemplate, fbApiEndpoints.getFbAttachmentUploadUrl()
+                        .replace("{PAGE_ACCESS_TOKEN}", getPageAccessToken()), Paths.get(attachmentCacheFile));
+            } catch (IOException e) {
+                logger.error("Error loading attachment ids from {}, sending media by url: ", attachmentCacheFile, e);
+                attachmentCacheFile = "";
+            }
+        }
+        return attachmentCache;
+    }
+
+    /**
+     * @return the sender of the replies in batch requests, exposes how many batches were sent.
+     */
+    protected final synchronized BatchSender getBatchSender() {
+        if (batchSender == null) {
+            batchSender = new BatchSender(restTemplate, fbApiEndpoints.getFbBatchUrl(), getPageAccessToken(),
+                    BatchSender.MAX_BATCH_SIZE, batchLingerMillis);
+        }
+        return batchSender;
+    }
+
+    /**
+     * Send the event, a message clears the typing indicator of the recipient so no {@code typing_off}
+     * is sent before it. Media already uploaded are sent by {@code attachment_id}, see {@link AttachmentCache}.
+     * The event is sent once the previous events to the recipient are answered, see
+     * {@link OutboundScheduler}. With {@code fbBatchSend} it's sent with the replies to other recipients
+     * in a batch request.
+     *
+     * @param event to send
+     * @return response from facebook
+     */
     protected final ResponseEntity<String> reply(Event event) {
-        sendTypingOffIndicator(event.getRecipient());
+        return await(replyAsync(event));
+    }
+
+    /**
+     * Like {@link #reply(Event)}, without waiting for the response.
+     *
+     * @param event to send
+     * @return future completed with the response from facebook
+     */
+    protected final CompletableFuture<ResponseEntity<String>> replyAsync(Event event) {
+        if (event.getSenderAction() == null) {
+            getTypingIndicators().messageSent(event.getRecipient());
+        }
+        if (event.getMessage() != null && getAttachmentCache() != null) {
+            getAttachmentCache().rewrite(event.getMessage());
+        }
         logger.debug("Send message: {}", event.toString());
+        String recipientId = event.getRecipient() != null ? event.getRecipient().getId() : null;
+        return getOutboundScheduler().submit(getPageAccessToken(), recipientId, () -> send(event));
+    }
+
+    private CompletableFuture<ResponseEntity<String>> send(Event event) {
+        if (batchSend) {
+            return getBatchSender().send(event);
+        }
+        return post(event);
+    }
+
+    private CompletableFuture<ResponseEntity<String>> post(Object request) {
         try {
-            return restTemplate.postForEntity(fbSendUrl, event, String.class);
+            return CompletableFuture.completedFuture(restTemplate.postForEntity(fbSendUrl, request, String.class));
         } catch (HttpClientErrorException e) {
             logger.error("Send message error: Response body: {} \nException: ", e.getResponseBodyAsString(), e);
-            return new ResponseEntity<>(e.getResponseBodyAsString(), e.getStatusCode());
+            return CompletableFuture.completedFuture(new ResponseEntity<>(e.getResponseBodyAsString(),
+                    e.getStatusCode()));
+        }
+    }
+
+    /**
+     * Wait for the response, a failure is thrown as is.
+     */
+    private static ResponseEntity<String> await(CompletableFuture<ResponseEntity<String>> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
     }
 
     protected ResponseEntity<String> reply(Event event, String text) {
-        Event response = new Event()
-                .setMessagingType("RESPONSE")
-                .setRecipient(event.getSender())
-                .setMessage(new Message().setText(text));
-        return reply(response);
+        return await(replyAsync(event, text));
     }
 
     protected ResponseEntity<String> reply(Event event, Message message) {
+        return await(replyAsync(event, message));
+    }
+
+    protected CompletableFuture<ResponseEntity<String>> replyAsync(Event event, String text) {
+        return replyAsync(event, new Message().setText(text));
+    }
+
+    protected CompletableFuture<ResponseEntity<String>> replyAsync(Event event, Message message) {
         Event response = new Event()
                 .setMessagingType("RESPONSE")
                 .setRecipient(event.getSender())
                 .setMessage(message);
-        return reply(response);
+        return replyAsync(response);
+    }
+
+    /**
+     * Send a message to many users, e.g. a notification to all the subscribers of the page, at the rate of the
+     * {@code broadcast}. Calling this again with a broadcast which was stopped resumes it.
+     *
+     * @param broadcast message and recipients
+     * @return future completed with the report once every recipient has a result, or once the broadcast is
+     * stopped with {@link Broadcaster#stop(Broadcast)}
+     */
+    protected final CompletableFuture<Broadcaster.Report> broadcast(Broadcast broadcast) {
+        return getBroadcaster().start(broadcast);
+    }
+
+    protected final synchronized Broadcaster getBroadcaster() {
+        if (broadcaster == null) {
+            broadcaster = new Broadcaster(restTemplate, fbSendUrl, broadcastConcurrency);
+        }
+        return broadcaster;
+    }
+
+    /**
+     * @return the message templates, register the messages which are the same for every user in it once,
+     * and send them with {@link #replyWithTemplate(Event, String, Map)}.
+     */
+    protected final synchronized TemplateRegistry getTemplates() {
+        if (templates == null) {
+            templates = new TemplateRegistry();
+        }
+        return templates;
+    }
+
+    protected final ResponseEntity<String> replyWithTemplate(Event event, String template) {
+        return replyWithTemplate(event, template, null);
+    }
+
+    /**
+     * Send a template registered in {@link #getTemplates()} to the sender of {@code event}. The template is
+     * not serialized again, only the recipient and the {@code values} are spliced into it.
+     *
+     * @param event    received from facebook
+     * @param template name of the template
+     * @param values   of the placeholders of the template, may be {@code null}
+     * @return response from facebook
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    protected final ResponseEntity<String> replyWithTemplate(Event event, String template,
+                                                             Map<String, String> values) {
+        return await(replyWithTemplateAsync(event, template, values));
+    }
+
+    /**
+     * Like {@link #replyWithTemplate(Event, String, Map)}, without waiting for the response.
+     *
+     * @param event    received from facebook
+     * @param template name of the template
+     * @param values   of the placeholders of the template, may be {@code null}
+     * @return future completed with the response from facebook
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    protected final CompletableFuture<ResponseEntity<String>> replyWithTemplateAsync(Event event, String template,
+                                                                                    Map<String, String> values) {
+        getTypingIndicators().messageSent(event.getSender());
+        String recipientId = event.getSender().getId();
+        if (batchSend) {
+            String message = getTemplates().renderMessage(template, values);
+            logger.debug("Send message: {}", message);
+            Event response = new Event().setMessagingType("RESPONSE").setRecipient(event.getSender());
+            return getOutboundScheduler().submit(getPageAccessToken(), recipientId,
+                    () -> getBatchSender().send(response, message));
+        }
+        byte[] body = getTemplates().render(template, recipientId, values);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Send message: {}", new String(body, StandardCharsets.UTF_8));
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        return getOutboundScheduler().submit(getPageAccessToken(), recipientId,
+                () -> post(new HttpEntity<>(body, headers)));
     }
 
     /**
@@ -333,4 +911,16 @@ public abstract class Bot extends BaseBot {
                 return event.getMessage().getText();
         }
     }
+
+    /**
+     * Passes the events of a callback, one at a time.
+     */
+    private interface EventSource {
+        /**
+         * @param handler called with each event
+         * @return {@code false} if the callback is not from a page subscription
+         * @throws IOException if the events could not be read
+         */
+        boolean read(Consumer<Event> handler) throws IOException;
+    }
 }
@@ -0,0 +1,208 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.facebook.models.Message;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A message to send to many users with the {@link Broadcaster}. The recipients are read from an
+ * {@link Iterator} as they are sent to, or from a file with one id per line, so that the audience is never
+ * held in memory.
+ * <p>
+ * The progress is checkpointed to {@link Builder#checkpointFile(Path)} and the result of each recipient is
+ * appended to {@link Builder#resultFile(Path)}, running the same broadcast again with the same files and
+ * recipients resumes it where it stopped.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class Broadcast {
+
+    private final Iterator<String> recipients;
+    private final Message message;
+    private final String messagingType;
+    private final String tag;
+    private final double messagesPerSecond;
+    private final int maxAttempts;
+    private final Path checkpointFile;
+    private final Path resultFile;
+
+    private Broadcast(Builder builder) {
+        if (builder.recipients == null) {
+            throw new IllegalArgumentException("recipients are required.");
+        }
+        if (builder.message == null) {
+            throw new IllegalArgumentException("message is required.");
+        }
+        if (builder.resultFile == null || builder.checkpointFile == null) {
+            throw new IllegalArgumentException("resultFile and checkpointFile are required.");
+        }
+        if (builder.messagesPerSecond <= 0) {
+            throw new IllegalArgumentException("messagesPerSecond must be positive.");
+        }
+        recipients = builder.recipients;
+        message = builder.message;
+        messagingType = builder.messagingType;
+        tag = builder.tag;
+        messagesPerSecond = builder.messagesPerSecond;
+        maxAttempts = builder.maxAttempts;
+        checkpointFile = builder.checkpointFile;
+        resultFile = builder.resultFile;
+    }
+
+    public Iterator<String> getRecipients() {
+        return recipients;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public String getMessagingType() {
+        return messagingType;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public Path getResultFile() {
+        return resultFile;
+    }
+
+    public static final class Builder {
+        private Iterator<String> recipients;
+        private Message message;
+        private String messagingType = "UPDATE";
+        private String tag;
+        private double messagesPerSecond = 50;
+        private int maxAttempts = 5;
+        private Path checkpointFile;
+        private Path resultFile;
+
+        /**
+         * @param recipients page scoped ids of the users to send to, in the same order when resuming
+         */
+        public Builder recipients(Iterator<String> recipients) {
+            this.recipients = recipients;
+            return this;
+        }
+
+        /**
+         * @param file with a page scoped id per line, blank lines are skipped
+         * @throws IOException if the file can't be opened
+         */
+        public Builder recipients(Path file) throws IOException {
+            BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.recipients = new Iterator<String>() {
+                private String next = read();
+
+                private String read() {
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            line = line.trim();
+                            if (!line.isEmpty()) return line;
+                        }
+                        reader.close();
+                        return null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public String next() {
+                    if (next == null) throw new NoSuchElementException();
+                    String current = next;
+                    next = read();
+                    return current;
+                }
+            };
+            return this;
+        }
+
+        /**
+         * @param message sent to every recipient, serialized once
+         */
+        public Builder message(Message message) {
+            this.message = message;
+            return this;
+        }
+
+        /**
+         * @param messagingType {@code UPDATE}, the default, or {@code MESSAGE_TAG}
+         */
+        public Builder messagingType(String messagingType) {
+            this.messagingType = messagingType;
+            return this;
+        }
+
+        /**
+         * @param tag message tag, sets the messaging type to {@code MESSAGE_TAG}
+         */
+        public Builder tag(String tag) {
+            this.tag = tag;
+            this.messagingType = "MESSAGE_TAG";
+            return this;
+        }
+
+        /**
+         * @param messagesPerSecond rate the messages are sent at, lowered while facebook throttles the page
+         */
+        public Builder messagesPerSecond(double messagesPerSecond) {
+            this.messagesPerSecond = messagesPerSecond;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts number of times a message is tried when throttled or on a transient error
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder checkpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * @param resultFile the result of each recipient is appended to, as {@code index id status} lines where
+         *                   the status is {@code ok} or the error code
+         */
+        public Builder resultFile(Path resultFile) {
+            this.resultFile = resultFile;
+            return this;
+        }
+
+        public Broadcast build() {
+            return new Broadcast(this);
+        }
+    }
+}
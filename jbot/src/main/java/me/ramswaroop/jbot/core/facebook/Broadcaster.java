@@ -0,0 +1,558 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a {@link Broadcast} to all its recipients at the rate it asks for. The message is serialized once,
+ * see {@link TemplateRegistry}, and sent to up to {@code concurrency} recipients at a time.
+ * <p>
+ * When facebook throttles the page, error code 4 or 613, the rate is halved and sending pauses for a while,
+ * then the rate creeps back up with every message sent. Throttled messages and messages which failed with a
+ * server error are tried again, up to {@link Broadcast#getMaxAttempts()} times.
+ * <p>
+ * Every recipient before the checkpoint has its result in the result file. The checkpoint is written every
+ * {@value #CHECKPOINT_EVERY} results and at the end, so a broadcast started again after a crash skips the
+ * recipients before the checkpoint and those after it which have a result already. The results are
+ * flushed every {@value #FLUSH_MILLIS} ms in between, so after a crash the message is sent again only to
+ * the recipients it was in flight to and those answered within the last {@value #FLUSH_MILLIS} ms.
+ * <p>
+ * The broadcasts run on a pool shared by all of them.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class Broadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(Broadcaster.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final int CHECKPOINT_EVERY = 1000;
+    private static final long FLUSH_MILLIS = 1000;
+    private static final double MIN_MESSAGES_PER_SECOND = 1;
+    private static final long MIN_PAUSE_MILLIS = 1000;
+    private static final long MAX_PAUSE_MILLIS = 60000;
+
+    private final RestTemplate restTemplate;
+    private final String fbSendUrl;
+    private final int concurrency;
+    private final Map<Broadcast, Run> running = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param restTemplate to call the Send API with
+     * @param fbSendUrl    Send API url with the page access token
+     * @param concurrency  maximum number of messages in flight per broadcast
+     */
+    public Broadcaster(RestTemplate restTemplate, String fbSendUrl, int concurrency) {
+        this(restTemplate, fbSendUrl, concurrency, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fb-broadcast-timer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    Broadcaster(RestTemplate restTemplate, String fbSendUrl, int concurrency, ScheduledExecutorService timer) {
+        this.restTemplate = restTemplate;
+        this.fbSendUrl = fbSendUrl;
+        this.concurrency = concurrency;
+        this.timer = timer;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fb-broadcast-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start sending the broadcast, resuming it if its checkpoint file exists.
+     *
+     * @param broadcast to send
+     * @return future completed with the report once every recipient has a result, or once the broadcast
+     * is stopped, see {@link #stop(Broadcast)}
+     * @throws IllegalStateException if the broadcast is running already
+     */
+    public CompletableFuture<Report> start(Broadcast broadcast) {
+        CompletableFuture<Report> future = new CompletableFuture<>();
+        Run run = new Run(broadcast, future);
+        if (running.putIfAbsent(broadcast, run) != null) {
+            throw new IllegalStateException("Broadcast is running already");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Report report = run.run();
+                    running.remove(broadcast, run); // before the future completes, so it can be started again
+                    future.complete(report);
+                } catch (Throwable t) {
+                    running.remove(broadcast, run);
+                    logger.error("Error sending broadcast: ", t);
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.remove(broadcast, run);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Stop sending the broadcast once the messages in flight are answered, its future then completes with
+     * the report of what was sent. Starting it again resumes it.
+     *
+     * @param broadcast passed to {@link #start(Broadcast)}
+     * @return {@code false} if the broadcast is not running
+     */
+    public boolean stop(Broadcast broadcast) {
+        Run run = running.get(broadcast);
+        if (run == null) {
+            return false;
+        }
+        run.stopped = true;
+        return true;
+    }
+
+    /**
+     * Stop the broadcasts running, waiting a while for their results to be saved.
+     */
+    public void shutdown() {
+        for (Run run : running.values()) {
+            run.stopped = true;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Broadcasts did not stop in time, the results of the messages in flight are lost.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdownNow();
+    }
+
+    /**
+     * The Graph API error code in an error response, {@code -1} if there is none.
+     */
+    private static int errorCode(String body) {
+        try {
+            return mapper.readTree(body).path("error").path("code").asInt(-1);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private class Run {
+        final Broadcast broadcast;
+        final CompletableFuture<Report> future;
+        final TemplateRegistry templates = new TemplateRegistry();
+        final HttpHeaders headers = new HttpHeaders();
+        final Semaphore permits = new Semaphore(concurrency);
+        final Queue<Recipient> retries = new ConcurrentLinkedQueue<>();
+        final Report report = new Report();
+        volatile boolean stopped;
+
+        // rate limiter, guarded by itself
+        final Object limiter = new Object();
+        double messagesPerSecond;
+        long nextSendAt = System.nanoTime();
+        int throttledInARow;
+
+        // results, guarded by report
+        BufferedWriter results;
+        long watermark;
+        final TreeSet<Long> doneAfterWatermark = new TreeSet<>();
+        int sinceCheckpoint;
+
+        Run(Broadcast broadcast, CompletableFuture<Report> future) {
+            this.broadcast = broadcast;
+            this.future = future;
+            this.messagesPerSecond = broadcast.getMessagesPerSecond();
+            templates.register("broadcast", broadcast.getMessage());
+            headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        }
+
+        Report run() throws IOException, InterruptedException {
+            long checkpoint = readCheckpoint();
+            Set<Long> done = readResults(checkpoint);
+            watermark = checkpoint;
+            doneAfterWatermark.addAll(done);
+            advanceWatermark();
+            results = Files.newBufferedWriter(broadcast.getResultFile(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            scheduleFlush();
+            try {
+                Iterator<String> recipients = broadcast.getRecipients();
+                long index = 0;
+                while (!isStopped()) {
+                    Recipient recipient = retries.poll();
+                    if (recipient == null) {
+                        if (!recipients.hasNext()) {
+                            if (permits.availablePermits() == concurrency && retries.isEmpty()) break;
+                            Thread.sleep(10); // wait for the messages in flight, they may be retried
+                            continue;
+                        }
+                        String id = recipients.next();
+                        long i = index++;
+                        if (i < checkpoint || done.contains(i)) {
+                            synchronized (report) {
+                                report.skipped++;
+                            }
+                            continue;
+                        }
+                        recipient = new Recipient(i, id);
+                    }
+                    permits.acquire();
+                    acquireSlot();
+                    if (isStopped()) {
+                        permits.release(); // not sent, so it's sent on resume
+                        break;
+                    }
+                    Recipient next = recipient;
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                send(next);
+                            } finally {
+                                permits.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        permits.release();
+                        stopped = true; // shutting down, the recipient is sent again on resume
+                    }
+                }
+            } finally {
+                try {
+                    if (!permits.tryAcquire(concurrency, 30, TimeUnit.SECONDS)) {
+                        logger.warn("Broadcast stopped with messages in flight, they are sent again on resume.");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (report) {
+                    checkpoint();
+                    results.close();
+                    results = null;
+                }
+            }
+            report.completed = !isStopped();
+            report.messagesPerSecond = messagesPerSecond;
+            logger.info("Broadcast {}: {}", report.completed ? "done" : "stopped", report);
+            return report;
+        }
+
+        private void send(Recipient recipient) {
+            recipient.attempts++;
+            byte[] body = templates.render("broadcast", recipient.id, broadcast.getMessagingType(),
+                    broadcast.getTag(), null);
+            try {
+                restTemplate.postForEntity(fbSendUrl, new HttpEntity<>(body, headers), String.class);
+                sent();
+                result(recipient, "ok");
+            } catch (HttpStatusCodeException e) {
+                int code = errorCode(e.getResponseBodyAsString());
+                if (code == 4 || code == 613) {
+                    throttled();
+                    retryOrFail(recipient, String.valueOf(code));
+                } else if (e instanceof HttpServerErrorException) {
+                    retryOrFail(recipient, code >= 0 ? String.valueOf(code) : "http" + e.getRawStatusCode());
+                } else {
+                    result(recipient, code >= 0 ? String.valueOf(code) : "http" + e.getRawStatusCode());
+                }
+            } catch (ResourceAccessException e) {
+                retryOrFail(recipient, "io");
+            } catch (RuntimeException e) {
+                logger.debug("Error sending broadcast to {}: {}", recipient.id, e.getMessage());
+                result(recipient, "error");
+            }
+        }
+
+        private boolean isStopped() {
+            return stopped || future.isCancelled();
+        }
+
+        /**
+         * Flush the results every {@value #FLUSH_MILLIS} ms until the broadcast ends.
+         */
+        private void scheduleFlush() {
+            try {
+                timer.schedule(() -> {
+                    synchronized (report) {
+                        if (results == null) {
+                            return;
+                        }
+                        try {
+                            results.flush();
+                        } catch (IOException e) {
+                            logger.error("Error flushing broadcast results: ", e);
+                        }
+                    }
+                    scheduleFlush();
+                }, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Broadcaster stopped, results flushed at the end only.");
+            }
+        }
+
+        private void retryOrFail(Recipient recipient, String status) {
+            if (isStopped()) {
+                return; // no result, so it's sent again on resume
+            }
+            if (recipient.attempts < broadcast.getMaxAttempts()) {
+                synchronized (report) {
+                    report.retried++;
+                }
+                retries.add(recipient);
+            } else {
+                result(recipient, status);
+            }
+        }
+
+        /**
+         * Wait for the next send slot at the current rate.
+         */
+        private void acquireSlot() throws InterruptedException {
+            long wait;
+            synchronized (limiter) {
+                long now = System.nanoTime();
+                long slot = nextSendAt - now > 0 ? nextSendAt : now;
+                nextSendAt = slot + (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+                wait = slot - now;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        private void throttled() {
+            synchronized (limiter) {
+                messagesPerSecond = Math.max(MIN_MESSAGES_PER_SECOND, messagesPerSecond / 2);
+                long pause = Math.min(MAX_PAUSE_MILLIS, MIN_PAUSE_MILLIS << Math.min(throttledInARow++, 6));
+                long resumeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause);
+                if (resumeAt - nextSendAt > 0) {
+                    nextSendAt = resumeAt;
+                }
+                logger.warn("Broadcast throttled by facebook, pausing {} ms then sending {} messages/s", pause,
+                        messagesPerSecond);
+            }
+            synchronized (report) {
+                report.throttled++;
+            }
+        }
+
+        private void sent() {
+            synchronized (limiter) {
+                throttledInARow = 0;
+                double target = broadcast.getMessagesPerSecond();
+                messagesPerSecond = Math.min(target, messagesPerSecond + target * 0.002);
+            }
+        }
+
+        private void result(Recipient recipient, String status) {
+            synchronized (report) {
+                if ("ok".equals(status)) {
+                    report.sent++;
+                } else {
+                    report.failed++;
+                }
+                if (results == null) {
+                    return; // stopped, the recipient is sent again on resume
+                }
+                try {
+                    results.write(recipient.index + "\t" + recipient.id + "\t" + status + "\n");
+                    doneAfterWatermark.add(recipient.index);
+                    advanceWatermark();
+                    if (++sinceCheckpoint >= CHECKPOINT_EVERY) {
+                        checkpoint();
+                    }
+                } catch (IOException e) {
+                    logger.error("Error writing broadcast result of {}: ", recipient.id, e);
+                }
+            }
+        }
+
+        private void advanceWatermark() {
+            while (doneAfterWatermark.remove(watermark)) {
+                watermark++;
+            }
+        }
+
+        /**
+         * Flush the results, then save the index all the recipients before which have a result.
+         */
+        private void checkpoint() throws IOException {
+            results.flush();
+            Path checkpointFile = broadcast.getCheckpointFile().toAbsolutePath();
+            Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.write(temp, Collections.singletonList(String.valueOf(watermark)), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            sinceCheckpoint = 0;
+        }
+
+        private long readCheckpoint() throws IOException {
+            if (!Files.exists(broadcast.getCheckpointFile())) {
+                return 0;
+            }
+            String checkpoint = new String(Files.readAllBytes(broadcast.getCheckpointFile()),
+                    StandardCharsets.UTF_8).trim();
+            return checkpoint.isEmpty() ? 0 : Long.parseLong(checkpoint);
+        }
+
+        /**
+         * @return indexes of the recipients from {@code checkpoint} on which have a result already
+         */
+        private Set<Long> readResults(long checkpoint) throws IOException {
+            Set<Long> done = new HashSet<>();
+            Path resultFile = broadcast.getResultFile();
+            if (!Files.exists(resultFile) || Files.size(resultFile) == 0) {
+                return done;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(resultFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab <= 0 || line.indexOf('\t', tab + 1) < 0) continue; // cut short by a crash
+                    try {
+                        long index = Long.parseLong(line.substring(0, tab));
+                        if (index >= checkpoint) done.add(index);
+                    } catch (NumberFormatException e) {
+                        // not a result line
+                    }
+                }
+            }
+            try (RandomAccessFile file = new RandomAccessFile(resultFile.toFile(), "rw")) {
+                file.seek(file.length() - 1);
+                if (file.read() != '\n') {
+                    file.write('\n');
+                }
+            }
+            return done;
+        }
+    }
+
+    private static class Recipient {
+        final long index;
+        final String id;
+        int attempts;
+
+        Recipient(long index, String id) {
+            this.index = index;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Counts of a broadcast run.
+     */
+    public static class Report {
+        private long sent;
+        private long failed;
+        private long skipped;
+        private long retried;
+        private long throttled;
+        private double messagesPerSecond;
+        private boolean completed;
+
+        /**
+         * @return number of recipients the message was sent to.
+         */
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * @return number of recipients the message could not be sent to.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return number of recipients skipped because they had a result from a previous run.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return number of messages tried again.
+         */
+        public long getRetried() {
+            return retried;
+        }
+
+        /**
+         * @return number of times facebook throttled the broadcast.
+         */
+        public long getThrottled() {
+            return throttled;
+        }
+
+        /**
+         * @return rate the messages were sent at in the end.
+         */
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        /**
+         * @return {@code false} if the broadcast was stopped before every recipient had a result.
+         */
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public String toString() {
+            return "sent=" + sent + ", failed=" + failed + ", skipped=" + skipped + ", retried=" + retried +
+                    ", throttled=" + throttled + ", messagesPerSecond=" + messagesPerSecond;
+        }
+    }
+}
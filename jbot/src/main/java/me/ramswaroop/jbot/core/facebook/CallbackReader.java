@@ -0,0 +1,171 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.facebook.models.Event;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.function.Consumer;
+
+/**
+ * Reads the body of a webhook callback once, as bytes, computing its HMAC-SHA256 with the app secret as it's
+ * read so that the {@code X-Hub-Signature-256} header can be checked without reading the body again. The
+ * events are then parsed one at a time with a streaming parser, so a callback with many entries never exists
+ * as a whole object tree.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class CallbackReader {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final String appSecret;
+
+    /**
+     * @param appSecret secret of the facebook app, {@code null} or empty to not verify the signature
+     */
+    public CallbackReader(String appSecret) {
+        this.appSecret = appSecret;
+    }
+
+    /**
+     * @param body      of the webhook request
+     * @param signature value of the {@code X-Hub-Signature-256} header
+     * @return the body, or {@code null} if its signature does not match
+     * @throws IOException if the body could not be read
+     */
+    public byte[] read(InputStream body, String signature) throws IOException {
+        Mac mac = createMac();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+        byte[] buffer = new byte[CHUNK_SIZE];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (mac != null) mac.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+        if (mac == null) {
+            return out.toByteArray();
+        }
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return null;
+        }
+        byte[] expected = mac.doFinal();
+        byte[] actual = decodeHex(signature.substring(SIGNATURE_PREFIX.length()));
+        return actual != null && MessageDigest.isEqual(expected, actual) ? out.toByteArray() : null;
+    }
+
+    /**
+     * Pass the messaging events of a callback to {@code handler} in the order they appear.
+     *
+     * @param body    of the webhook request
+     * @param handler called with each event
+     * @return {@code false} if the callback is not from a page subscription, in which case no event is passed
+     * @throws IOException if the body is not a valid callback
+     */
+    public boolean readEvents(byte[] body, Consumer<Event> handler) throws IOException {
+        return scan(body, parser -> handler.accept(mapper.readValue(parser, Event.class)));
+    }
+
+    /**
+     * Count the messaging events of a callback without binding them.
+     *
+     * @param body of the webhook request
+     * @return number of events in the callback, {@code 0} if it is not from a page subscription
+     * @throws IOException if the body is not a valid callback
+     */
+    public int countEvents(byte[] body) throws IOException {
+        int[] count = new int[1];
+        boolean page = scan(body, parser -> {
+            parser.skipChildren();
+            count[0]++;
+        });
+        return page ? count[0] : 0;
+    }
+
+    /**
+     * Walk the messaging events of a callback, {@code visitor} is called with the parser on the start of
+     * each event and must consume it.
+     */
+    private static boolean scan(byte[] body, EventVisitor visitor) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Callback is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("object".equals(field)) {
+                    if (!"page".equals(parser.getValueAsString())) {
+                        return false;
+                    }
+                } else if ("entry".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readEntry(parser, visitor);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void readEntry(JsonParser parser, EventVisitor visitor) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("messaging".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    visitor.visit(parser);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private interface EventVisitor {
+        void visit(JsonParser parser) throws IOException;
+    }
+
+    private Mac createMac() {
+        if (appSecret == null || appSecret.isEmpty()) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(appSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static byte[] decodeHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
@@ -33,6 +33,17 @@ public class FbApiEndpoints {
         return fbGraphApi + "/me/messages?access_token={PAGE_ACCESS_TOKEN}";
     }
 
+    /**
+     * Batch requests are posted to the root of the Graph API.
+     */
+    public String getFbBatchUrl() {
+        return fbGraphApi;
+    }
+
+    public String getFbAttachmentUploadUrl() {
+        return fbGraphApi + "/me/message_attachments?access_token={PAGE_ACCESS_TOKEN}";
+    }
+
     public String getFbMessengerProfileUrl() {
         return fbGraphApi + "/me/messenger_profile?access_token={PAGE_ACCESS_TOKEN}";
     }
@@ -1,9 +1,12 @@
 package me.ramswaroop.jbot.core.facebook;
 
 import me.ramswaroop.jbot.core.facebook.models.User;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+
 /**
  * @author rpatra16
  * @since 30/08/2018
@@ -13,12 +16,55 @@ public class FbService {
     private final RestTemplate restTemplate;
     private final FbApiEndpoints fbApiEndpoints;
 
+    /**
+     * Maximum number of user profiles cached.
+     */
+    @Value("${fbUserCacheSize:100000}")
+    private int userCacheSize = 100000;
+
+    /**
+     * Time a user profile is cached.
+     */
+    @Value("${fbUserCacheTtlSeconds:3600}")
+    private int userCacheTtlSeconds = 3600;
+
+    /**
+     * Time a user who does not exist is remembered, 0 to look such users up every time.
+     */
+    @Value("${fbUserNegativeCacheSeconds:0}")
+    private int userNegativeCacheSeconds = 0;
+
+    private UserCache userCache;
+
     public FbService(RestTemplate restTemplate, FbApiEndpoints fbApiEndpoints) {
         this.restTemplate = restTemplate;
         this.fbApiEndpoints = fbApiEndpoints;
     }
 
+    /**
+     * @param id              page scoped id of the user
+     * @param pageAccessToken page access token
+     * @return profile of the user, from the cache or the Graph API
+     */
     public User getUser(String id, String pageAccessToken) {
-        return restTemplate.getForEntity(fbApiEndpoints.getUserApi(), User.class, id, pageAccessToken).getBody();
+        return getUserCache().get(id, () ->
+                restTemplate.getForEntity(fbApiEndpoints.getUserApi(), User.class, id, pageAccessToken).getBody());
+    }
+
+    /**
+     * @return cache of the user profiles, exposes the hits and misses.
+     */
+    public synchronized UserCache getUserCache() {
+        if (userCache == null) {
+            userCache = new UserCache(userCacheSize, userCacheTtlSeconds, userNegativeCacheSeconds);
+        }
+        return userCache;
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (userCache != null) {
+            userCache.shutdown();
+        }
     }
 }
@@ -0,0 +1,316 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends the messages of all the facebook bots, keeping a FIFO per recipient so that the messages to a user
+ * arrive in the order they were sent, even when they are sent from many threads. The next message to a
+ * recipient is sent only once the previous one was answered, while different recipients are served in
+ * parallel on a shared pool.
+ * <p>
+ * At most {@code fbMaxInFlight} messages are in flight in all, and {@code fbMaxInFlightPerPage} per page,
+ * to stay within the throughput Messenger allows. Recipients waiting for capacity are served in turn within
+ * their page, and the pages waiting for capacity in turn, and the FIFO of a recipient is dropped as soon as
+ * it's empty.
+ * <p>
+ * A message sent without batching holds a thread of the pool until it's answered, so the pool grows up to
+ * {@code fbMaxInFlight} threads, idle threads are let go after a minute.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@Service
+public class OutboundScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundScheduler.class);
+
+    /**
+     * Maximum number of messages in flight, all pages together.
+     */
+    @Value("${fbMaxInFlight:64}")
+    private int maxInFlight = 64;
+
+    /**
+     * Maximum number of messages in flight per page.
+     */
+    @Value("${fbMaxInFlightPerPage:16}")
+    private int maxInFlightPerPage = 16;
+
+    private final Map<String, Lane> lanes = new HashMap<>();
+    private final Map<String, Page> pages = new HashMap<>();
+    /**
+     * Pages with a recipient waiting only for the overall capacity, in the order they started waiting.
+     */
+    private final Queue<Page> waitingPages = new ArrayDeque<>();
+    private int inFlight;
+    private ThreadPoolExecutor executor;
+
+    public OutboundScheduler() {
+    }
+
+    /**
+     * @param maxInFlight        maximum number of messages in flight
+     * @param maxInFlightPerPage maximum number of messages in flight per page
+     */
+    public OutboundScheduler(int maxInFlight, int maxInFlightPerPage) {
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerPage = maxInFlightPerPage;
+    }
+
+    /**
+     * Queue a message behind the others to the same recipient.
+     *
+     * @param page        identifies the page sending the message, e.g. its access token
+     * @param recipientId id of the user the message is sent to
+     * @param send        sends the message, the next message to the recipient waits for the returned future
+     * @param <T>         type of the response
+     * @return future completed with the response once the message is sent
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String page, String recipientId, Supplier<CompletableFuture<T>> send) {
+        Task task = new Task((Supplier) send);
+        Lane start;
+        synchronized (this) {
+            String key = page + "/" + recipientId;
+            Lane lane = lanes.computeIfAbsent(key, k -> new Lane(pages.computeIfAbsent(page, Page::new), key));
+            lane.tasks.add(task);
+            start = !lane.running && !lane.waiting && acquire(lane) ? lane : null;
+        }
+        if (start != null) {
+            run(start);
+        }
+        return (CompletableFuture<T>) task.future;
+    }
+
+    /**
+     * Take a slot for the head of {@code lane}, or make it wait for one. Call with the lock held.
+     *
+     * @return {@code true} if the lane can run
+     */
+    private boolean acquire(Lane lane) {
+        if (inFlight < maxInFlight && lane.page.inFlight < maxInFlightPerPage) {
+            take(lane);
+            return true;
+        }
+        lane.waiting = true;
+        lane.page.waiting.add(lane);
+        if (lane.page.inFlight < maxInFlightPerPage) {
+            waitForCapacity(lane.page);
+        }
+        return false;
+    }
+
+    /**
+     * {@code page} has capacity left and recipients waiting, queue it for the overall capacity.
+     */
+    private void waitForCapacity(Page page) {
+        if (!page.queued) {
+            page.queued = true;
+            waitingPages.add(page);
+        }
+    }
+
+    private void take(Lane lane) {
+        lane.running = true;
+        inFlight++;
+        lane.page.inFlight++;
+    }
+
+    private void run(Lane lane) {
+        try {
+            getExecutor().execute(() -> {
+                Task task;
+                synchronized (this) {
+                    task = lane.tasks.peek();
+                }
+                CompletableFuture<Object> response;
+                try {
+                    response = task.send.get();
+                } catch (Exception e) {
+                    response = new CompletableFuture<>();
+                    response.completeExceptionally(e);
+                }
+                response.whenComplete((r, t) -> {
+                    done(lane);
+                    if (t == null) {
+                        task.future.complete(r);
+                    } else {
+                        task.future.completeExceptionally(t);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Outbound scheduler stopped, messages to {} not sent.", lane.key);
+            Queue<Task> dropped;
+            synchronized (this) {
+                dropped = new ArrayDeque<>(lane.tasks);
+                lane.tasks.clear();
+                release(lane);
+                lanes.remove(lane.key, lane);
+                forgetIfIdle(lane.page);
+            }
+            for (Task task : dropped) {
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * The head of {@code lane} was answered, hand its slot to the next recipient in turn.
+     */
+    private void done(Lane lane) {
+        Queue<Lane> start = new ArrayDeque<>();
+        synchronized (this) {
+            lane.tasks.poll();
+            release(lane);
+            if (lane.tasks.isEmpty()) {
+                lanes.remove(lane.key, lane);
+            } else {
+                lane.waiting = true;
+                lane.page.waiting.add(lane);
+            }
+            if (!lane.page.waiting.isEmpty()) {
+                waitForCapacity(lane.page);
+            }
+            while (inFlight < maxInFlight && !waitingPages.isEmpty()) {
+                Page page = waitingPages.poll();
+                page.queued = false;
+                if (page.waiting.isEmpty() || page.inFlight >= maxInFlightPerPage) {
+                    continue; // waits for a message of its own to be answered, see above
+                }
+                Lane next = page.waiting.poll();
+                next.waiting = false;
+                take(next);
+                start.add(next);
+                if (!page.waiting.isEmpty() && page.inFlight < maxInFlightPerPage) {
+                    waitForCapacity(page); // behind the other pages
+                }
+            }
+            forgetIfIdle(lane.page);
+        }
+        for (Lane next : start) {
+            run(next);
+        }
+    }
+
+    private void release(Lane lane) {
+        if (lane.running) {
+            lane.running = false;
+            inFlight--;
+            lane.page.inFlight--;
+        }
+    }
+
+    /**
+     * Drop {@code page} once it has nothing in flight or waiting, so the map does not grow with every page
+     * ever seen. Call with the lock held.
+     */
+    private void forgetIfIdle(Page page) {
+        if (page.inFlight == 0 && page.waiting.isEmpty() && !page.queued) {
+            pages.remove(page.id, page);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "fb-outbound-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * @return number of messages in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of messages waiting to be sent.
+     */
+    public synchronized int getQueued() {
+        int queued = 0;
+        for (Lane lane : lanes.values()) {
+            queued += lane.running ? lane.tasks.size() - 1 : lane.tasks.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return number of recipients with messages in flight or waiting.
+     */
+    public synchronized int getRecipients() {
+        return lanes.size();
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The FIFO of a recipient, its head is in flight while {@code running}.
+     */
+    private static class Lane {
+        final Page page;
+        final String key;
+        final Queue<Task> tasks = new ArrayDeque<>();
+        boolean running;
+        boolean waiting;
+
+        Lane(Page page, String key) {
+            this.page = page;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The recipients of a page waiting for capacity, {@code queued} while the page is in
+     * {@link #waitingPages}.
+     */
+    private static class Page {
+        final String id;
+        final Queue<Lane> waiting = new ArrayDeque<>();
+        int inFlight;
+        boolean queued;
+
+        Page(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class Task {
+        final Supplier<CompletableFuture<Object>> send;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Task(Supplier<CompletableFuture<Object>> send) {
+            this.send = send;
+        }
+    }
+}
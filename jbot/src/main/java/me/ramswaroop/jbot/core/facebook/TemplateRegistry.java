@@ -0,0 +1,166 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Messages which are the same for every user, templates with many elements and buttons for instance, serialized
+ * to json once when registered. Sending one then only splices the recipient, and the values of the
+ * {@code {{placeholders}}} the template has, into the bytes already serialized, without building or
+ * serializing the {@link Message} again.
+ * <p>
+ * A placeholder can be put in any text of the template, e.g. {@code new Button().setTitle("Hi {{name}}")},
+ * its values are escaped as json strings.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class TemplateRegistry {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([\\w.-]+)}}");
+
+    private static final byte[] MESSAGING_TYPE_START = "{\"messaging_type\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAG_START = "\",\"tag\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RECIPIENT_START = "\",\"recipient\":{\"id\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MESSAGE_START = "\"},\"message\":".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Serialize {@code message} to be sent later as {@code name}, replacing any template with that name.
+     *
+     * @param name    of the template
+     * @param message to send, not referenced after this call
+     * @throws IllegalArgumentException if the message can't be serialized
+     */
+    public void register(String name, Message message) {
+        String json;
+        try {
+            json = mapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Template " + name + " can't be serialized", e);
+        }
+        List<byte[]> segments = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(json);
+        int start = 0;
+        while (matcher.find()) {
+            segments.add(json.substring(start, matcher.start()).getBytes(StandardCharsets.UTF_8));
+            placeholders.add(matcher.group(1));
+            start = matcher.end();
+        }
+        segments.add(json.substring(start).getBytes(StandardCharsets.UTF_8));
+        templates.put(name, new Template(segments.toArray(new byte[0][]), placeholders.toArray(new String[0])));
+    }
+
+    /**
+     * @param name of the template
+     * @return {@code true} if a template is registered with that name
+     */
+    public boolean contains(String name) {
+        return templates.containsKey(name);
+    }
+
+    /**
+     * @param name        of the template
+     * @param recipientId id of the user to send the template to
+     * @param values      of the placeholders, placeholders without a value are left as they are
+     * @return json body of the Send API request
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    public byte[] render(String name, String recipientId, Map<String, String> values) {
+        return render(name, recipientId, "RESPONSE", null, values);
+    }
+
+    /**
+     * @param name          of the template
+     * @param recipientId   id of the user to send the template to
+     * @param messagingType {@code RESPONSE}, {@code UPDATE} or {@code MESSAGE_TAG}
+     * @param tag           message tag, {@code null} unless the messaging type is {@code MESSAGE_TAG}
+     * @param values        of the placeholders, placeholders without a value are left as they are
+     * @return json body of the Send API request
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    public byte[] render(String name, String recipientId, String messagingType, String tag,
+                         Map<String, String> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(MESSAGING_TYPE_START, 0, MESSAGING_TYPE_START.length);
+        writeEscaped(out, messagingType);
+        if (tag != null) {
+            out.write(TAG_START, 0, TAG_START.length);
+            writeEscaped(out, tag);
+        }
+        out.write(RECIPIENT_START, 0, RECIPIENT_START.length);
+        writeEscaped(out, recipientId);
+        out.write(MESSAGE_START, 0, MESSAGE_START.length);
+        writeMessage(out, name, values);
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    /**
+     * @param name   of the template
+     * @param values of the placeholders, placeholders without a value are left as they are
+     * @return json of the message only
+     * @throws IllegalArgumentException if no template is registered with that name
+     */
+    public String renderMessage(String name, Map<String, String> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        writeMessage(out, name, values);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void writeMessage(ByteArrayOutputStream out, String name, Map<String, String> values) {
+        Template template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("No template registered as " + name);
+        }
+        if (values == null) {
+            values = Collections.emptyMap();
+        }
+        for (int i = 0; i < template.placeholders.length; i++) {
+            out.write(template.segments[i], 0, template.segments[i].length);
+            String value = values.get(template.placeholders[i]);
+            if (value != null) {
+                writeEscaped(out, value);
+            } else {
+                writeEscaped(out, "{{" + template.placeholders[i] + "}}");
+            }
+        }
+        byte[] last = template.segments[template.placeholders.length];
+        out.write(last, 0, last.length);
+    }
+
+    private static void writeEscaped(ByteArrayOutputStream out, String value) {
+        byte[] escaped = JsonStringEncoder.getInstance().quoteAsUTF8(value);
+        out.write(escaped, 0, escaped.length);
+    }
+
+    /**
+     * The serialized message cut around its placeholders, {@code segments} has one more element than
+     * {@code placeholders}.
+     */
+    private static class Template {
+        final byte[][] segments;
+        final String[] placeholders;
+
+        Template(byte[][] segments, String[] placeholders) {
+            this.segments = segments;
+            this.placeholders = placeholders;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Sends the {@code typing_on} and {@code typing_off} sender actions in the background, so that they never
+ * delay the processing of an event or a reply. They are handed to a sender which queues them with the
+ * messages to the same recipient, see {@link OutboundScheduler}, so an indicator never overtakes a message.
+ * <p>
+ * A {@code typing_on} is held back for a short window: if the reply is sent within it the indicator is
+ * not sent at all. A {@code typing_on} for a recipient who still sees the indicator is skipped, and no
+ * {@code typing_off} is sent before a message since Messenger clears the indicator when a message arrives.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class TypingIndicators {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypingIndicators.class);
+
+    /**
+     * Messenger hides the indicator by itself after 20 seconds.
+     */
+    private static final long INDICATOR_TIMEOUT_MILLIS = 20000;
+
+    private final Function<Event, CompletableFuture<?>> sender;
+    private final long coalesceMillis;
+    private final ScheduledExecutorService executor;
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * @param sender         sends a sender action behind the messages queued to its recipient
+     * @param coalesceMillis time a {@code typing_on} is held back, waiting for the reply
+     */
+    public TypingIndicators(Function<Event, CompletableFuture<?>> sender, long coalesceMillis) {
+        this(sender, coalesceMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fb-typing-indicators");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    TypingIndicators(Function<Event, CompletableFuture<?>> sender, long coalesceMillis,
+                     ScheduledExecutorService executor) {
+        this.sender = sender;
+        this.coalesceMillis = coalesceMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Show the typing indicator to {@code recipient}, unless a message is sent to it first.
+     *
+     * @param recipient user to show the indicator to
+     */
+    public void typingOn(User recipient) {
+        if (recipient == null || recipient.getId() == null) return;
+        while (true) {
+            State state = states.computeIfAbsent(recipient.getId(), id -> new State());
+            synchronized (state) {
+                if (states.get(recipient.getId()) != state) {
+                    continue; // released meanwhile
+                }
+                if (state.pendingTask != null || state.on) {
+                    collapsed.increment();
+                    return;
+                }
+                Runnable send = new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (state) {
+                            if (state.pendingTask != this) return; // a message was sent meanwhile
+                            state.pending = null;
+                            state.pendingTask = null;
+                            state.on = true;
+                        }
+                        send(recipient, "typing_on");
+                        executor.schedule(() -> expire(recipient.getId(), state), INDICATOR_TIMEOUT_MILLIS,
+                                TimeUnit.MILLISECONDS);
+                    }
+                };
+                try {
+                    state.pending = executor.schedule(send, coalesceMillis, TimeUnit.MILLISECONDS);
+                    state.pendingTask = send;
+                } catch (RejectedExecutionException e) {
+                    release(recipient.getId(), state);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Messenger hid the indicator by itself.
+     */
+    private void expire(String recipientId, State state) {
+        synchronized (state) {
+            if (state.on && state.pendingTask == null) {
+                state.on = false;
+                release(recipientId, state);
+            }
+        }
+    }
+
+    /**
+     * Hide the typing indicator of {@code recipient} without sending a message.
+     *
+     * @param recipient user to hide the indicator of
+     */
+    public void typingOff(User recipient) {
+        if (recipient == null || recipient.getId() == null) return;
+        State state = states.get(recipient.getId());
+        if (state == null) return;
+        boolean wasOn;
+        synchronized (state) {
+            if (cancelPending(state)) {
+                collapsed.increment(); // the on never went out, so no off either
+                release(recipient.getId(), state);
+                return;
+            }
+            wasOn = state.on;
+            state.on = false;
+            release(recipient.getId(), state);
+        }
+        if (wasOn) {
+            send(recipient, "typing_off");
+        }
+    }
+
+    /**
+     * Call this when a message is sent to {@code recipient}, it clears the indicator.
+     *
+     * @param recipient user the message is sent to
+     */
+    public void messageSent(User recipient) {
+        if (recipient == null || recipient.getId() == null) return;
+        State state = states.get(recipient.getId());
+        if (state == null) return;
+        synchronized (state) {
+            if (cancelPending(state) || state.on) {
+                collapsed.increment();
+            }
+            state.on = false;
+            release(recipient.getId(), state);
+        }
+    }
+
+    private static boolean cancelPending(State state) {
+        if (state.pendingTask == null) {
+            return false;
+        }
+        state.pending.cancel(false);
+        state.pending = null;
+        state.pendingTask = null;
+        return true;
+    }
+
+    /**
+     * Forget recipients with nothing shown or pending, so the map does not grow with every user ever seen.
+     */
+    private void release(String recipientId, State state) {
+        if (!state.on && state.pendingTask == null) {
+            states.remove(recipientId, state);
+        }
+    }
+
+    private void send(User recipient, String action) {
+        CompletableFuture<?> response;
+        try {
+            response = sender.apply(new Event().setRecipient(recipient).setSenderAction(action));
+        } catch (Exception e) {
+            logger.debug("Error sending {} to {}: {}", action, recipient.getId(), e.getMessage());
+            return;
+        }
+        response.whenComplete((r, t) -> {
+            if (t == null) {
+                sent.increment();
+            } else {
+                logger.debug("Error sending {} to {}: {}", action, recipient.getId(), t.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return number of sender actions sent.
+     */
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * @return number of sender actions not sent because they were redundant.
+     */
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class State {
+        Future<?> pending;
+        Runnable pendingTask;
+        boolean on;
+    }
+}
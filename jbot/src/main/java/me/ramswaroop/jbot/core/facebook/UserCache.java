@@ -0,0 +1,241 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.common.BoundedCache;
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Profiles of the users a page talks to, so that controllers can look the sender up on every message
+ * without a Graph API call each time.
+ * <p>
+ * A profile is kept for {@code ttlSeconds}. Once most of that time is over, the next lookup still gets the
+ * cached profile but also reloads it in the background, so that profiles in use never expire. Concurrent
+ * lookups of a profile not in the cache share a single call. Users which do not exist, deleted users for
+ * instance, can be remembered for {@code negativeTtlSeconds} so that they are not looked up again and again.
+ * <p>
+ * Entries only hold the profile and a timestamp in seconds, so millions of them fit in memory. When full
+ * an entry is evicted as by a {@link BoundedCache}, profiles in use stay.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class UserCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    /**
+     * Part of the time to live after which a profile is reloaded in the background.
+     */
+    private static final double REFRESH_AHEAD_FACTOR = 0.8;
+
+    private final int ttlSeconds;
+    private final int refreshAfterSeconds;
+    private final int negativeTtlSeconds;
+    private final long epoch = System.nanoTime();
+
+    private final BoundedCache<String, Entry> entries;
+    private final Map<String, CompletableFuture<User>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "fb-user-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxEntries         maximum number of profiles kept
+     * @param ttlSeconds         time a profile is kept
+     * @param negativeTtlSeconds time a user who does not exist is remembered, {@code 0} to not remember
+     */
+    public UserCache(int maxEntries, int ttlSeconds, int negativeTtlSeconds) {
+        this.entries = new BoundedCache<>(maxEntries);
+        this.ttlSeconds = ttlSeconds;
+        this.refreshAfterSeconds = (int) (ttlSeconds * REFRESH_AHEAD_FACTOR);
+        this.negativeTtlSeconds = negativeTtlSeconds;
+    }
+
+    /**
+     * @param id     page scoped id of the user
+     * @param loader loads the profile from facebook
+     * @return the profile of the user
+     * @throws HttpClientErrorException if facebook answered with an error, also when the user is known not
+     *                                  to exist
+     */
+    public User get(String id, Supplier<User> loader) {
+        int now = now();
+        Entry entry = entries.get(id);
+        if (entry != null && now - entry.loadedAt < (entry.value instanceof User ? ttlSeconds : negativeTtlSeconds)) {
+            hits.increment();
+            if (entry.value instanceof User) {
+                if (now - entry.loadedAt >= refreshAfterSeconds) {
+                    refresh(id, loader);
+                }
+                return (User) entry.value;
+            }
+            throw (HttpClientErrorException) entry.value;
+        }
+        misses.increment();
+        try {
+            return load(id, loader).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Load the profile on the calling thread, unless it's being loaded already.
+     */
+    private CompletableFuture<User> load(String id, Supplier<User> loader) {
+        CompletableFuture<User> future = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = loading.putIfAbsent(id, future);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight;
+        }
+        try {
+            User user = loader.get();
+            if (user != null) {
+                put(id, user);
+            }
+            future.complete(user);
+        } catch (HttpClientErrorException e) {
+            if (negativeTtlSeconds > 0 && isUnknownUser(e)) {
+                put(id, e);
+            }
+            future.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(id, future);
+        }
+        return future;
+    }
+
+    private void refresh(String id, Supplier<User> loader) {
+        if (loading.containsKey(id)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                refreshes.increment();
+                load(id, loader).whenComplete((user, t) -> {
+                    if (t != null) {
+                        logger.debug("Error refreshing user {}: {}", id, t.getMessage());
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("User cache stopped, user {} not refreshed.", id);
+        }
+    }
+
+    /**
+     * The Graph API answers error code 100 when asked for an object which does not exist.
+     */
+    private static boolean isUnknownUser(HttpClientErrorException e) {
+        return e.getStatusCode() == HttpStatus.NOT_FOUND || (e.getStatusCode() == HttpStatus.BAD_REQUEST
+                && e.getResponseBodyAsString().replace(" ", "").contains("\"code\":100"));
+    }
+
+    private void put(String id, Object value) {
+        entries.put(id, new Entry(value, now()));
+    }
+
+    /**
+     * @param id page scoped id of the user
+     */
+    public void invalidate(String id) {
+        entries.remove(id);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return seconds since the cache was created.
+     */
+    private int now() {
+        return (int) ((System.nanoTime() - epoch) / 1_000_000_000L);
+    }
+
+    /**
+     * @return number of profiles and unknown users kept.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups which had to call facebook or wait for a call.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of loads which joined a call already in flight.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of profiles reloaded in the background before they expired.
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full.
+     */
+    public long getEvictions() {
+        return entries.getEvictions();
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * A profile, or the error answered for a user who does not exist.
+     */
+    private static class Entry {
+        final Object value;
+        final int loadedAt;
+
+        Entry(Object value, int loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
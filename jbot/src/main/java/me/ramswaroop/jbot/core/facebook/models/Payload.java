@@ -1,5 +1,6 @@
 package me.ramswaroop.jbot.core.facebook.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -100,6 +101,7 @@ public class Payload {
         return this;
     }
 
+    @JsonIgnore
     public Boolean getReusable() {
         return isReusable;
     }
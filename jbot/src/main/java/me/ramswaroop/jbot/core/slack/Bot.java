@@ -5,17 +5,19 @@ import me.ramswaroop.jbot.core.common.BaseBot;
 import me.ramswaroop.jbot.core.common.BotWebSocketHandler;
 import me.ramswaroop.jbot.core.common.Controller;
 import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.common.HashedWheelTimer;
 import me.ramswaroop.jbot.core.slack.models.Event;
 import me.ramswaroop.jbot.core.slack.models.Message;
+import me.ramswaroop.jbot.core.slack.models.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.util.StringUtils;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.client.WebSocketConnectionManager;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 
 import javax.annotation.PostConstruct;
@@ -25,9 +27,10 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 
@@ -42,8 +45,6 @@ public abstract class Bot extends BaseBot {
 
     private static final Logger logger = LoggerFactory.getLogger(Bot.class);
 
-    private final Object sendMessageLock = new Object();
-
     /**
      * Service to access Slack APIs.
      */
@@ -51,20 +52,76 @@ public abstract class Bot extends BaseBot {
     protected SlackService slackService;
 
     /**
-     * Task to ping Slack at regular intervals to prevent
+     * Mapper to decode the events received from Slack.
+     */
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * RTM connection of the bot to Slack.
+     */
+    private RtmConnection rtmConnection;
+
+    /**
+     * Pings Slack at regular intervals to prevent
      * closing of web socket connection.
      */
-    private PingTask pingTask;
+    @Autowired
+    protected HeartbeatService heartbeatService;
+
+    /**
+     * Web socket client shared by the RTM connections of this bot.
+     */
+    private StandardWebSocketClient webSocketClient;
+
+    /**
+     * Maximum number of outbound frames waiting to be written to Slack.
+     */
+    @Value("${slackOutboundQueueCapacity:1000}")
+    private int outboundQueueCapacity = 1000;
+
+    /**
+     * Single writer through which all frames are sent to Slack.
+     */
+    private OutboundMessageWriter outboundMessageWriter;
+
+    /**
+     * Minimum interval between two messages to the same channel, 0 to disable rate limiting.
+     */
+    @Value("${slackChannelRateLimitMillis:1000}")
+    private long channelRateLimitMillis = 1000;
+
+    /**
+     * Number of messages a channel may receive back to back before being rate limited.
+     */
+    @Value("${slackChannelRateLimitBurst:1}")
+    private int channelRateLimitBurst = 1;
+
+    /**
+     * Whether to merge messages waiting for the same channel into one message.
+     */
+    @Value("${slackMergeQueuedMessages:false}")
+    private boolean mergeQueuedMessages = false;
+
+    /**
+     * Rate limiter in front of {@link #reply(WebSocketSession, Event, Message)}.
+     */
+    private ChannelRateLimiter channelRateLimiter;
+
+    /**
+     * Time to wait for Slack to acknowledge a reply once it is sent, time spent in rate limiting excluded.
+     */
+    @Value("${slackReplyTimeoutMillis:10000}")
+    private long replyTimeoutMillis = 10000;
 
     /**
-     * Executor service which houses the ping task.
+     * Correlates replies with the acks from Slack.
      */
-    private ScheduledExecutorService pingScheduledExecutorService;
+    private ReplyTracker replyTracker;
 
     /**
-     * Web socket manager
+     * Timer of the reply timeouts when no {@link HeartbeatService} is injected.
      */
-    private WebSocketConnectionManager webSocketManager;
+    private HashedWheelTimer replyTimer;
 
     /**
      * Class extending this must implement this as it's
@@ -123,80 +180,197 @@ public abstract class Bot extends BaseBot {
      * @param textMessage websocket message received from slack
      */
     public final void handleTextMessage(WebSocketSession session, TextMessage textMessage) {
-        ObjectMapper mapper = new ObjectMapper();
         logger.debug("Response from Slack: {}", textMessage.getPayload());
         try {
-            Event event = mapper.readValue(textMessage.getPayload(), Event.class);
-            if (event.getType() != null) {
-                if (event.getType().equalsIgnoreCase(EventType.IM_OPEN.name())
-                        || event.getType().equalsIgnoreCase(EventType.IM_CREATED.name())) {
-                    if (event.getChannelId() != null) {
-                        slackService.addImChannelId(event.getChannelId());
-                    } else if (event.getChannel() != null) {
-                        slackService.addImChannelId(event.getChannel().getId());
-                    }
-                } else if (event.getType().equalsIgnoreCase(EventType.MESSAGE.name())) {
-                    if (event.getText() != null && event.getText().contains(slackService.getCurrentUser().getId())) { // direct mention
-                        event.setType(EventType.DIRECT_MENTION.name());
-                    } else if (slackService.getImChannelIds().contains(event.getChannelId())) { // direct message
-                        event.setType(EventType.DIRECT_MESSAGE.name());
-                    }
-                } else if (event.getType().equalsIgnoreCase(EventType.HELLO.name())) {
-                    pingAtRegularIntervals(session);
-                }
-            } else { // slack does not send any TYPE for acknowledgement messages
-                event.setType(EventType.ACK.name());
-            }
+            handleEvent(session, mapper.readValue(textMessage.getPayload(), Event.class));
+        } catch (Exception e) {
+            logger.error("Error handling response from Slack: {} \nException: ", textMessage.getPayload(), e);
+        }
+    }
 
-            if (isConversationOn(event)) {
-                invokeChainedMethod(session, event);
+    /**
+     * Classify a decoded Slack event and invoke the matching controller methods.
+     *
+     * @param session websocket session between bot and slack, {@code null} if the event did not come over RTM
+     * @param event   received from slack
+     */
+    protected final void handleEvent(WebSocketSession session, Event event) {
+        RtmConnection connection = getRtmConnection(session);
+        if (connection != null && connection.isDuplicate(event)) {
+            logger.debug("Dropping {} event received on both connections while reconnecting.", event.getType());
+            return;
+        }
+        SlackService slackService = getSlackService(session);
+        if (event.getType() != null) {
+            if (event.getType().equalsIgnoreCase(EventType.IM_OPEN.name())
+                    || event.getType().equalsIgnoreCase(EventType.IM_CREATED.name())) {
+                if (event.getChannelId() != null) {
+                    slackService.addImChannelId(event.getChannelId());
+                } else if (event.getChannel() != null) {
+                    slackService.addImChannelId(event.getChannel().getId());
+                }
+            } else if (event.getType().equalsIgnoreCase(EventType.MESSAGE.name())) {
+                User currentUser = slackService.getCurrentUser();
+                if (event.getText() != null && currentUser != null
+                        && event.getText().contains(currentUser.getId())) { // direct mention
+                    event.setType(EventType.DIRECT_MENTION.name());
+                } else if ("im".equals(event.getChannelType())
+                        || slackService.getImChannelIds().contains(event.getChannelId())) { // direct message
+                    event.setType(EventType.DIRECT_MESSAGE.name());
+                }
+            } else if (event.getType().equalsIgnoreCase(EventType.HELLO.name())) {
+                if (connection != null) {
+                    connection.startHeartbeat(session);
+                }
+            } else if (event.getType().equalsIgnoreCase(EventType.PONG.name())) {
+                if (connection != null) {
+                    connection.pong();
+                }
             } else {
-                invokeMethods(session, event);
+                slackService.updateMetadata(event);
             }
-        } catch (Exception e) {
-            logger.error("Error handling response from Slack: {} \nException: ", textMessage.getPayload(), e);
+        } else { // slack does not send any TYPE for acknowledgement messages
+            event.setType(EventType.ACK.name());
+            getReplyTracker().acknowledge(event);
+        }
+
+        if (isConversationOn(event)) {
+            invokeChainedMethod(session, event);
+        } else {
+            invokeMethods(session, event);
         }
     }
 
     /**
-     * Method to send a reply back to Slack after receiving an {@link Event}.
+     * Method to send a reply back to Slack after receiving an {@link Event}. The reply passes through
+     * the {@link ChannelRateLimiter} and is then written to Slack asynchronously by the
+     * {@link OutboundMessageWriter}. It gets an id when written and the returned future completes
+     * when Slack acknowledges it. A reply to an event in a thread, or to the event which started a thread
+     * conversation, is posted in the thread unless its {@code thread_ts} is set already.
      * Learn <a href="https://api.slack.com/rtm">more on sending responses to Slack.</a>
      *
      * @param session websocket session between bot and slack
      * @param event   received from slack
      * @param reply   the message to send to slack
+     * @return future completed with the ack from Slack, failed with a {@link SlackReplyException} if the
+     * reply was rejected because of backpressure or Slack answered with an error, or with a
+     * {@link java.util.concurrent.TimeoutException} if no ack came in time
      */
-    protected final void reply(WebSocketSession session, Event event, Message reply) {
+    protected final CompletableFuture<Event> reply(WebSocketSession session, Event event, Message reply) {
+        ReplyTracker.Reply trackedReply = getReplyTracker().newReply();
         try {
             if (StringUtils.isEmpty(reply.getType())) {
                 reply.setType(EventType.MESSAGE.name().toLowerCase());
             }
-            reply.setText(encode(reply.getText()));
             if (reply.getChannel() == null && event.getChannelId() != null) {
                 reply.setChannel(event.getChannelId());
             }
-            synchronized (sendMessageLock) {
-                session.sendMessage(new TextMessage(reply.toJSONString()));
+            if (reply.getThreadTs() == null && event.getChannelId() != null
+                    && event.getChannelId().equals(reply.getChannel())) {
+                reply.setThreadTs(getThreadTs(event));
             }
             if (logger.isDebugEnabled()) {  // For debugging purpose only
-                logger.debug("Reply (Message): {}", reply.toJSONString());
+                logger.debug("Reply (Message): {}", MessageEncoder.encode(reply));
+            }
+            if (!getChannelRateLimiter().submit(reply, new ReplySender(session, trackedReply))) {
+                trackedReply.fail(new SlackReplyException("Too many messages waiting for channel " + reply.getChannel()));
             }
         } catch (IOException e) {
             logger.error("Error sending event: {}. Exception: {}", event.getText(), e.getMessage());
+            trackedReply.fail(e);
+        }
+        return trackedReply.getFuture();
+    }
+
+    /**
+     * @param event received from slack
+     * @return the thread a reply to {@code event} goes in, {@code null} to post it in the channel
+     */
+    private String getThreadTs(Event event) {
+        if (event.getThreadTs() != null) {
+            return event.getThreadTs();
+        }
+        String key = getConversationKey(event); // a thread conversation started by this event
+        if (key != null && (key.equals(ConversationScope.THREAD.key(event))
+                || key.equals(ConversationScope.THREAD_USER.key(event)))) {
+            return event.getTs();
+        }
+        return null;
+    }
+
+    protected final CompletableFuture<Event> reply(WebSocketSession session, Event event, String text) {
+        return reply(session, event, new Message(text));
+    }
+
+    /**
+     * @return the per channel rate limiter, exposes the delays of rate limited replies.
+     */
+    protected final synchronized ChannelRateLimiter getChannelRateLimiter() {
+        if (channelRateLimiter == null) {
+            channelRateLimiter = new ChannelRateLimiter(channelRateLimitMillis, channelRateLimitBurst, 10000,
+                    100, mergeQueuedMessages);
         }
+        return channelRateLimiter;
     }
 
-    protected final void reply(WebSocketSession session, Event event, String text) {
-        reply(session, event, new Message(text));
+    /**
+     * @return the tracker of replies waiting for an ack, exposes the send latencies.
+     */
+    protected final synchronized ReplyTracker getReplyTracker() {
+        if (replyTracker == null) {
+            replyTracker = new ReplyTracker(4096, replyTimeoutMillis, getReplyTimer());
+        }
+        return replyTracker;
     }
 
     /**
-     * Call this method to start a conversation.
+     * @return the timer of the heartbeats, or a timer of its own if the bot runs without a {@link HeartbeatService}
+     */
+    private HashedWheelTimer getReplyTimer() {
+        if (heartbeatService != null) {
+            return heartbeatService.getTimer();
+        }
+        replyTimer = new HashedWheelTimer("slack-reply-timer-" + getClass().getSimpleName(), 100,
+                TimeUnit.MILLISECONDS, 512);
+        return replyTimer;
+    }
+
+    /**
+     * @return the writer through which all frames are sent to Slack, exposes queue depth and write latency.
+     */
+    protected final synchronized OutboundMessageWriter getOutboundMessageWriter() {
+        if (outboundMessageWriter == null) {
+            outboundMessageWriter = new OutboundMessageWriter("slack-outbound-" + getClass().getSimpleName(),
+                    outboundQueueCapacity);
+        }
+        return outboundMessageWriter;
+    }
+
+    /**
+     * Call this method to start a conversation in the channel of the event.
      *
      * @param event received from slack
      */
     protected final void startConversation(Event event, String methodName) {
-        startConversation(event.getChannelId(), methodName);
+        startConversation(event, methodName, ConversationScope.CHANNEL);
+    }
+
+    /**
+     * Call this method to start a conversation bound to the channel, thread and/or user of the event.
+     * Replies to the events of a {@link ConversationScope#THREAD} or {@link ConversationScope#THREAD_USER}
+     * conversation are posted in the thread.
+     *
+     * @param event      received from slack
+     * @param methodName first method of the conversation
+     * @param scope      what the conversation is bound to
+     */
+    protected final void startConversation(Event event, String methodName, ConversationScope scope) {
+        String key = scope.key(event);
+        if (key == null) {
+            logger.warn("Event of type {} lacks the ids of a {} conversation, not starting it.", event.getType(), scope);
+            return;
+        }
+        startConversation(key, methodName);
     }
 
     /**
@@ -205,7 +379,8 @@ public abstract class Bot extends BaseBot {
      * @param event received from slack
      */
     protected final void nextConversation(Event event) {
-        nextConversation(event.getChannelId());
+        String key = getConversationKey(event);
+        if (key != null) nextConversation(key);
     }
 
     /**
@@ -214,17 +389,37 @@ public abstract class Bot extends BaseBot {
      * @param event received from slack
      */
     protected final void stopConversation(Event event) {
-        stopConversation(event.getChannelId());
+        String key = getConversationKey(event);
+        if (key != null) stopConversation(key);
     }
 
     /**
-     * Check whether a conversation is up in a particular slack channel.
+     * Check whether a conversation is up for the channel, thread or user of the event.
      *
      * @param event received from slack
      * @return true if a conversation is on, false otherwise.
      */
     protected final boolean isConversationOn(Event event) {
-        return isConversationOn(event.getChannelId());
+        return getConversationKey(event) != null;
+    }
+
+    /**
+     * Find the conversation {@code event} belongs to, the most specific scope first.
+     *
+     * @param event received from slack
+     * @return key of the conversation, {@code null} if none is on
+     */
+    private String getConversationKey(Event event) {
+        if (conversationQueueMap.isEmpty()) {
+            return null;
+        }
+        for (ConversationScope scope : ConversationScope.MOST_SPECIFIC_FIRST) {
+            String key = scope.key(event);
+            if (key != null && conversationQueueMap.containsKey(key)) {
+                return key;
+            }
+        }
+        return null;
     }
 
     /**
@@ -266,7 +461,8 @@ public abstract class Bot extends BaseBot {
      * @param event   received from slack
      */
     private void invokeChainedMethod(WebSocketSession session, Event event) {
-        Queue<MethodWrapper> queue = conversationQueueMap.get(event.getChannelId());
+        String key = getConversationKey(event);
+        Queue<MethodWrapper> queue = key == null ? null : conversationQueueMap.get(key);
 
         if (queue != null && !queue.isEmpty()) {
             MethodWrapper methodWrapper = queue.peek();
@@ -286,22 +482,52 @@ public abstract class Bot extends BaseBot {
     }
 
     /**
-     * Encode the text before sending to Slack.
-     * Learn <a href="https://api.slack.com/docs/formatting">more on message formatting in Slack</a>
+     * @return the web socket client shared by the RTM connections of this bot.
+     */
+    protected final synchronized StandardWebSocketClient client() {
+        if (webSocketClient == null) {
+            webSocketClient = new StandardWebSocketClient();
+        }
+        return webSocketClient;
+    }
+
+    private BotWebSocketHandler handler() {
+        return new BotWebSocketHandler(getSlackBot());
+    }
+
+    /**
+     * Find the RTM connection through which {@code session} was opened.
      *
-     * @param message to encode
-     * @return encoded message
+     * @param session websocket session between bot and slack
+     * @return the RTM connection of the session
      */
-    private String encode(String message) {
-        return message == null ? null : message.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    protected RtmConnection getRtmConnection(WebSocketSession session) {
+        Map<String, Object> attributes = session == null ? null : session.getAttributes();
+        Object connection = attributes == null ? null : attributes.get(RtmConnection.SESSION_ATTRIBUTE);
+        return connection instanceof RtmConnection ? (RtmConnection) connection : rtmConnection;
     }
 
-    private StandardWebSocketClient client() {
-        return new StandardWebSocketClient();
+    /**
+     * Find the token of the workspace {@code session} belongs to.
+     *
+     * @param session websocket session between bot and slack
+     * @return slack token of the workspace of the session, {@link #getSlackToken()} if the session
+     * is not of a RTM connection, {@code null} if there is no such workspace
+     */
+    protected String getSlackToken(WebSocketSession session) {
+        RtmConnection connection = getRtmConnection(session);
+        return connection != null ? connection.getSlackToken() : getSlackToken();
     }
 
-    private BotWebSocketHandler handler() {
-        return new BotWebSocketHandler(getSlackBot());
+    /**
+     * Find the {@link SlackService} with the directory of the workspace {@code session} belongs to.
+     *
+     * @param session websocket session between bot and slack
+     * @return service to access Slack APIs for the workspace of the session
+     */
+    protected SlackService getSlackService(WebSocketSession session) {
+        RtmConnection connection = getRtmConnection(session);
+        return connection != null ? connection.getSlackService() : slackService;
     }
 
     /**
@@ -310,76 +536,122 @@ public abstract class Bot extends BaseBot {
      */
     @PostConstruct
     protected void startRTMAndWebSocketConnection() {
-        slackService.connectRTM(getSlackToken());
-        if (slackService.getWebSocketUrl() != null) {
-            webSocketManager = new WebSocketConnectionManager(client(), handler(), slackService.getWebSocketUrl());
-            webSocketManager.start();
-        } else {
-            logger.error("No web socket url returned by Slack.");
-        }
+        rtmConnection = new RtmConnection(getSlackToken(), slackService, client(), handler(),
+                heartbeatService, getOutboundMessageWriter());
+        rtmConnection.start();
     }
 
     /**
-     * Shutdown ping scheduler when application shuts down.
+     * Close the RTM connection and shutdown rate limiter and outbound writer
+     * when application shuts down.
      */
     @PreDestroy
     public void destroy() {
-        if (pingScheduledExecutorService != null) {
-            pingScheduledExecutorService.shutdownNow();
+        if (rtmConnection != null) {
+            rtmConnection.stop();
+        }
+        if (channelRateLimiter != null) {
+            channelRateLimiter.shutdown();
+        }
+        if (outboundMessageWriter != null) {
+            outboundMessageWriter.stop();
+        }
+        if (replyTimer != null) {
+            replyTimer.stop();
         }
     }
 
     /**
-     * Starts the ping task. Note: It only gets called on HELLO event type.
+     * Send a reply released by the {@link ChannelRateLimiter}: assign its id, serialize it, encoding its
+     * text, and queue it on the {@link OutboundMessageWriter}. The reply is completed when its ack arrives.
+     * Override this to send replies over another transport, it must not block.
      *
-     * @param session
+     * @param session websocket session between bot and slack
+     * @param message the message to send to slack
+     * @param reply   to complete or fail with the outcome
+     * @return {@code true} if the message was sent
      */
-    private void pingAtRegularIntervals(WebSocketSession session) {
-        pingTask = new PingTask(session);
-        if (pingScheduledExecutorService != null) {
-            pingScheduledExecutorService.shutdownNow();
+    protected boolean sendReply(WebSocketSession session, Message message, ReplyTracker.Reply reply) {
+        message.setId(reply.send());
+        try {
+            if (!getOutboundMessageWriter().send(session, MessageEncoder.encode(message))) {
+                logger.warn("Outbound queue full, reply to channel {} not sent.", message.getChannel());
+                reply.fail(new SlackReplyException("Outbound queue full"));
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Error sending message: {}. Exception: {}", message.getText(), e.getMessage());
+            reply.fail(e);
+            return false;
         }
-        pingScheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-        pingScheduledExecutorService.scheduleAtFixedRate(pingTask, 1L, 30L, TimeUnit.SECONDS);
     }
 
-    class PingTask implements Runnable {
+    /**
+     * Post a reply through the Web API ({@code chat.postMessage}), for bots whose events do not come
+     * over RTM. The reply goes ahead of the background calls of the bot and is completed with the
+     * response of Slack. It is posted with the token of the workspace of {@code session}, and fails if
+     * there is no such workspace.
+     *
+     * @param session websocket session the event came through, {@code null} if it came over HTTP
+     * @param message the message to send to slack
+     * @param reply   to complete or fail with the outcome
+     * @return {@code true} if the call is queued
+     */
+    protected final boolean postReply(WebSocketSession session, Message message, ReplyTracker.Reply reply) {
+        String slackToken = getSlackToken(session);
+        if (slackToken == null) {
+            reply.fail(new SlackReplyException("No workspace to post the reply to channel " + message.getChannel()));
+            return false;
+        }
+        reply.start();
+        getSlackService(session).getWebApiClient().postMessage(slackToken, message,
+                SlackWebApiClient.Priority.INTERACTIVE)
+                .whenComplete((response, t) -> {
+                    if (t == null) {
+                        reply.complete(response);
+                    } else {
+                        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                        logger.error("Error posting message to channel {}: {}", message.getChannel(), cause.getMessage());
+                        reply.fail(cause);
+                    }
+                });
+        return true;
+    }
 
-        WebSocketSession webSocketSession;
+    /**
+     * Sends a reply released by the {@link ChannelRateLimiter} unless it failed meanwhile.
+     */
+    private class ReplySender implements ChannelRateLimiter.Sender {
+        private final WebSocketSession session;
+        private final ReplyTracker.Reply reply;
 
-        PingTask(WebSocketSession webSocketSession) {
-            this.webSocketSession = webSocketSession;
+        ReplySender(WebSocketSession session, ReplyTracker.Reply reply) {
+            this.session = session;
+            this.reply = reply;
         }
 
         @Override
-        public void run() {
-            try {
-                logger.debug("Pinging Slack...");
-                Message message = new Message();
-                message.setType(EventType.PING.name().toLowerCase());
-                synchronized (sendMessageLock) {
-                    webSocketSession.sendMessage(new TextMessage(message.toJSONString()));
-                }
-            } catch (Exception e) {
-                logger.error("Error pinging Slack. Slack bot may go offline when not active. Exception: ", e);
-                if (!isWebSocketSessionOpen()) {
-                    try {
-                        webSocketManager.stop();
-                    } catch (Exception innerException) {
-                        logger.error("Error closing websocket after failed ping. Exception: ", innerException);
-                    }
-                    pingTask = null;
-                    if (pingScheduledExecutorService != null) {
-                        pingScheduledExecutorService.shutdownNow();
-                    }
-                    pingScheduledExecutorService = null;
-                    startRTMAndWebSocketConnection();
-                }
+        public boolean send(Message message) {
+            if (reply.isDone()) {
+                logger.debug("Reply to channel {} failed before being sent, dropping it.", message.getChannel());
+                return false;
             }
+            return sendReply(session, message, reply);
         }
 
-        boolean isWebSocketSessionOpen() {
-            return pingTask != null && webSocketSession.isOpen();
+        @Override
+        public void merged(ChannelRateLimiter.Sender next) {
+            if (next instanceof ReplySender) {
+                ReplyTracker.Reply merged = ((ReplySender) next).reply;
+                reply.getFuture().whenComplete((ack, t) -> {
+                    if (t != null) {
+                        merged.fail(t);
+                    } else {
+                        merged.getFuture().complete(ack);
+                    }
+                });
+            }
         }
     }
 }
@@ -0,0 +1,331 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per channel rate limiter for outbound Slack messages. Slack allows about one message per second
+ * per channel, anything above that gets throttled or even disconnects the RTM session.
+ * <p>
+ * Every channel has a token bucket, kept as a single theoretical arrival time (GCRA). A message which
+ * conforms is released right away, otherwise it is queued and released by a scheduler thread once the
+ * bucket allows, so controller threads never block. A bucket without queued messages whose arrival time
+ * has passed is equivalent to a full bucket. The buckets are held in an LRU map of at most
+ * {@code maxTrackedChannels} entries: when a new channel comes in, the least recently used buckets are
+ * looked at and the idle ones evicted. If none of them is idle, the message to the new channel is
+ * rejected, as evicting a bucket which is not full would let its channel go over the rate.
+ * <p>
+ * Optionally, a message queued for a channel which already has a message waiting is merged into
+ * the waiting one, its {@link Sender} is then told through {@link Sender#merged(Sender)}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class ChannelRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelRateLimiter.class);
+
+    /**
+     * Number of least recently used buckets looked at to make room for a new channel.
+     */
+    private static final int EVICTION_SCAN = 16;
+
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxTrackedChannels;
+    private final int maxPendingPerChannel;
+    private final boolean mergeQueuedMessages;
+    private final LongSupplier nanoClock;
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+
+    private final LongAdder delayedMessages = new LongAdder();
+    private final LongAdder mergedMessages = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final LongAdder releasedDelayedMessages = new LongAdder();
+    private final LongAdder delayNanos = new LongAdder();
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+
+    /**
+     * @param intervalMillis       minimum interval between two messages to a channel
+     * @param burst                number of messages a channel may receive back to back
+     * @param maxTrackedChannels   maximum number of channel buckets kept
+     * @param maxPendingPerChannel number of messages which can wait for a channel
+     * @param mergeQueuedMessages  whether to merge messages waiting for the same channel
+     */
+    public ChannelRateLimiter(long intervalMillis, int burst, int maxTrackedChannels,
+                              int maxPendingPerChannel, boolean mergeQueuedMessages) {
+        this(intervalMillis, burst, maxTrackedChannels, maxPendingPerChannel, mergeQueuedMessages, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock source of {@link System#nanoTime()}, replaced in tests
+     */
+    ChannelRateLimiter(long intervalMillis, int burst, int maxTrackedChannels, int maxPendingPerChannel,
+                       boolean mergeQueuedMessages, LongSupplier nanoClock) {
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.burstToleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+        this.maxTrackedChannels = Math.max(maxTrackedChannels, 1);
+        this.maxPendingPerChannel = maxPendingPerChannel;
+        this.mergeQueuedMessages = mergeQueuedMessages;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Release {@code message} to {@code sender} now if the channel's bucket allows it, otherwise
+     * queue it to be released later.
+     *
+     * @param message the message to send, its channel must be set
+     * @param sender  called with the message once it may be sent
+     * @return {@code true} if the message was released or queued, {@code false} if too many messages
+     * are waiting for the channel already or the limiter is shutdown
+     */
+    public boolean submit(Message message, Sender sender) {
+        String channel = message.getChannel();
+        if (stopped) {
+            return rejectStopped(channel);
+        }
+        if (channel == null || intervalNanos <= 0) {
+            return sender.send(message);
+        }
+        long now = nanoClock.getAsLong();
+        synchronized (this) {
+            if (stopped) { // shutdown meanwhile
+                return rejectStopped(channel);
+            }
+            Bucket bucket = buckets.get(channel);
+            if (bucket == null) {
+                if (buckets.size() >= maxTrackedChannels && !evict(now)) {
+                    rejectedMessages.increment();
+                    logger.warn("No idle channel among {} tracked, message to channel {} not sent.",
+                            buckets.size(), channel);
+                    return false;
+                }
+                bucket = new Bucket();
+                buckets.put(channel, bucket);
+            }
+            if (bucket.pending == null && bucket.conforms(now)) {
+                bucket.take(now);
+            } else {
+                if (bucket.pending == null) {
+                    bucket.pending = new ArrayDeque<>();
+                    schedule(channel, bucket.waitNanos(now));
+                } else if (mergeQueuedMessages && merge(bucket.pending.peekLast(), message)) {
+                    bucket.pending.peekLast().sender.merged(sender);
+                    mergedMessages.increment();
+                    return true;
+                } else if (bucket.pending.size() >= maxPendingPerChannel) {
+                    rejectedMessages.increment();
+                    logger.warn("Too many messages waiting for channel {}, message not sent.", channel);
+                    return false;
+                }
+                bucket.pending.add(new Pending(message, sender, now));
+                delayedMessages.increment();
+                return true;
+            }
+        }
+        return sender.send(message);
+    }
+
+    /**
+     * Release the oldest message waiting for {@code channel}.
+     *
+     * @param channel the channel id
+     */
+    private void release(String channel) {
+        Pending pending;
+        long now = nanoClock.getAsLong();
+        synchronized (this) {
+            Bucket bucket = buckets.get(channel);
+            if (bucket == null || bucket.pending == null) return;
+            if (!bucket.conforms(now)) {
+                schedule(channel, bucket.waitNanos(now));
+                return;
+            }
+            pending = bucket.pending.poll();
+            bucket.take(now);
+            if (bucket.pending.isEmpty()) {
+                bucket.pending = null;
+            } else {
+                schedule(channel, bucket.waitNanos(now));
+            }
+        }
+        long delay = now - pending.queuedAt;
+        releasedDelayedMessages.increment();
+        delayNanos.add(delay);
+        maxDelayNanos.accumulateAndGet(delay, Math::max);
+        try {
+            if (!pending.sender.send(pending.message)) {
+                logger.warn("Delayed message to channel {} could not be sent.", channel);
+            }
+        } catch (Exception e) {
+            logger.error("Error sending delayed message to channel {}: ", channel, e);
+        }
+    }
+
+    private boolean rejectStopped(String channel) {
+        rejectedMessages.increment();
+        logger.warn("Rate limiter is shutdown, message to channel {} not sent.", channel);
+        return false;
+    }
+
+    /**
+     * Make room for a new bucket by evicting the idle ones among the least recently used buckets. Call with
+     * the lock held.
+     *
+     * @param now current {@link System#nanoTime()}
+     * @return {@code false} if none of the buckets looked at is idle
+     */
+    private boolean evict(long now) {
+        Iterator<Map.Entry<String, Bucket>> iterator = buckets.entrySet().iterator();
+        boolean evicted = false;
+        for (int i = 0; i < EVICTION_SCAN && iterator.hasNext(); i++) {
+            if (iterator.next().getValue().isIdle(now)) {
+                iterator.remove();
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Merge {@code next} into {@code last} if both are plain messages to the same thread.
+     */
+    private static boolean merge(Pending last, Message next) {
+        Message message = last.message;
+        if (message.getText() == null || next.getText() == null
+                || !Objects.equals(message.getType(), next.getType())
+                || !Objects.equals(message.getThreadTs(), next.getThreadTs())) {
+            return false;
+        }
+        message.setText(message.getText() + "\n" + next.getText());
+        return true;
+    }
+
+    private void schedule(String channel, long delayNanos) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "slack-rate-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.schedule(() -> release(channel), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop releasing queued messages and reject new ones.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        buckets.clear();
+    }
+
+    /**
+     * @return number of channels currently tracked.
+     */
+    public synchronized int getTrackedChannels() {
+        return buckets.size();
+    }
+
+    /**
+     * @return number of messages which had to wait for their channel's bucket.
+     */
+    public long getDelayedMessages() {
+        return delayedMessages.sum();
+    }
+
+    public long getMergedMessages() {
+        return mergedMessages.sum();
+    }
+
+    public long getRejectedMessages() {
+        return rejectedMessages.sum();
+    }
+
+    /**
+     * @return average delay of released messages which had to wait, in nanoseconds.
+     */
+    public long getAverageDelayNanos() {
+        long count = releasedDelayedMessages.sum();
+        return count == 0 ? 0 : delayNanos.sum() / count;
+    }
+
+    public long getMaxDelayNanos() {
+        return maxDelayNanos.get();
+    }
+
+    /**
+     * Sends a message once the rate limiter releases it.
+     */
+    public interface Sender {
+        /**
+         * @param message the message to send
+         * @return {@code true} if the message was sent
+         */
+        boolean send(Message message);
+
+        /**
+         * Called when the message of {@code next} has been merged into the message of this sender,
+         * so this sender now sends both.
+         *
+         * @param next sender of the merged message, never called
+         */
+        default void merged(Sender next) {
+        }
+    }
+
+    private class Bucket {
+        /**
+         * Theoretical arrival time of the next message, in {@link System#nanoTime()}.
+         */
+        long tat = Long.MIN_VALUE;
+        ArrayDeque<Pending> pending;
+
+        boolean conforms(long now) {
+            return tat == Long.MIN_VALUE || tat - burstToleranceNanos - now <= 0;
+        }
+
+        void take(long now) {
+            tat = (tat == Long.MIN_VALUE || tat - now < 0 ? now : tat) + intervalNanos;
+        }
+
+        long waitNanos(long now) {
+            return Math.max(0, tat - burstToleranceNanos - now);
+        }
+
+        boolean isIdle(long now) {
+            return pending == null && (tat == Long.MIN_VALUE || tat - now <= 0);
+        }
+    }
+
+    private static class Pending {
+        final Message message;
+        final Sender sender;
+        final long queuedAt;
+
+        Pending(Message message, Sender sender, long queuedAt) {
+            this.message = message;
+            this.sender = sender;
+            this.queuedAt = queuedAt;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Event;
+import org.springframework.util.StringUtils;
+
+/**
+ * What a conversation started with {@link Bot#startConversation(Event, String, ConversationScope)} is
+ * bound to. Events are matched with the most specific scope first, so conversations in different threads
+ * of a channel, or with different users, run side by side.
+ * <p>
+ * A thread is identified by the {@code thread_ts} of the event, or by its {@code ts} when the event
+ * is not in a thread yet, in which case the replies of the conversation start the thread.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public enum ConversationScope {
+    /**
+     * One conversation per channel, the default.
+     */
+    CHANNEL,
+    /**
+     * One conversation per user in a channel.
+     */
+    CHANNEL_USER,
+    /**
+     * One conversation per thread.
+     */
+    THREAD,
+    /**
+     * One conversation per user in a thread.
+     */
+    THREAD_USER;
+
+    /**
+     * Scopes in the order events are matched with.
+     */
+    static final ConversationScope[] MOST_SPECIFIC_FIRST = {THREAD_USER, THREAD, CHANNEL_USER, CHANNEL};
+
+    /**
+     * @param event received from slack
+     * @return key of the conversation {@code event} belongs to in this scope, {@code null} if the event
+     * lacks the channel, thread or user
+     */
+    public String key(Event event) {
+        String channelId = event.getChannelId();
+        if (StringUtils.isEmpty(channelId)) {
+            return null;
+        }
+        switch (this) {
+            case CHANNEL:
+                return channelId;
+            case CHANNEL_USER:
+                return event.getUserId() == null ? null : channelId + "/" + event.getUserId();
+            case THREAD:
+                return threadTs(event) == null ? null : channelId + "/" + threadTs(event) + "/";
+            default:
+                return threadTs(event) == null || event.getUserId() == null ? null
+                        : channelId + "/" + threadTs(event) + "/" + event.getUserId();
+        }
+    }
+
+    /**
+     * @param event received from slack
+     * @return {@code ts} of the thread {@code event} is in, or would start
+     */
+    static String threadTs(Event event) {
+        return event.getThreadTs() != null ? event.getThreadTs() : event.getTs();
+    }
+}
@@ -0,0 +1,193 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local snapshot of the Slack workspace directory state of a bot, i.e. the current user, the
+ * im channel ids and the cursor of the last (possibly incomplete) {@code conversations.list} call.
+ * <p>
+ * The snapshot is a compact binary file which is memory-mapped on load. It consists of a header
+ * followed by one record per im channel id, so a new channel can be appended without rewriting
+ * the whole file:
+ * <pre>
+ * int magic | short version | str userId | str userName | str cursor | str channelId ...
+ * </pre>
+ * where each {@code str} is an unsigned short length followed by that many UTF-8 bytes.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class DirectorySnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectorySnapshot.class);
+
+    private static final int MAGIC = 0x4A42444E; // "JBDN"
+    private static final short VERSION = 1;
+
+    private final Path path;
+
+    private String userId;
+    private String userName;
+    private String cursor = "";
+    private List<String> imChannelIds = new ArrayList<>();
+
+    public DirectorySnapshot(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Load the snapshot from disk.
+     *
+     * @return {@code true} if a valid snapshot was found, {@code false} otherwise
+     */
+    public synchronized boolean load() {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 6 || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                logger.warn("Ignoring unrecognized directory snapshot: {}", path);
+                return false;
+            }
+            userId = readString(buffer);
+            userName = readString(buffer);
+            cursor = readString(buffer);
+            List<String> ids = new ArrayList<>();
+            while (buffer.remaining() >= 2) {
+                ids.add(readString(buffer));
+            }
+            imChannelIds = ids;
+            return true;
+        } catch (Exception e) {
+            logger.error("Error loading directory snapshot {}: ", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Rewrite the whole snapshot. The file is written to a temp file first and then moved
+     * in place so that a crash never leaves a half written snapshot behind.
+     *
+     * @param currentUser  user representing the bot
+     * @param cursor       cursor for the next {@code conversations.list} call, empty if the listing completed
+     * @param imChannelIds all im channel ids known so far
+     */
+    public synchronized void write(User currentUser, String cursor, Collection<String> imChannelIds) {
+        this.userId = currentUser == null ? null : currentUser.getId();
+        this.userName = currentUser == null ? null : currentUser.getName();
+        this.cursor = cursor == null ? "" : cursor;
+        this.imChannelIds = new ArrayList<>(imChannelIds);
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocate(headerSize() + recordsSize(this.imChannelIds));
+                buffer.putInt(MAGIC).putShort(VERSION);
+                putString(buffer, userId);
+                putString(buffer, userName);
+                putString(buffer, this.cursor);
+                for (String id : this.imChannelIds) {
+                    putString(buffer, id);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Error writing directory snapshot {}: ", path, e);
+        }
+    }
+
+    /**
+     * Append a single im channel id to the snapshot without rewriting it.
+     *
+     * @param channelId the new im channel id
+     */
+    public synchronized void append(String channelId) {
+        if (!Files.isRegularFile(path)) {
+            return; // nothing to append to until the first full write
+        }
+        imChannelIds.add(channelId);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.allocate(stringSize(channelId));
+            putString(buffer, channelId);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            logger.error("Error appending to directory snapshot {}: ", path, e);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized String getUserId() {
+        return userId;
+    }
+
+    public synchronized String getUserName() {
+        return userName;
+    }
+
+    /**
+     * @return cursor of an incomplete {@code conversations.list} listing, empty if the last listing completed.
+     */
+    public synchronized String getCursor() {
+        return cursor;
+    }
+
+    public synchronized List<String> getImChannelIds() {
+        return new ArrayList<>(imChannelIds);
+    }
+
+    private int headerSize() {
+        return 6 + stringSize(userId) + stringSize(userName) + stringSize(cursor);
+    }
+
+    private static int recordsSize(List<String> ids) {
+        int size = 0;
+        for (String id : ids) {
+            size += stringSize(id);
+        }
+        return size;
+    }
+
+    private static int stringSize(String s) {
+        return 2 + (s == null ? 0 : s.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
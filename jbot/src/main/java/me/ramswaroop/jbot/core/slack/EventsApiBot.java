@@ -0,0 +1,231 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.common.SerialExecutor;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.EventCallback;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for Slack Bots receiving events through the
+ * <a href="https://api.slack.com/events-api">Events API</a> instead of RTM. Slack pushes the events
+ * to {@code POST /slack/events}, so any number of stateless nodes behind a load balancer can share the
+ * load, and replies are posted through the Web API ({@code chat.postMessage}).
+ * <p>
+ * The same {@link me.ramswaroop.jbot.core.common.Controller} methods as in a RTM {@link Bot} are invoked,
+ * with a {@code null} web socket session. The request is answered as soon as the event is queued, as
+ * Slack expects an answer within 3 seconds. The events of a channel, in threads or not, are dispatched in
+ * order, while different channels are dispatched in parallel.
+ * <p>
+ * Requests must be signed with the signing secret of the app, set {@code slackSigningSecret} or override
+ * {@link #getSigningSecret()}, otherwise they are all rejected, see {@link SlackRequestVerifier}.
+ * <p>
+ * Slack retries an event, flagging it with the {@code X-Slack-Retry-Num} header, if it got no timely
+ * answer. Retries of an event already handled by this node are acknowledged without being dispatched
+ * again. Override {@link #markProcessed(String)} to share the handled event ids between nodes.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public abstract class EventsApiBot extends Bot {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventsApiBot.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Signing secret of the Slack app, the signature of every request is verified with it.
+     */
+    @Value("${slackSigningSecret:}")
+    private String signingSecret = "";
+
+    /**
+     * Number of threads dispatching events to the controllers.
+     */
+    @Value("${slackDispatchThreads:8}")
+    private int dispatchThreads = 8;
+
+    /**
+     * Number of handled event ids remembered to spot retries.
+     */
+    private static final int MAX_PROCESSED_EVENT_IDS = 10000;
+
+    private final Map<String, Boolean> processedEventIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_PROCESSED_EVENT_IDS;
+        }
+    };
+
+    private ExecutorService dispatchPool;
+    private SerialExecutor[] channelExecutors;
+    private SlackRequestVerifier requestVerifier;
+
+    /**
+     * No RTM connection is opened, only the user the token belongs to is fetched to spot the
+     * direct mentions.
+     *
+     * @throws IllegalStateException if Slack does not accept the token
+     */
+    @Override
+    protected void startRTMAndWebSocketConnection() {
+        if (getSigningSecret() == null || getSigningSecret().isEmpty()) {
+            logger.error("No slackSigningSecret set, all the requests from Slack will be rejected.");
+        }
+        slackService.authenticate(getSlackToken());
+        if (slackService.getCurrentUser() == null) {
+            throw new IllegalStateException("Slack did not accept the token of the bot");
+        }
+    }
+
+    /**
+     * Override this to take the signing secret from elsewhere than the {@code slackSigningSecret} property.
+     *
+     * @return signing secret of the Slack app
+     */
+    protected String getSigningSecret() {
+        return signingSecret;
+    }
+
+    /**
+     * Endpoint Slack pushes the events to, set it as the Request URL of the app's event subscriptions.
+     *
+     * @param body      the envelope sent by Slack, as received so that its signature can be checked
+     * @param timestamp value of the {@code X-Slack-Request-Timestamp} header
+     * @param signature value of the {@code X-Slack-Signature} header
+     * @param retryNum  number of the retry if Slack is sending the event again
+     * @return the challenge for a {@code url_verification}, 200 OK for events, 403 if the request is not
+     * signed by Slack
+     */
+    @ResponseBody
+    @PostMapping("/slack/events")
+    public final ResponseEntity<String> receiveEvent(@RequestBody byte[] body,
+                                                     @RequestHeader(value = "X-Slack-Request-Timestamp", required = false)
+                                                             String timestamp,
+                                                     @RequestHeader(value = "X-Slack-Signature", required = false)
+                                                             String signature,
+                                                     @RequestHeader(value = "X-Slack-Retry-Num", required = false)
+                                                             Integer retryNum) {
+        if (!getRequestVerifier().verify(timestamp, signature, body)) {
+            logger.warn("Rejecting a request to /slack/events which is not signed by Slack.");
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        EventCallback callback;
+        try {
+            callback = mapper.readValue(body, EventCallback.class);
+        } catch (IOException e) {
+            logger.error("Invalid callback from Slack: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if ("url_verification".equals(callback.getType())) {
+            return ResponseEntity.ok(callback.getChallenge());
+        }
+        Event event = callback.getEvent();
+        if (!"event_callback".equals(callback.getType()) || event == null) {
+            logger.debug("Callback type not supported: {}", callback.getType());
+            return ResponseEntity.ok("");
+        }
+        if (callback.getEventId() != null && !markProcessed(callback.getEventId())) {
+            logger.debug("Ignoring retry {} of event {} as it's handled already", retryNum, callback.getEventId());
+            return ResponseEntity.ok("");
+        }
+        try {
+            getChannelExecutor(event).execute(() -> {
+                try {
+                    handleEvent(null, event);
+                } catch (Exception e) {
+                    logger.error("Error handling event {} from Slack: ", callback.getEventId(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (processedEventIds) {
+                processedEventIds.remove(callback.getEventId());
+            }
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE); // so that Slack retries
+        }
+        return ResponseEntity.ok("");
+    }
+
+    /**
+     * Remember that the event with {@code eventId} is handled.
+     *
+     * @param eventId unique id of the event across retries
+     * @return {@code false} if the event was handled already
+     */
+    protected boolean markProcessed(String eventId) {
+        synchronized (processedEventIds) {
+            return processedEventIds.put(eventId, Boolean.TRUE) == null;
+        }
+    }
+
+    /**
+     * Post the reply through the Web API.
+     */
+    @Override
+    protected boolean sendReply(WebSocketSession session, Message message, ReplyTracker.Reply reply) {
+        return postReply(session, message, reply);
+    }
+
+    private synchronized SlackRequestVerifier getRequestVerifier() {
+        if (requestVerifier == null) {
+            requestVerifier = new SlackRequestVerifier(getSigningSecret());
+        }
+        return requestVerifier;
+    }
+
+    /**
+     * Events of a channel always go to the same serial executor so that they are handled in order, a reply
+     * in a thread after the message which started it.
+     */
+    private synchronized SerialExecutor getChannelExecutor(Event event) {
+        if (channelExecutors == null) {
+            channelExecutors = new SerialExecutor[dispatchThreads * 4];
+            for (int i = 0; i < channelExecutors.length; i++) {
+                channelExecutors[i] = new SerialExecutor(getDispatchPool());
+            }
+        }
+        String key = event.getChannelId() != null ? event.getChannelId() : event.getEventTs();
+        return channelExecutors[key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % channelExecutors.length];
+    }
+
+    private synchronized ExecutorService getDispatchPool() {
+        if (dispatchPool == null) {
+            AtomicInteger count = new AtomicInteger();
+            dispatchPool = Executors.newFixedThreadPool(dispatchThreads, r -> {
+                Thread thread = new Thread(r, "slack-events-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dispatchPool;
+    }
+
+    /**
+     * Shutdown the dispatch pool.
+     */
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (dispatchPool != null) {
+            dispatchPool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package me.ramswaroop.jbot.core.slack;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * A file to upload with the {@link FileUploadService}. The content is streamed from a {@link Path}, read
+ * through a {@link java.nio.channels.FileChannel}, or from an {@link InputStream}, so that large files are
+ * never held in memory.
+ * <p>
+ * A single upload can be shared to many channels at once by listing them in {@link Builder#channels(String)}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class FileUpload {
+
+    /**
+     * Told how many bytes of the file have been sent.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesWritten  bytes of the file sent so far
+         * @param contentLength size of the file, {@code -1} if not known
+         */
+        void onProgress(long bytesWritten, long contentLength);
+    }
+
+    private final String token;
+    private final Path path;
+    private final InputStream inputStream;
+    private final String fileName;
+    private final long contentLength;
+    private final String channels;
+    private final String threadTs;
+    private final String fileType;
+    private final String mediaType;
+    private final String title;
+    private final String initialComment;
+    private final ProgressListener progressListener;
+
+    private FileUpload(Builder builder) {
+        if (builder.token == null) {
+            throw new IllegalArgumentException("token is required.");
+        }
+        if (builder.path == null && builder.inputStream == null) {
+            throw new IllegalArgumentException("file or inputStream is required.");
+        }
+        token = builder.token;
+        path = builder.path;
+        inputStream = builder.inputStream;
+        fileName = builder.fileName != null ? builder.fileName
+                : path != null ? path.getFileName().toString() : "file";
+        contentLength = builder.contentLength;
+        channels = builder.channels;
+        threadTs = builder.threadTs;
+        fileType = builder.fileType;
+        mediaType = builder.mediaType;
+        title = builder.title;
+        initialComment = builder.initialComment;
+        progressListener = builder.progressListener;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return size of the stream, {@code -1} if not known or if the content comes from a path
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public String getChannels() {
+        return channels;
+    }
+
+    public String getThreadTs() {
+        return threadTs;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getInitialComment() {
+        return initialComment;
+    }
+
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    public static final class Builder {
+        private String token;
+        private Path path;
+        private InputStream inputStream;
+        private String fileName;
+        private long contentLength = -1;
+        private String channels;
+        private String threadTs;
+        private String fileType;
+        private String mediaType;
+        private String title;
+        private String initialComment;
+        private ProgressListener progressListener;
+
+        public Builder token(String token) {
+            this.token = token;
+            return this;
+        }
+
+        /**
+         * @param path file to upload, it's read when the upload starts
+         */
+        public Builder file(Path path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param inputStream   content to upload, read once and closed when the upload ends
+         * @param fileName      name of the file
+         * @param contentLength size of the content, {@code -1} if not known
+         */
+        public Builder inputStream(InputStream inputStream, String fileName, long contentLength) {
+            this.inputStream = inputStream;
+            this.fileName = fileName;
+            this.contentLength = contentLength;
+            return this;
+        }
+
+        /**
+         * @param channels comma separated ids of the channels to share the file in
+         */
+        public Builder channels(String channels) {
+            this.channels = channels;
+            return this;
+        }
+
+        public Builder threadTs(String threadTs) {
+            this.threadTs = threadTs;
+            return this;
+        }
+
+        public Builder fileType(String fileType) {
+            this.fileType = fileType;
+            return this;
+        }
+
+        public Builder mediaType(String mediaType) {
+            this.mediaType = mediaType;
+            return this;
+        }
+
+        public Builder title(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Builder initialComment(String initialComment) {
+            this.initialComment = initialComment;
+            return this;
+        }
+
+        public Builder progressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public FileUpload build() {
+            return new FileUpload(this);
+        }
+    }
+}
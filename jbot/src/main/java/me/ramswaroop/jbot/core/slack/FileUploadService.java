@@ -0,0 +1,274 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.slack.models.File;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Uploads files to Slack with {@code files.upload} through the shared {@link OkHttpClient}, so uploads reuse
+ * the pooled connections of the bot instead of opening new ones.
+ * <p>
+ * The content is streamed to Slack in chunks as it's read, whatever the size of the file, and at most
+ * {@code slackMaxConcurrentUploads} uploads are in flight, the others wait in a queue so that a burst of
+ * reports does not take all the connections to Slack.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@Service
+public class FileUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileUploadService.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of uploads in flight.
+     */
+    @Value("${slackMaxConcurrentUploads:4}")
+    private int maxConcurrentUploads = 4;
+
+    @Autowired
+    OkHttpClient okHttpClient;
+
+    @Autowired
+    SlackApiEndpoints slackApiEndpoints;
+
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * Queue an upload, it starts as soon as fewer than {@code slackMaxConcurrentUploads} are in flight.
+     *
+     * @param upload the file to upload
+     * @return future completed with the uploaded file, failed with a {@link SlackApiException} if Slack
+     * refused it or an {@link IOException} if it could not be sent
+     */
+    public CompletableFuture<File> upload(FileUpload upload) {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        Runnable start = () -> {
+            try {
+                okHttpClient.newCall(createRequest(upload)).enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        logger.error("Error uploading file {}: {}", upload.getFileName(), e.getMessage());
+                        done(upload, future, null, e);
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        try (ResponseBody body = response.body()) {
+                            JsonNode json = body == null ? null : mapper.readTree(body.byteStream());
+                            if (json == null || !json.path("ok").asBoolean()) {
+                                String error = json == null ? "http_" + response.code() : json.path("error").asText();
+                                done(upload, future, null, new SlackApiException("files.upload", error));
+                            } else {
+                                done(upload, future, mapper.treeToValue(json.path("file"), File.class), null);
+                            }
+                        } catch (Exception e) {
+                            done(upload, future, null, e);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                done(upload, future, null, e);
+            }
+        };
+        boolean startNow;
+        synchronized (this) {
+            startNow = inFlight < maxConcurrentUploads;
+            if (startNow) {
+                inFlight++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return future;
+    }
+
+    /**
+     * Complete an upload and start the next waiting one.
+     */
+    private void done(FileUpload upload, CompletableFuture<File> future, File file, Throwable t) {
+        if (upload.getInputStream() != null) {
+            try {
+                upload.getInputStream().close();
+            } catch (IOException e) {
+                logger.debug("Error closing upload stream: {}", e.getMessage());
+            }
+        }
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        if (t == null) {
+            future.complete(file);
+        } else {
+            future.completeExceptionally(t);
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * @return number of uploads waiting for another one to end.
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return number of uploads in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private Request createRequest(FileUpload upload) {
+        MediaType mediaType = upload.getMediaType() == null ? null : MediaType.parse(upload.getMediaType());
+        RequestBody content = upload.getPath() != null
+                ? new FileChannelRequestBody(upload.getPath(), mediaType, upload.getProgressListener())
+                : new InputStreamRequestBody(upload.getInputStream(), upload.getContentLength(), mediaType,
+                upload.getProgressListener());
+        MultipartBody.Builder multipartBuilder = new MultipartBody.Builder().setType(MultipartBody.FORM);
+        multipartBuilder.addFormDataPart("file", upload.getFileName(), content);
+        addFormDataPart(multipartBuilder, "channels", upload.getChannels());
+        addFormDataPart(multipartBuilder, "thread_ts", upload.getThreadTs());
+        addFormDataPart(multipartBuilder, "filetype", upload.getFileType());
+        addFormDataPart(multipartBuilder, "title", upload.getTitle());
+        addFormDataPart(multipartBuilder, "initial_comment", upload.getInitialComment());
+        return new Request.Builder()
+                .url(slackApiEndpoints.getFilesUploadApi())
+                .header("Authorization", "Bearer " + upload.getToken())
+                .post(multipartBuilder.build())
+                .build();
+    }
+
+    private static void addFormDataPart(MultipartBody.Builder builder, String name, String value) {
+        if (value != null) {
+            builder.addFormDataPart(name, value);
+        }
+    }
+
+    /**
+     * Streams a file through a {@link FileChannel}, opened again if OkHttp retries the request.
+     */
+    private static class FileChannelRequestBody extends RequestBody {
+        private final Path path;
+        private final MediaType mediaType;
+        private final FileUpload.ProgressListener listener;
+
+        FileChannelRequestBody(Path path, MediaType mediaType, FileUpload.ProgressListener listener) {
+            this.path = path;
+            this.mediaType = mediaType;
+            this.listener = listener;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                long written = 0;
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        written += sink.write(buffer);
+                    }
+                    buffer.clear();
+                    if (listener != null) listener.onProgress(written, size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams an {@link InputStream}, which can only be read once.
+     */
+    private static class InputStreamRequestBody extends RequestBody {
+        private final InputStream inputStream;
+        private final long contentLength;
+        private final MediaType mediaType;
+        private final FileUpload.ProgressListener listener;
+
+        InputStreamRequestBody(InputStream inputStream, long contentLength, MediaType mediaType,
+                               FileUpload.ProgressListener listener) {
+            this.inputStream = inputStream;
+            this.contentLength = contentLength;
+            this.mediaType = mediaType;
+            this.listener = listener;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            long written = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                sink.write(buffer, 0, read);
+                written += read;
+                if (listener != null) listener.onProgress(written, contentLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.HashedWheelTimer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeat of all RTM connections in the application. A single {@link HashedWheelTimer} thread
+ * drives the pings, the pong timeouts and the reconnect triggers of any number of connections.
+ * <p>
+ * Ping intervals are jittered so that connections opened at the same time do not ping all at once.
+ * If Slack does not answer a ping with a pong within the pong timeout, or the session is found
+ * closed, the connection is handed to the {@link ReconnectEngine} so that the timer is never blocked.
+ * <p>
+ * The timer is shared with the reply timeouts of the {@link ReplyTracker}, see {@link #getTimer()}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@Service
+public class HeartbeatService {
+
+    /**
+     * Interval between two pings of a connection.
+     */
+    @Value("${slackPingIntervalMillis:30000}")
+    private long pingIntervalMillis = 30000;
+
+    /**
+     * Time to wait for a pong before considering the connection dead.
+     */
+    @Value("${slackPongTimeoutMillis:10000}")
+    private long pongTimeoutMillis = 10000;
+
+    /**
+     * Fraction by which a ping interval may randomly vary, between 0 and 1.
+     */
+    @Value("${slackPingJitter:0.1}")
+    private double pingJitter = 0.1;
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("slack-timer", 100, TimeUnit.MILLISECONDS, 512);
+
+    @Autowired
+    private ReconnectEngine reconnectEngine;
+
+    /**
+     * Start the heartbeat of {@code connection}. The first ping is sent after a random
+     * delay of up to one ping interval.
+     *
+     * @param connection RTM connection to monitor
+     * @return heartbeat of the connection
+     */
+    public Heartbeat start(RtmConnection connection) {
+        Heartbeat heartbeat = new Heartbeat(connection);
+        heartbeat.schedulePing(ThreadLocalRandom.current().nextLong(pingIntervalMillis) + 1);
+        return heartbeat;
+    }
+
+    /**
+     * @return the timer driving the heartbeats, for other short timeouts which must not block it.
+     */
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        timer.stop();
+    }
+
+    private long jitteredPingInterval() {
+        double jitter = pingJitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1, Math.round(pingIntervalMillis * (1 + jitter)));
+    }
+
+    /**
+     * Heartbeat of one RTM connection.
+     */
+    public class Heartbeat {
+        private final RtmConnection connection;
+        private volatile boolean stopped;
+        private volatile HashedWheelTimer.Timeout pingTimeout;
+        private volatile HashedWheelTimer.Timeout pongTimeout;
+
+        Heartbeat(RtmConnection connection) {
+            this.connection = connection;
+        }
+
+        private void schedulePing(long delayMillis) {
+            if (!stopped) {
+                pingTimeout = timer.newTimeout(this::ping, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void ping() {
+            if (stopped) return;
+            if (!connection.isOpen()) {
+                reconnect("Slack web socket session is closed");
+                return;
+            }
+            if (pongTimeout == null || pongTimeout.isExpired() || pongTimeout.isCancelled()) {
+                pongTimeout = timer.newTimeout(() -> reconnect("No pong received from Slack"),
+                        pongTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            connection.ping();
+            schedulePing(jitteredPingInterval());
+        }
+
+        /**
+         * Call this when a pong is received from Slack.
+         */
+        public void pong() {
+            HashedWheelTimer.Timeout timeout = pongTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        /**
+         * Stop pinging and stop waiting for pongs.
+         */
+        public void stop() {
+            stopped = true;
+            if (pingTimeout != null) pingTimeout.cancel();
+            if (pongTimeout != null) pongTimeout.cancel();
+        }
+
+        private void reconnect(String reason) {
+            if (stopped) return;
+            stop();
+            reconnectEngine.reconnect(connection, reason);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.BeanSerializerBase;
+import me.ramswaroop.jbot.core.slack.models.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Serializes a {@link Message} reply to the JSON frame sent over RTM. The text is HTML encoded
+ * (<a href="https://api.slack.com/docs/formatting">as Slack expects</a>) and JSON escaped in the same
+ * pass while the frame is written into a buffer reused by the thread, so the only String created per
+ * reply is the frame itself.
+ * <p>
+ * The properties, their names, order and null handling are taken from the serializer Jackson builds for
+ * {@link Message}, so the output is the same as what Jackson writes for a {@link Message} with an encoded
+ * text, and a property added to {@link Message} is written without changing this class. Property values
+ * other than strings, numbers and booleans, and subclasses of {@link Message}, are serialized by Jackson.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public final class MessageEncoder {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Buffers which grew beyond this are not kept for the next reply.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(() -> new Buffer(1024));
+
+    /**
+     * Properties of {@link Message} in the order Jackson writes them, {@code null} if Jackson does not
+     * serialize it as a plain bean.
+     */
+    private static final BeanPropertyWriter[] properties = findProperties();
+
+    private MessageEncoder() {
+    }
+
+    private static BeanPropertyWriter[] findProperties() {
+        try {
+            JsonSerializer<Object> serializer = mapper.getSerializerProviderInstance()
+                    .findTypedValueSerializer(Message.class, true, null);
+            if (!(serializer instanceof BeanSerializerBase)) {
+                return null;
+            }
+            List<BeanPropertyWriter> writers = new ArrayList<>();
+            Iterator<PropertyWriter> iterator = ((BeanSerializerBase) serializer).properties();
+            while (iterator.hasNext()) {
+                PropertyWriter writer = iterator.next();
+                if (!(writer instanceof BeanPropertyWriter)) {
+                    return null;
+                }
+                writers.add((BeanPropertyWriter) writer);
+            }
+            return writers.toArray(new BeanPropertyWriter[0]);
+        } catch (JsonMappingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param message reply to serialize, its text is not encoded yet
+     * @return the JSON frame with the text encoded
+     * @throws JsonProcessingException if the message can't be serialized
+     */
+    public static String encode(Message message) throws JsonProcessingException {
+        if (message.getClass() != Message.class || properties == null) {
+            String text = message.getText();
+            message.setText(text == null ? null : encodeText(text));
+            try {
+                return mapper.writeValueAsString(message);
+            } finally {
+                message.setText(text);
+            }
+        }
+        Buffer buffer = buffers.get();
+        buffer.length = 0;
+        buffer.append('{');
+        for (BeanPropertyWriter property : properties) {
+            Object value;
+            try {
+                value = property.get(message);
+            } catch (Exception e) {
+                throw JsonMappingException.from(mapper.getSerializerProviderInstance(),
+                        "Can't read property " + property.getName(), e);
+            }
+            if (value == null && property.willSuppressNulls()) {
+                continue;
+            }
+            if (buffer.length > 1) {
+                buffer.append(',');
+            }
+            buffer.field(property.getName());
+            if (value instanceof String) {
+                buffer.string((String) value, "text".equals(property.getName()));
+            } else if (value instanceof Integer) {
+                buffer.append((int) value);
+            } else if (value instanceof Boolean) {
+                buffer.append((boolean) value ? "true" : "false");
+            } else {
+                buffer.append(mapper.writeValueAsString(value));
+            }
+        }
+        buffer.append('}');
+        String frame = new String(buffer.chars, 0, buffer.length);
+        if (buffer.chars.length > MAX_RETAINED_CAPACITY) {
+            buffers.remove();
+        }
+        return frame;
+    }
+
+    /**
+     * @param text to encode
+     * @return {@code text} with {@code &}, {@code <} and {@code >} replaced by their HTML entities
+     */
+    public static String encodeText(String text) {
+        int i = 0;
+        while (i < text.length() && !isHtmlSpecial(text.charAt(i))) i++;
+        if (i == text.length()) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHtmlSpecial(char c) {
+        return c == '&' || c == '<' || c == '>';
+    }
+
+    private static final class Buffer {
+        char[] chars;
+        int length;
+
+        Buffer(int capacity) {
+            chars = new char[capacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length << 1, length + extra));
+            }
+        }
+
+        Buffer append(char c) {
+            ensureCapacity(1);
+            chars[length++] = c;
+            return this;
+        }
+
+        Buffer append(String s) {
+            ensureCapacity(s.length());
+            s.getChars(0, s.length(), chars, length);
+            length += s.length();
+            return this;
+        }
+
+        Buffer append(int i) {
+            if (i == Integer.MIN_VALUE) {
+                return append("-2147483648");
+            }
+            ensureCapacity(11);
+            if (i < 0) {
+                chars[length++] = '-';
+                i = -i;
+            }
+            int start = length;
+            do {
+                chars[length++] = (char) ('0' + i % 10);
+                i /= 10;
+            } while (i > 0);
+            for (int j = length - 1; start < j; start++, j--) {
+                char c = chars[start];
+                chars[start] = chars[j];
+                chars[j] = c;
+            }
+            return this;
+        }
+
+        Buffer field(String name) {
+            return append('"').append(name).append('"').append(':');
+        }
+
+        /**
+         * Write {@code value} as a JSON string, HTML encoding it too if {@code html} is {@code true}.
+         */
+        Buffer string(String value, boolean html) {
+            if (value == null) {
+                return append("null");
+            }
+            // worst case is 6 chars per char, grow again only if needed
+            ensureCapacity(value.length() + 2);
+            chars[length++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\' && !(html && isHtmlSpecial(c))) {
+                    if (length == chars.length) ensureCapacity(value.length() - i + 1);
+                    chars[length++] = c;
+                    continue;
+                }
+                switch (c) {
+                    case '"': append("\\\""); break;
+                    case '\\': append("\\\\"); break;
+                    case '\n': append("\\n"); break;
+                    case '\r': append("\\r"); break;
+                    case '\t': append("\\t"); break;
+                    case '\b': append("\\b"); break;
+                    case '\f': append("\\f"); break;
+                    case '&': append("&amp;"); break;
+                    case '<': append("&lt;"); break;
+                    case '>': append("&gt;"); break;
+                    default:
+                        append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                }
+            }
+            return append('"');
+        }
+    }
+}
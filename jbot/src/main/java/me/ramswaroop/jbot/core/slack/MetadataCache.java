@@ -0,0 +1,244 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.common.BoundedCache;
+import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.slack.models.Channel;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.User;
+import me.ramswaroop.jbot.core.slack.models.UserGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Users, channels and user groups of a workspace, loaded through the {@link SlackWebApiClient} the first
+ * time they are asked for and then kept up to date by the events Slack sends when they change, so that
+ * controllers can look them up on every message without a Web API call.
+ * <p>
+ * Concurrent lookups of an entry not loaded yet share a single call. Each kind of entry is bounded by a
+ * {@link BoundedCache}. Everything is forgotten when the RTM connection is opened again, as the events
+ * sent meanwhile are lost, see {@link SlackService#reconnectRTM(String)}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class MetadataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final SlackWebApiClient client;
+    private final String slackToken;
+
+    private final Store<User> users;
+    private final Store<Channel> channels;
+    private final Store<UserGroup> userGroups;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param client     to load the entries with
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param maxEntries maximum number of users, of channels and of user groups kept
+     */
+    public MetadataCache(SlackWebApiClient client, String slackToken, int maxEntries) {
+        this.client = client;
+        this.slackToken = slackToken;
+        this.users = new Store<>(maxEntries);
+        this.channels = new Store<>(maxEntries);
+        this.userGroups = new Store<>(maxEntries);
+    }
+
+    /**
+     * @param userId id of the user
+     * @return future completed with the user, from the cache or {@code users.info}
+     */
+    public CompletableFuture<User> getUser(String userId) {
+        return users.get(userId, id -> client.getUserInfo(slackToken, id, SlackWebApiClient.Priority.INTERACTIVE));
+    }
+
+    /**
+     * @param channelId id of the channel, im or group
+     * @return future completed with the channel, from the cache or {@code conversations.info}
+     */
+    public CompletableFuture<Channel> getChannel(String channelId) {
+        return channels.get(channelId,
+                id -> client.getConversationInfo(slackToken, id, SlackWebApiClient.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Slack has no method to get a single user group, so all of them are loaded from {@code usergroups.list}
+     * and cached at once.
+     *
+     * @param userGroupId id of the user group
+     * @return future completed with the user group, from the cache or {@code usergroups.list}
+     */
+    public CompletableFuture<UserGroup> getUserGroup(String userGroupId) {
+        return userGroups.get(userGroupId, id -> client.get(slackToken, "usergroups.list",
+                Collections.emptyMap(), SlackWebApiClient.Priority.INTERACTIVE).thenApply(response -> {
+            UserGroup found = null;
+            for (JsonNode node : response.path("usergroups")) {
+                try {
+                    UserGroup userGroup = mapper.treeToValue(node, UserGroup.class);
+                    if (id.equals(userGroup.getId())) {
+                        found = userGroup;
+                    } else {
+                        userGroups.putIfLoaded(userGroup.getId(), userGroup);
+                    }
+                } catch (Exception e) {
+                    logger.error("Error deserializing user group: {}", node, e);
+                }
+            }
+            if (found == null) {
+                throw new SlackApiException("usergroups.list", "no_such_subteam");
+            }
+            return found;
+        }));
+    }
+
+    /**
+     * Update or invalidate the entries an event is about. Events of other types are ignored.
+     *
+     * @param event received from slack
+     * @return {@code true} if the event was about users, channels or user groups
+     */
+    public boolean update(Event event) {
+        EventType type;
+        try {
+            type = EventType.valueOf(event.getType().toUpperCase());
+        } catch (Exception e) {
+            return false;
+        }
+        switch (type) {
+            case USER_CHANGE:
+            case TEAM_JOIN:
+                if (event.getUser() != null && event.getUser().getId() != null) {
+                    users.put(event.getUser().getId(), event.getUser());
+                }
+                return true;
+            case CHANNEL_RENAME:
+            case CHANNEL_ARCHIVE:
+            case CHANNEL_UNARCHIVE:
+            case CHANNEL_DELETED:
+                String channelId = event.getChannel() != null ? event.getChannel().getId() : event.getChannelId();
+                if (channelId != null) {
+                    channels.invalidate(channelId); // rename only carries the new name, so load it again
+                }
+                return true;
+            case SUBTEAM_CREATED:
+            case SUBTEAM_UPDATED:
+                if (event.getSubteam() != null && event.getSubteam().getId() != null) {
+                    userGroups.put(event.getSubteam().getId(), event.getSubteam());
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public void invalidateUser(String userId) {
+        users.invalidate(userId);
+    }
+
+    public void invalidateChannel(String channelId) {
+        channels.invalidate(channelId);
+    }
+
+    public void invalidateUserGroup(String userGroupId) {
+        userGroups.invalidate(userGroupId);
+    }
+
+    /**
+     * Forget everything, e.g. after a reconnect during which events may have been missed.
+     */
+    public void clear() {
+        users.entries.clear();
+        channels.entries.clear();
+        userGroups.entries.clear();
+    }
+
+    /**
+     * @return number of users, channels and user groups kept.
+     */
+    public int size() {
+        return users.entries.size() + channels.entries.size() + userGroups.entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return users.entries.getEvictions() + channels.entries.getEvictions() + userGroups.entries.getEvictions();
+    }
+
+    /**
+     * Entries of one kind, the loading ones included so that concurrent lookups share the call.
+     */
+    private class Store<T> {
+        final BoundedCache<String, CompletableFuture<T>> entries;
+
+        Store(int maxEntries) {
+            this.entries = new BoundedCache<>(maxEntries);
+        }
+
+        CompletableFuture<T> get(String id, Function<String, CompletableFuture<T>> loader) {
+            CompletableFuture<T> entry = entries.get(id);
+            if (entry != null) {
+                hits.increment();
+                return entry;
+            }
+            CompletableFuture<T> loading = new CompletableFuture<>();
+            entry = entries.putIfAbsent(id, loading);
+            if (entry != null) {
+                hits.increment();
+                return entry;
+            }
+            misses.increment();
+            try {
+                loader.apply(id).whenComplete((value, t) -> {
+                    if (t != null) {
+                        entries.remove(id, loading); // so that the next lookup tries again
+                        loading.completeExceptionally(t);
+                    } else {
+                        loading.complete(value);
+                    }
+                });
+            } catch (RuntimeException e) {
+                entries.remove(id, loading);
+                loading.completeExceptionally(e);
+            }
+            return loading;
+        }
+
+        void put(String id, T value) {
+            entries.put(id, CompletableFuture.completedFuture(value));
+        }
+
+        /**
+         * Put {@code value} unless it's being loaded already.
+         */
+        void putIfLoaded(String id, T value) {
+            CompletableFuture<T> entry = entries.get(id);
+            if (entry == null || entry.isDone()) {
+                put(id, value);
+            }
+        }
+
+        void invalidate(String id) {
+            entries.remove(id);
+        }
+    }
+}
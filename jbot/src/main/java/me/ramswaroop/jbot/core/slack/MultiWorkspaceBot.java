@@ -0,0 +1,176 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.BotWebSocketHandler;
+import me.ramswaroop.jbot.core.common.SerialExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for Slack Bots serving many workspaces from one JVM. Any class extending this hosts
+ * one RTM connection per token returned by {@link #getSlackTokens()} (more can be added later with
+ * {@link #addWorkspace(String)}) and its controller methods serve every workspace.
+ * <p>
+ * All the connections share one web socket client, one heartbeat timer, one outbound writer and one
+ * dispatch pool, they are opened on a pool of their own. Events of a workspace are dispatched in order,
+ * events of different workspaces run in parallel. The state kept per workspace is just its
+ * {@link RtmConnection} and {@link SlackService}.
+ * <p>
+ * In controllers, use {@link #getSlackService(WebSocketSession)} instead of {@link #slackService}
+ * and {@link #getSlackToken(WebSocketSession)} instead of {@link #getSlackToken()} to get the directory
+ * and the token of the workspace an event came from.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public abstract class MultiWorkspaceBot extends Bot {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiWorkspaceBot.class);
+
+    /**
+     * Creates a new {@link SlackService} for every workspace as it's prototype scoped.
+     */
+    @Autowired
+    private ObjectFactory<SlackService> slackServiceFactory;
+
+    /**
+     * Number of threads dispatching events to the controllers.
+     */
+    @Value("${slackDispatchThreads:8}")
+    private int dispatchThreads = 8;
+
+    /**
+     * RTM connections where key is the slack token of the workspace.
+     */
+    private final Map<String, RtmConnection> workspaces = new ConcurrentHashMap<>();
+
+    private ExecutorService dispatchPool;
+
+    /**
+     * Runs the {@code rtm.connect} calls and directory listings of new workspaces, which block and sleep
+     * between pages, away from the dispatch pool.
+     */
+    private ExecutorService connectPool;
+
+    /**
+     * Class extending this must implement this to tell
+     * which workspaces to connect to on start.
+     *
+     * @return the slack tokens of the bot, one per workspace
+     */
+    public abstract Collection<String> getSlackTokens();
+
+    /**
+     * A bot serving many workspaces has no single token, use {@link #getSlackToken(WebSocketSession)} to get
+     * the token of the workspace an event came from.
+     *
+     * @return {@code null}
+     */
+    @Override
+    public String getSlackToken() {
+        return null;
+    }
+
+    /**
+     * Connect to every workspace returned by {@link #getSlackTokens()}.
+     */
+    @Override
+    protected void startRTMAndWebSocketConnection() {
+        for (String slackToken : getSlackTokens()) {
+            addWorkspace(slackToken);
+        }
+    }
+
+    /**
+     * Connect to a workspace. The connection is made asynchronously, on a pool of its own.
+     *
+     * @param slackToken slack token of the bot in the workspace
+     * @return the RTM connection to the workspace
+     */
+    public RtmConnection addWorkspace(String slackToken) {
+        return workspaces.computeIfAbsent(slackToken, token -> {
+            RtmConnection connection = new RtmConnection(token, slackServiceFactory.getObject(), client(),
+                    new BotWebSocketHandler(getSlackBot(), new SerialExecutor(getDispatchPool())),
+                    heartbeatService, getOutboundMessageWriter());
+            getConnectPool().execute(() -> {
+                try {
+                    connection.start();
+                } catch (Exception e) {
+                    logger.error("Error connecting to workspace: ", e);
+                }
+            });
+            return connection;
+        });
+    }
+
+    /**
+     * Disconnect from a workspace.
+     *
+     * @param slackToken slack token of the bot in the workspace
+     */
+    public void removeWorkspace(String slackToken) {
+        RtmConnection connection = workspaces.remove(slackToken);
+        if (connection != null) {
+            connection.stop();
+        }
+    }
+
+    /**
+     * @return RTM connections where key is the slack token of the workspace.
+     */
+    public Map<String, RtmConnection> getWorkspaces() {
+        return Collections.unmodifiableMap(workspaces);
+    }
+
+    private synchronized ExecutorService getDispatchPool() {
+        if (dispatchPool == null) {
+            AtomicInteger count = new AtomicInteger();
+            dispatchPool = Executors.newFixedThreadPool(dispatchThreads, r -> {
+                Thread thread = new Thread(r, "slack-dispatch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dispatchPool;
+    }
+
+    private synchronized ExecutorService getConnectPool() {
+        if (connectPool == null) {
+            AtomicInteger count = new AtomicInteger();
+            connectPool = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "slack-connect-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return connectPool;
+    }
+
+    /**
+     * Close all RTM connections and shutdown the dispatch and connect pools.
+     */
+    @Override
+    public void destroy() {
+        for (String slackToken : workspaces.keySet()) {
+            removeWorkspace(slackToken);
+        }
+        if (connectPool != null) {
+            connectPool.shutdownNow();
+        }
+        if (dispatchPool != null) {
+            dispatchPool.shutdownNow();
+        }
+        super.destroy();
+    }
+}
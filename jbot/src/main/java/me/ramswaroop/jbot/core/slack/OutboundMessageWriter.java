@@ -0,0 +1,212 @@
+package me.ramswaroop.jbot.core.slack;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single writer for outbound RTM frames. Any number of threads can {@link #send} frames, they are
+ * put in a bounded queue which is drained by one writer thread, so callers are never blocked by a
+ * slow socket and never contend on the session. When the queue is full the frame is rejected and
+ * {@link #send} returns {@code false} so that the caller can back off.
+ * <p>
+ * Pings are coalesced, i.e. a ping is not queued when another one for the same session is still
+ * waiting to be written. The writer thread takes the waiting frames in batches so that it wakes up
+ * once per burst rather than once per frame.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class OutboundMessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMessageWriter.class);
+
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final String name;
+    private final BlockingQueue<Frame> queue;
+    private final Set<String> pingQueued = ConcurrentHashMap.newKeySet();
+    private volatile Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean stopped;
+
+    private final LongAdder framesWritten = new LongAdder();
+    private final LongAdder framesRejected = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final AtomicLong maxWriteNanos = new AtomicLong();
+
+    /**
+     * @param name     name of the writer thread
+     * @param capacity maximum number of frames waiting to be written
+     */
+    public OutboundMessageWriter(String name, int capacity) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queue a frame to be written to {@code session}. Starts the writer thread if not running already.
+     *
+     * @param session websocket session between bot and slack
+     * @param payload the frame
+     * @return {@code true} if the frame was queued, {@code false} if the queue is full or the writer
+     * was stopped
+     */
+    public boolean send(WebSocketSession session, String payload) {
+        return offer(new Frame(session, payload, false));
+    }
+
+    /**
+     * Queue a ping frame unless one for the same session is already waiting to be written.
+     *
+     * @param session websocket session between bot and slack
+     * @param payload the ping frame
+     * @return {@code true} if the ping was queued or coalesced, {@code false} if the queue is full
+     */
+    public boolean sendPing(WebSocketSession session, String payload) {
+        if (!pingQueued.add(session.getId())) {
+            return true;
+        }
+        if (!offer(new Frame(session, payload, true))) {
+            pingQueued.remove(session.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean offer(Frame frame) {
+        if (!running) {
+            start();
+        }
+        if (running && queue.offer(frame)) {
+            return true;
+        }
+        framesRejected.increment();
+        return false;
+    }
+
+    /**
+     * Start the writer thread if it isn't running and the writer was not stopped.
+     */
+    public synchronized void start() {
+        if (running || stopped) return;
+        running = true;
+        writerThread = new Thread(this::drain, name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop the writer thread for good. Frames still in the queue are discarded and frames sent
+     * afterwards are rejected.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread = null;
+        }
+        queue.clear();
+        pingQueued.clear();
+    }
+
+    private void drain() {
+        List<Frame> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (writerThread == Thread.currentThread()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            for (Frame frame : batch) {
+                write(frame);
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(Frame frame) {
+        if (frame.ping) {
+            pingQueued.remove(frame.session.getId());
+        }
+        if (!frame.session.isOpen()) {
+            logger.debug("Dropping frame as session [{}] is closed: {}", frame.session.getId(), frame.payload);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            frame.session.sendMessage(new TextMessage(frame.payload));
+        } catch (Exception e) {
+            logger.error("Error writing frame: {}. Exception: ", frame.payload, e);
+        }
+        long elapsed = System.nanoTime() - start;
+        framesWritten.increment();
+        writeNanos.add(elapsed);
+        maxWriteNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * @return number of frames waiting to be written.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of frames which can still be queued before frames are rejected.
+     */
+    public int getRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.sum();
+    }
+
+    /**
+     * @return number of frames rejected because the queue was full.
+     */
+    public long getFramesRejected() {
+        return framesRejected.sum();
+    }
+
+    /**
+     * @return average time taken by {@link WebSocketSession#sendMessage} in nanoseconds.
+     */
+    public long getAverageWriteLatencyNanos() {
+        long count = framesWritten.sum();
+        return count == 0 ? 0 : writeNanos.sum() / count;
+    }
+
+    /**
+     * @return maximum time taken by {@link WebSocketSession#sendMessage} in nanoseconds.
+     */
+    public long getMaxWriteLatencyNanos() {
+        return maxWriteNanos.get();
+    }
+
+    private static class Frame {
+        final WebSocketSession session;
+        final String payload;
+        final boolean ping;
+
+        Frame(WebSocketSession session, String payload, boolean ping) {
+            this.session = session;
+            this.payload = payload;
+            this.ping = ping;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package me.ramswaroop.jbot.core.slack;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Reconnects RTM connections which the {@link HeartbeatService} found dead.
+ * <p>
+ * Attempts are spaced by a capped exponential backoff with full jitter so that, during a Slack
+ * incident, all the connections do not hammer {@code rtm.connect} at once. After a number of
+ * consecutive failures the circuit of the connection opens and no attempt is made until it's
+ * half open again, then a single attempt either closes it or opens it once more.
+ * <p>
+ * In hot standby mode, a connection whose session is still open is replaced by opening a second
+ * RTM connection first and closing the degraded one only once the new one says hello, so that
+ * no events are missed in between. The events both connections deliver meanwhile are handled once,
+ * see {@link RtmConnection#isDuplicate}.
+ * <p>
+ * A reconnect only makes the {@code rtm.connect} call, the im channels are not listed again, so an
+ * attempt is quick and the few reconnect threads are shared by all the connections.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@Service
+public class ReconnectEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconnectEngine.class);
+
+    /**
+     * Circuit states of a connection.
+     */
+    public enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Value("${slackReconnectBaseDelayMillis:1000}")
+    private long baseDelayMillis = 1000;
+
+    @Value("${slackReconnectMaxDelayMillis:60000}")
+    private long maxDelayMillis = 60000;
+
+    /**
+     * Time to wait for a hello on the new web socket before considering the attempt failed.
+     */
+    @Value("${slackReconnectHelloTimeoutMillis:30000}")
+    private long helloTimeoutMillis = 30000;
+
+    /**
+     * Number of consecutive failures after which the circuit opens.
+     */
+    @Value("${slackReconnectFailureThreshold:5}")
+    private int failureThreshold = 5;
+
+    /**
+     * Time for which an open circuit stays open.
+     */
+    @Value("${slackReconnectCircuitOpenMillis:300000}")
+    private long circuitOpenMillis = 300000;
+
+    /**
+     * Whether to open a new connection before closing the degraded one.
+     */
+    @Value("${slackHotStandby:false}")
+    private boolean hotStandby = false;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Source of {@link System#currentTimeMillis()}, replaced in tests.
+     */
+    private final LongSupplier clock;
+
+    public ReconnectEngine() {
+        this(Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "slack-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        }), System::currentTimeMillis);
+    }
+
+    ReconnectEngine(ScheduledExecutorService executor, LongSupplier clock) {
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Reconnect {@code connection} unless a reconnect is in progress already.
+     *
+     * @param connection the dead or degraded connection
+     * @param reason     why it's reconnected
+     */
+    public void reconnect(RtmConnection connection, String reason) {
+        Backoff backoff = connection.getBackoff();
+        if (!backoff.inProgress.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = nextDelay(backoff);
+        logger.warn("{}, reconnecting in {} ms...", reason, delay);
+        schedule(connection, delay);
+    }
+
+    private void schedule(RtmConnection connection, long delayMillis) {
+        executor.schedule(() -> attempt(connection), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt(RtmConnection connection) {
+        Backoff backoff = connection.getBackoff();
+        if (!backoff.inProgress.get()) {
+            return;
+        }
+        long openFor = backoff.openUntil - clock.getAsLong();
+        if (openFor > 0) {
+            schedule(connection, openFor);
+            return;
+        }
+        int attempt = ++backoff.attempts;
+        boolean started;
+        try {
+            started = connection.reconnectNow(hotStandby);
+        } catch (Exception e) {
+            logger.error("Error reconnecting to Slack: ", e);
+            started = false;
+        }
+        if (!started) {
+            onFailure(connection);
+            return;
+        }
+        executor.schedule(() -> {
+            if (backoff.inProgress.get() && backoff.attempts == attempt) {
+                logger.error("No hello received from Slack after reconnecting.");
+                onFailure(connection);
+            }
+        }, helloTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void onFailure(RtmConnection connection) {
+        Backoff backoff = connection.getBackoff();
+        backoff.failures++;
+        if (backoff.failures >= failureThreshold) {
+            backoff.openUntil = clock.getAsLong() + circuitOpenMillis;
+            logger.error("Reconnecting to Slack failed {} times, not trying again for {} ms.",
+                    backoff.failures, circuitOpenMillis);
+            schedule(connection, circuitOpenMillis);
+        } else {
+            long delay = nextDelay(backoff);
+            logger.warn("Reconnecting to Slack failed, trying again in {} ms...", delay);
+            schedule(connection, delay);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Capped exponential backoff with full jitter.
+     */
+    private long nextDelay(Backoff backoff) {
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(backoff.failures, 30));
+        return ThreadLocalRandom.current().nextLong(Math.max(cap, 1));
+    }
+
+    /**
+     * @param connection RTM connection
+     * @return circuit state of the connection
+     */
+    public CircuitState getCircuitState(RtmConnection connection) {
+        Backoff backoff = connection.getBackoff();
+        if (backoff.failures < failureThreshold) {
+            return CircuitState.CLOSED;
+        }
+        return backoff.openUntil > clock.getAsLong() ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+    }
+
+    /**
+     * Reconnect state of one connection.
+     */
+    public static class Backoff {
+        private final AtomicBoolean inProgress = new AtomicBoolean();
+        private volatile int failures;
+        private volatile int attempts;
+        private volatile long openUntil;
+
+        /**
+         * Call this when the connection says hello, it closes the circuit.
+         */
+        public void connected() {
+            failures = 0;
+            openUntil = 0;
+            inProgress.set(false);
+        }
+
+        public boolean isReconnecting() {
+            return inProgress.get();
+        }
+
+        /**
+         * @return number of consecutive failed attempts.
+         */
+        public int getFailures() {
+            return failures;
+        }
+    }
+}
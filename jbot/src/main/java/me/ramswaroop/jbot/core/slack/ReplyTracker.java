@@ -0,0 +1,220 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.HashedWheelTimer;
+import me.ramswaroop.jbot.core.common.LatencyHistogram;
+import me.ramswaroop.jbot.core.slack.models.Event;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Correlates the messages sent over RTM with the acknowledgements Slack sends back. Every outbound
+ * message gets an id and Slack answers with an event whose {@code reply_to} is that id, see
+ * <a href="https://api.slack.com/rtm#sending_messages">sending messages</a>.
+ * <p>
+ * Ids increase monotonically, so the messages waiting for an ack are kept in a fixed size ring indexed by
+ * the low bits of the id instead of a map, a slot is only reused after {@code capacity} more messages are
+ * sent. Timeouts are driven by a {@link HashedWheelTimer} shared with the heartbeats, see
+ * {@link HeartbeatService#getTimer()}, and start when the reply is sent, so the time a reply spends in
+ * rate limiting does not count.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class ReplyTracker {
+
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final AtomicReferenceArray<Pending> slots;
+    private final int mask;
+    private final long timeoutMillis;
+    private final HashedWheelTimer timer;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * @param capacity      number of messages which can wait for an ack, rounded up to a power of two
+     * @param timeoutMillis time to wait for an ack once the reply is sent
+     * @param timer         timer driving the timeouts
+     */
+    public ReplyTracker(int capacity, long timeoutMillis, HashedWheelTimer timer) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.timeoutMillis = timeoutMillis;
+        this.timer = timer;
+    }
+
+    /**
+     * Start tracking a reply. The returned future fails with a {@link TimeoutException} if the reply
+     * is not acknowledged within the timeout after it is {@link Reply#send() sent}.
+     *
+     * @return future to complete with the ack
+     */
+    public Reply newReply() {
+        Reply reply = new Reply();
+        reply.future.whenComplete((event, t) -> {
+            HashedWheelTimer.Timeout timeout = reply.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            if (reply.id != 0) {
+                slots.compareAndSet(reply.id & mask, reply.pending, null);
+            }
+        });
+        return reply;
+    }
+
+    /**
+     * Complete the reply waiting for {@code ack}.
+     *
+     * @param ack event without a type sent by Slack
+     * @return {@code true} if a reply was waiting for the ack
+     */
+    public boolean acknowledge(Event ack) {
+        int id = ack.getReplyTo();
+        if (id == 0) {
+            return false;
+        }
+        Pending pending = slots.get(id & mask);
+        if (pending == null || pending.id != id || !slots.compareAndSet(id & mask, pending, null)) {
+            return false;
+        }
+        Reply reply = pending.reply;
+        if (ack.isOk()) {
+            reply.complete(ack);
+        } else {
+            reply.fail(new SlackReplyException(ack.getError()));
+        }
+        return true;
+    }
+
+    /**
+     * @return number of messages sent and not acknowledged yet.
+     */
+    public int getPending() {
+        int pending = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) pending++;
+        }
+        return pending;
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.sum();
+    }
+
+    /**
+     * @return number of replies which were not sent or were acknowledged with an error.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @return latencies from {@code reply} to ack of the acknowledged replies.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * A reply waiting for its ack.
+     */
+    public class Reply {
+        private final CompletableFuture<Event> future = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private volatile int id;
+        private volatile Pending pending;
+        private volatile HashedWheelTimer.Timeout timeout;
+
+        /**
+         * Assign the next id to the reply, wait for its ack and start its timeout. A slot still held by
+         * a reply sent {@code capacity} messages ago is taken over and that reply fails.
+         *
+         * @return the id to set on the outbound message
+         */
+        public int send() {
+            int next = lastId.updateAndGet(i -> i == Integer.MAX_VALUE ? 1 : i + 1);
+            Pending current = new Pending(next, this);
+            pending = current;
+            id = next;
+            Pending previous = slots.getAndSet(next & mask, current);
+            if (previous != null) {
+                previous.reply.fail(new SlackReplyException("Too many replies waiting for an ack"));
+            }
+            if (future.isDone()) { // failed while rate limited
+                slots.compareAndSet(next & mask, current, null);
+            }
+            start();
+            return next;
+        }
+
+        /**
+         * Start the timeout of a reply sent over a transport which answers directly, like the Web API.
+         */
+        public void start() {
+            if (timeout != null || future.isDone()) {
+                return;
+            }
+            timeout = timer.newTimeout(() -> {
+                if (future.completeExceptionally(new TimeoutException("No ack received from Slack in "
+                        + timeoutMillis + " ms"))) {
+                    timedOut.increment();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            if (future.isDone()) { // completed while the timeout was armed
+                timeout.cancel();
+            }
+        }
+
+        /**
+         * Complete the reply with the response of a transport which answers directly, like the Web API.
+         *
+         * @param response successful response from Slack
+         */
+        public void complete(Event response) {
+            if (future.complete(response)) {
+                acknowledged.increment();
+                latencies.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * @param cause why the reply failed
+         */
+        public void fail(Throwable cause) {
+            if (future.completeExceptionally(cause)) {
+                failed.increment();
+            }
+        }
+
+        public CompletableFuture<Event> getFuture() {
+            return future;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+
+    private static class Pending {
+        final int id;
+        final Reply reply;
+
+        Pending(int id, Reply reply) {
+            this.id = id;
+            this.reply = reply;
+        }
+    }
+}
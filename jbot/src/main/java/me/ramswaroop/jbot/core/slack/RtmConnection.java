@@ -0,0 +1,278 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.WebSocketConnectionManager;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A RTM connection to one Slack workspace. It holds the state of the workspace, i.e. the token, the
+ * {@link SlackService} with the directory of the workspace and the web socket session, whereas the web
+ * socket client, the handler, the {@link HeartbeatService} and the {@link OutboundMessageWriter} can be
+ * shared by any number of connections.
+ * <p>
+ * The connection is stored in the attributes of its web socket session under {@link #SESSION_ATTRIBUTE}
+ * so that a bot serving many workspaces can find the workspace an event belongs to.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class RtmConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(RtmConnection.class);
+
+    public static final String SESSION_ATTRIBUTE = RtmConnection.class.getName();
+
+    /**
+     * Number of recent events remembered to drop the ones a hot standby connection delivers again.
+     */
+    private static final int MAX_RECENT_EVENTS = 1024;
+
+    /**
+     * Time for which events are still deduplicated after the standby connection took over, as events of
+     * the retired connection may still be dispatched.
+     */
+    private static final long DEDUPE_AFTER_SWITCH_MILLIS = 10000;
+
+    private final String slackToken;
+    private final SlackService slackService;
+    private final WebSocketClient client;
+    private final WebSocketHandler handler;
+    private final HeartbeatService heartbeatService;
+    private final OutboundMessageWriter outboundMessageWriter;
+
+    private WebSocketConnectionManager webSocketManager;
+    private WebSocketConnectionManager standbyWebSocketManager;
+    private volatile WebSocketSession session;
+    private volatile HeartbeatService.Heartbeat heartbeat;
+    private final ReconnectEngine.Backoff backoff = new ReconnectEngine.Backoff();
+
+    /**
+     * Keys of the events received since a standby connection was opened, guarded by itself.
+     */
+    private final Map<String, Boolean> recentEvents = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RECENT_EVENTS;
+        }
+    };
+    private volatile long dedupeUntil;
+
+    public RtmConnection(String slackToken, SlackService slackService, WebSocketClient client,
+                         WebSocketHandler handler, HeartbeatService heartbeatService,
+                         OutboundMessageWriter outboundMessageWriter) {
+        this.slackToken = slackToken;
+        this.slackService = slackService;
+        this.client = client;
+        this.handler = new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                session.getAttributes().put(SESSION_ATTRIBUTE, RtmConnection.this);
+                super.afterConnectionEstablished(session);
+            }
+        };
+        this.heartbeatService = heartbeatService;
+        this.outboundMessageWriter = outboundMessageWriter;
+    }
+
+    /**
+     * Make the {@code rtm.connect} call and open the web socket connection.
+     *
+     * @return {@code false} if Slack did not return a web socket url
+     */
+    public synchronized boolean start() {
+        webSocketManager = connect(false);
+        return webSocketManager != null;
+    }
+
+    /**
+     * @param reconnect {@code true} to skip listing the im channels, they are known already
+     */
+    private WebSocketConnectionManager connect(boolean reconnect) {
+        if (reconnect) {
+            slackService.reconnectRTM(slackToken);
+        } else {
+            slackService.connectRTM(slackToken);
+        }
+        if (slackService.getWebSocketUrl() == null) {
+            logger.error("No web socket url returned by Slack.");
+            return null;
+        }
+        WebSocketConnectionManager manager =
+                new WebSocketConnectionManager(client, handler, slackService.getWebSocketUrl());
+        manager.start();
+        return manager;
+    }
+
+    /**
+     * Stop the heartbeat and close the web socket connection.
+     */
+    public synchronized void stop() {
+        if (heartbeat != null) {
+            heartbeat.stop();
+            heartbeat = null;
+        }
+        if (webSocketManager != null) {
+            try {
+                webSocketManager.stop();
+            } catch (Exception e) {
+                logger.error("Error closing websocket. Exception: ", e);
+            }
+            webSocketManager = null;
+        }
+        stopStandby();
+    }
+
+    private void stopStandby() {
+        if (standbyWebSocketManager != null) {
+            try {
+                standbyWebSocketManager.stop();
+            } catch (Exception e) {
+                logger.error("Error closing standby websocket. Exception: ", e);
+            }
+            standbyWebSocketManager = null;
+        }
+    }
+
+    /**
+     * Start the heartbeat which pings Slack at regular intervals to prevent closing of the web socket
+     * connection and reconnects when Slack stops answering. If {@code session} belongs to a standby
+     * connection, it replaces the degraded one. Note: It only gets called on HELLO event type.
+     *
+     * @param session websocket session between bot and slack
+     */
+    public synchronized void startHeartbeat(WebSocketSession session) {
+        this.session = session;
+        if (heartbeat != null) {
+            heartbeat.stop();
+        }
+        if (standbyWebSocketManager != null) {
+            WebSocketConnectionManager degraded = webSocketManager;
+            webSocketManager = standbyWebSocketManager;
+            standbyWebSocketManager = null;
+            try {
+                degraded.stop();
+            } catch (Exception e) {
+                logger.error("Error closing degraded websocket. Exception: ", e);
+            }
+            dedupeUntil = System.currentTimeMillis() + DEDUPE_AFTER_SWITCH_MILLIS;
+        }
+        backoff.connected();
+        heartbeat = heartbeatService.start(this);
+    }
+
+    /**
+     * Call this when a pong is received from Slack.
+     */
+    public void pong() {
+        HeartbeatService.Heartbeat current = heartbeat;
+        if (current != null) {
+            current.pong();
+        }
+    }
+
+    /**
+     * @return {@code true} if the web socket session is open.
+     */
+    public boolean isOpen() {
+        WebSocketSession webSocketSession = session;
+        return webSocketSession != null && webSocketSession.isOpen();
+    }
+
+    /**
+     * Queue a ping to Slack.
+     */
+    void ping() {
+        try {
+            logger.debug("Pinging Slack...");
+            Message message = new Message();
+            message.setType(EventType.PING.name().toLowerCase());
+            if (!outboundMessageWriter.sendPing(session, message.toJSONString())) {
+                logger.warn("Outbound queue full, ping not sent.");
+            }
+        } catch (Exception e) {
+            logger.error("Error pinging Slack. Slack bot may go offline when not active. Exception: ", e);
+        }
+    }
+
+    /**
+     * Connect again. In hot standby mode, if the session is still open, a second connection is opened
+     * and the current one is closed only when the new one says hello. Otherwise the current connection
+     * is closed first.
+     *
+     * @param hotStandby whether to keep the current connection until the new one is up
+     * @return {@code false} if Slack did not return a web socket url
+     */
+    synchronized boolean reconnectNow(boolean hotStandby) {
+        if (hotStandby && isOpen() && webSocketManager != null) {
+            stopStandby();
+            dedupeUntil = Long.MAX_VALUE;
+            standbyWebSocketManager = connect(true);
+            return standbyWebSocketManager != null;
+        }
+        stop();
+        session = null;
+        webSocketManager = connect(true);
+        return webSocketManager != null;
+    }
+
+    /**
+     * While a hot standby connection overlaps the degraded one, both deliver the same events. Tell the
+     * second delivery of an event, by its type, channel and timestamp.
+     *
+     * @param event received from slack
+     * @return {@code true} if the event was received already and must be dropped
+     */
+    public boolean isDuplicate(Event event) {
+        if (dedupeUntil == 0) {
+            return false;
+        }
+        synchronized (recentEvents) {
+            if (System.currentTimeMillis() > dedupeUntil) {
+                dedupeUntil = 0;
+                recentEvents.clear();
+                return false;
+            }
+            String ts = event.getEventTs() != null ? event.getEventTs() : event.getTs();
+            if (event.getType() == null || ts == null) {
+                return false;
+            }
+            String key = event.getType() + ' ' + event.getChannelId() + ' ' + ts;
+            return recentEvents.put(key, Boolean.TRUE) != null;
+        }
+    }
+
+    /**
+     * @return reconnect state of this connection.
+     */
+    public ReconnectEngine.Backoff getBackoff() {
+        return backoff;
+    }
+
+    public String getSlackToken() {
+        return slackToken;
+    }
+
+    /**
+     * @return service holding the directory state of this workspace.
+     */
+    public SlackService getSlackService() {
+        return slackService;
+    }
+
+    /**
+     * @return current web socket session, {@code null} if not connected yet.
+     */
+    public WebSocketSession getSession() {
+        return session;
+    }
+}
@@ -19,6 +19,42 @@ public class SlackApiEndpoints {
         return slackApi + "/rtm.connect?token={token}";
     }
 
+    /**
+     * @return endpoint for auth.test, tells the user the token belongs to
+     */
+    public String getAuthTestApi() {
+        return slackApi + "/auth.test?token={token}";
+    }
+
+    /**
+     * @return endpoint for chat.postMessage, the token goes in the Authorization header
+     */
+    public String getChatPostMessageApi() {
+        return slackApi + "/chat.postMessage";
+    }
+
+    /**
+     * @return endpoint for apps.connections.open, the app level token goes in the Authorization header
+     */
+    public String getAppsConnectionsOpenApi() {
+        return slackApi + "/apps.connections.open";
+    }
+
+    /**
+     * @return endpoint for files.upload, the token goes in the Authorization header
+     */
+    public String getFilesUploadApi() {
+        return slackApi + "/files.upload";
+    }
+
+    /**
+     * @param method Web API method, e.g. {@code users.info}
+     * @return endpoint for the method, the token goes in the Authorization header
+     */
+    public String getWebApi(String method) {
+        return slackApi + "/" + method;
+    }
+
     public String getImListApi() {
         return slackApi + "/conversations.list?token={token}&limit={limit}&cursor={cursor}&types=im";
     }
@@ -0,0 +1,33 @@
+package me.ramswaroop.jbot.core.slack;
+
+/**
+ * Thrown when a Slack Web API method answers with {@code "ok": false}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final String error;
+
+    /**
+     * @param method the Web API method called, e.g. {@code users.info}
+     * @param error  the {@code error} returned by Slack, e.g. {@code user_not_found}
+     */
+    public SlackApiException(String method, String error) {
+        super(method + " failed: " + error);
+        this.method = method;
+        this.error = error;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,33 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Error;
+
+/**
+ * Thrown when Slack acknowledges a reply with an error, or the reply can't be sent at all.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackReplyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Error error;
+
+    public SlackReplyException(String message) {
+        super(message);
+        this.error = null;
+    }
+
+    public SlackReplyException(Error error) {
+        super(error == null ? "Slack did not accept the message" : error.getCode() + ": " + error.getMsg());
+        this.error = error;
+    }
+
+    /**
+     * @return error sent by Slack, {@code null} if the reply was not sent.
+     */
+    public Error getError() {
+        return error;
+    }
+}
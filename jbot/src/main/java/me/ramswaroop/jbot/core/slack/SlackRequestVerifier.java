@@ -0,0 +1,91 @@
+package me.ramswaroop.jbot.core.slack;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Verifies that a request comes from Slack with the signing secret of the app, see
+ * <a href="https://api.slack.com/authentication/verifying-requests-from-slack">verifying requests from Slack</a>.
+ * The {@code X-Slack-Signature} header must be the HMAC-SHA256 of {@code v0:<timestamp>:<body>} and the
+ * {@code X-Slack-Request-Timestamp} must be recent, so that a captured request can't be replayed.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackRequestVerifier {
+
+    private static final String VERSION = "v0";
+    private static final String SIGNATURE_PREFIX = VERSION + "=";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Requests older or newer than this are rejected.
+     */
+    private static final long MAX_CLOCK_SKEW_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+    private final String signingSecret;
+    private final LongSupplier epochSeconds;
+
+    /**
+     * @param signingSecret signing secret of the Slack app, all requests are rejected if it's {@code null} or empty
+     */
+    public SlackRequestVerifier(String signingSecret) {
+        this(signingSecret, () -> TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    SlackRequestVerifier(String signingSecret, LongSupplier epochSeconds) {
+        this.signingSecret = signingSecret;
+        this.epochSeconds = epochSeconds;
+    }
+
+    /**
+     * @param timestamp value of the {@code X-Slack-Request-Timestamp} header
+     * @param signature value of the {@code X-Slack-Signature} header
+     * @param body      raw body of the request
+     * @return {@code true} if the request is signed with the signing secret and recent
+     */
+    public boolean verify(String timestamp, String signature, byte[] body) {
+        if (signingSecret == null || signingSecret.isEmpty() || timestamp == null || signature == null
+                || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        long sentAt;
+        try {
+            sentAt = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(epochSeconds.getAsLong() - sentAt) > MAX_CLOCK_SKEW_SECONDS) {
+            return false;
+        }
+        byte[] expected = sign(timestamp, body).getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param timestamp value of the {@code X-Slack-Request-Timestamp} header
+     * @param body      raw body of the request
+     * @return the {@code X-Slack-Signature} of the request
+     */
+    String sign(String timestamp, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(signingSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update((VERSION + ":" + timestamp + ":").getBytes(StandardCharsets.UTF_8));
+            byte[] digest = mac.doFinal(body);
+            StringBuilder signature = new StringBuilder(SIGNATURE_PREFIX.length() + 2 * digest.length);
+            signature.append(SIGNATURE_PREFIX);
+            for (byte b : digest) {
+                signature.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+            return signature.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package me.ramswaroop.jbot.core.slack;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import me.ramswaroop.jbot.core.slack.models.Channel;
 import me.ramswaroop.jbot.core.slack.models.Event;
 import me.ramswaroop.jbot.core.slack.models.RTM;
@@ -7,14 +8,24 @@ import me.ramswaroop.jbot.core.slack.models.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -29,9 +40,35 @@ public class SlackService {
 
     private String webSocketUrl;
 
+    private String slackToken;
+
+    private MetadataCache metadataCache;
+
     private User currentUser;
 
-    private List<String> imChannelIds = new ArrayList<>();
+    private volatile List<String> imChannelIds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Same ids as {@link #imChannelIds}, to tell a new im channel in constant time.
+     */
+    private volatile Set<String> imChannelIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Local snapshot of the directory state, {@code null} if snapshots are disabled.
+     */
+    private DirectorySnapshot directorySnapshot;
+
+    /**
+     * Directory where the workspace directory snapshots are kept. Leave it empty to disable snapshots.
+     */
+    @Value("${slackDirectorySnapshotDir:}")
+    String directorySnapshotDir;
+
+    /**
+     * Maximum number of users, of channels and of user groups kept in the metadata cache.
+     */
+    @Value("${slackMetadataCacheSize:10000}")
+    int metadataCacheSize = 10000;
 
     @Autowired
     SlackApiEndpoints slackApiEndpoints;
@@ -39,17 +76,150 @@ public class SlackService {
     @Autowired
     RestTemplate restTemplate;
 
+    @Autowired
+    SlackWebApiClient slackWebApiClient;
+
     /**
      * Start a RTM connection. Fetch the web socket url to connect to, current user details
      * and list of channel ids where the current user has had conversation.
+     * <p>
+     * If a directory snapshot of the same bot exists, the im channel ids are loaded from it and
+     * reconciled with Slack in the background instead of being fetched before returning.
      *
      * @param slackToken slack token which you get from slack for the integration you create
      */
     public void connectRTM(String slackToken) {
+        reconnectRTM(slackToken);
+        if (loadDirectorySnapshot(slackToken)) {
+            Thread reconciler = new Thread(() -> reconcileImChannels(slackToken), "slack-directory-reconciler");
+            reconciler.setDaemon(true);
+            reconciler.start();
+        } else {
+            reconcileImChannels(slackToken);
+        }
+    }
+
+    /**
+     * Fetch a new web socket url to connect to, when reconnecting. The im channels are not listed again
+     * as the ones opened meanwhile come through {@code im_created} and {@code im_open} events, but the
+     * {@link MetadataCache} is cleared as the changes of users and channels are not sent again.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     */
+    public void reconnectRTM(String slackToken) {
+        this.slackToken = slackToken;
         RTM rtm = restTemplate.getForEntity(slackApiEndpoints.getRtmConnectApi(), RTM.class, slackToken).getBody();
         currentUser = rtm.getSelf();
         webSocketUrl = rtm.getUrl();
-        getImChannels(slackToken, 200,"");
+        MetadataCache cache;
+        synchronized (this) {
+            cache = metadataCache;
+        }
+        if (cache != null) { // the changes made while disconnected were missed
+            cache.clear();
+        }
+    }
+
+    /**
+     * Find the user the token belongs to, without opening a RTM connection. Used when events come
+     * through the Events API.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     */
+    public void authenticate(String slackToken) {
+        this.slackToken = slackToken;
+        JsonNode response = restTemplate.getForEntity(slackApiEndpoints.getAuthTestApi(), JsonNode.class,
+                slackToken).getBody();
+        if (response == null || !response.path("ok").asBoolean()) {
+            logger.error("Error authenticating with Slack: {}", response);
+            return;
+        }
+        User user = new User();
+        user.setId(response.path("user_id").asText());
+        user.setName(response.path("user").asText());
+        currentUser = user;
+    }
+
+    /**
+     * Ask for a Socket Mode web socket url. Every call returns a new url, valid for a single connection.
+     *
+     * @param appToken app level token, starting with {@code xapp-}
+     * @return the web socket url, {@code null} if Slack refused
+     */
+    public String openSocketModeConnection(String appToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + appToken);
+        JsonNode response = restTemplate.postForEntity(slackApiEndpoints.getAppsConnectionsOpenApi(),
+                new HttpEntity<>(headers), JsonNode.class).getBody();
+        if (response == null || !response.path("ok").asBoolean()) {
+            logger.error("Error opening Socket Mode connection: {}", response);
+            return null;
+        }
+        return response.path("url").asText();
+    }
+
+    /**
+     * Load the directory snapshot of the bot, if snapshots are enabled and the snapshot
+     * belongs to the current user.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @return {@code true} if im channel ids were loaded from the snapshot
+     */
+    private boolean loadDirectorySnapshot(String slackToken) {
+        if (StringUtils.isEmpty(directorySnapshotDir)) {
+            return false;
+        }
+        String fileName = DigestUtils.md5DigestAsHex(slackToken.getBytes(StandardCharsets.UTF_8)) + ".snapshot";
+        directorySnapshot = new DirectorySnapshot(Paths.get(directorySnapshotDir, fileName));
+        if (!directorySnapshot.load()) {
+            return false;
+        }
+        if (currentUser == null || !currentUser.getId().equals(directorySnapshot.getUserId())) {
+            logger.info("Discarding directory snapshot of a different user: {}", directorySnapshot.getPath());
+            directorySnapshot = new DirectorySnapshot(directorySnapshot.getPath());
+            return false;
+        }
+        setImChannelIds(directorySnapshot.getImChannelIds());
+        logger.debug("Loaded {} im channels from directory snapshot", imChannelIds.size());
+        return true;
+    }
+
+    /**
+     * Fetch im channels from Slack and merge them with the ones already known. If the snapshot
+     * records an incomplete listing, the listing resumes from its cursor, otherwise all the
+     * channels are fetched again. The snapshot is marked complete only once the listing is, if it
+     * fails the last checkpoint is kept to resume from on the next start.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     */
+    private void reconcileImChannels(String slackToken) {
+        Set<String> ids = new LinkedHashSet<>();
+        String cursor = "";
+        if (directorySnapshot != null && !StringUtils.isEmpty(directorySnapshot.getCursor())) {
+            ids.addAll(imChannelIds);
+            cursor = directorySnapshot.getCursor();
+        }
+        boolean complete = getImChannels(slackToken, 200, cursor, ids);
+        synchronized (this) {
+            ids.addAll(imChannelIds); // channels opened meanwhile
+            setImChannelIds(new ArrayList<>(ids));
+            if (complete && directorySnapshot != null) {
+                directorySnapshot.write(currentUser, "", imChannelIds);
+            }
+        }
+    }
+
+    /**
+     * Checkpoint an incomplete listing, with the channels opened meanwhile so that an interrupted
+     * listing does not lose them.
+     *
+     * @param cursor cursor for the next {@code conversations.list} call
+     * @param ids    channel ids listed so far
+     */
+    private synchronized void writeDirectorySnapshot(String cursor, Set<String> ids) {
+        Set<String> merged = new LinkedHashSet<>(ids);
+        merged.addAll(imChannelIds);
+        directorySnapshot.write(currentUser, cursor, merged);
     }
 
     /**
@@ -58,19 +228,37 @@ public class SlackService {
      * @param slackToken slack token which you get from slack for the integration you create
      * @param limit number of channels to fetch in one call
      * @param nextCursor cursor for the next call
+     * @param ids set to collect the channel ids in
+     * @return {@code true} if all the channels were listed, {@code false} if the listing failed
      */
-    private void getImChannels(String slackToken, int limit, String nextCursor) {
+    private boolean getImChannels(String slackToken, int limit, String nextCursor, Set<String> ids) {
         try {
-            Event event = restTemplate.getForEntity(slackApiEndpoints.getImListApi(), Event.class,
-                    slackToken, limit, nextCursor).getBody();
-            imChannelIds.addAll(Arrays.stream(event.getChannels()).map(Channel::getId).collect(Collectors.toList()));
-            if (event.getResponseMetadata() != null &&
-                    !StringUtils.isEmpty(event.getResponseMetadata().getNextCursor())) {
+            while (true) {
+                Event event = restTemplate.getForEntity(slackApiEndpoints.getImListApi(), Event.class,
+                        slackToken, limit, nextCursor).getBody();
+                if (event == null || !event.isOk()) {
+                    logger.error("Error fetching im channels for the bot, cursor: {}", nextCursor);
+                    return false;
+                }
+                if (event.getChannels() != null) {
+                    ids.addAll(Arrays.stream(event.getChannels()).map(Channel::getId).collect(Collectors.toList()));
+                }
+                if (event.getResponseMetadata() == null ||
+                        StringUtils.isEmpty(event.getResponseMetadata().getNextCursor())) {
+                    return true;
+                }
+                nextCursor = event.getResponseMetadata().getNextCursor();
+                if (directorySnapshot != null) { // so that an interrupted listing can resume from here
+                    writeDirectorySnapshot(nextCursor, ids);
+                }
                 Thread.sleep(5000L); // sleep because its a tier 2 api which allows only 20 calls per minute
-                getImChannels(slackToken, limit, event.getResponseMetadata().getNextCursor());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
             logger.error("Error fetching im channels for the bot: ", e);
+            return false;
         }
     }
 
@@ -92,12 +280,67 @@ public class SlackService {
         return imChannelIds;
     }
 
-    public void setImChannelIds(List<String> imChannelIds) {
-        this.imChannelIds = imChannelIds;
+    public synchronized void setImChannelIds(List<String> imChannelIds) {
+        Set<String> set = ConcurrentHashMap.newKeySet();
+        set.addAll(imChannelIds);
+        this.imChannelIdSet = set;
+        this.imChannelIds = new CopyOnWriteArrayList<>(imChannelIds);
+    }
+
+    /**
+     * Add an im channel id, for example on {@code im_created} or {@code im_open} events, and
+     * append it to the directory snapshot if it wasn't known already.
+     *
+     * @param channelId the im channel id
+     * @return {@code true} if the channel id was not known already
+     */
+    public synchronized boolean addImChannelId(String channelId) {
+        if (!imChannelIdSet.add(channelId)) {
+            return false;
+        }
+        imChannelIds.add(channelId);
+        if (directorySnapshot != null) {
+            directorySnapshot.append(channelId);
+        }
+        return true;
     }
 
-    public boolean addImChannelId(String channelId) {
-        return imChannelIds.add(channelId);
+    /**
+     * @return rate limited client to call any other method of the Web API.
+     */
+    public SlackWebApiClient getWebApiClient() {
+        return slackWebApiClient;
+    }
+
+    /**
+     * Users, channels and user groups of the workspace, loaded when first asked for. Available once
+     * connected.
+     *
+     * @return cache of the workspace metadata
+     */
+    public synchronized MetadataCache getMetadataCache() {
+        if (metadataCache == null) {
+            if (slackToken == null) {
+                throw new IllegalStateException("Not connected to Slack yet");
+            }
+            metadataCache = new MetadataCache(slackWebApiClient, slackToken, metadataCacheSize);
+        }
+        return metadataCache;
+    }
+
+    /**
+     * Update the cached users, channels and user groups an event is about.
+     *
+     * @param event received from slack
+     */
+    public void updateMetadata(Event event) {
+        MetadataCache cache;
+        synchronized (this) {
+            cache = metadataCache;
+        }
+        if (cache != null) { // nothing cached otherwise
+            cache.update(event);
+        }
     }
 
     /**
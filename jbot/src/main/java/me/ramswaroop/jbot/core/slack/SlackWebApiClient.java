@@ -0,0 +1,491 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.slack.models.Channel;
+import me.ramswaroop.jbot.core.slack.models.ConversationHistory;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Asynchronous client of the <a href="https://api.slack.com/web">Slack Web API</a>, shared by all the
+ * bots and workspaces of the application.
+ * <p>
+ * Slack limits every method per workspace according to its <a href="https://api.slack.com/docs/rate-limits">tier</a>,
+ * so calls are queued per token and method and released by a token bucket refilled at the rate of the tier.
+ * When Slack answers {@code 429 Too Many Requests} anyway, e.g. because another app shares the limit, the
+ * method is paused for the {@code Retry-After} it asked for and the call is queued again. In a queue,
+ * {@link Priority#INTERACTIVE} calls, like replies to users, go ahead of {@link Priority#BACKGROUND} ones.
+ * <p>
+ * {@code chat.postMessage} is limited per channel rather than per method, so its bucket only bounds the
+ * messages of the whole workspace and the one message per second per channel is left to the
+ * {@link ChannelRateLimiter} of the bot.
+ * <p>
+ * Identical read calls of the same priority in flight at the same time, e.g. many events asking for the same
+ * user, are made once and share the response. A call of another priority is made on its own, so that an
+ * interactive read never waits behind a background one.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@Service
+public class SlackWebApiClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlackWebApiClient.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Number of times a call is queued again after a {@code 429}.
+     */
+    private static final int MAX_RATE_LIMITED_RETRIES = 3;
+
+    /**
+     * Priority of a call within the queue of its method.
+     */
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    /**
+     * Rate limit tiers of the Web API methods, in calls per minute.
+     */
+    public enum Tier {
+        TIER_1(1), TIER_2(20), TIER_3(50), TIER_4(100),
+        /**
+         * Methods with their own limits, e.g. {@code chat.postMessage} allows about one message per second per
+         * channel, see {@link ChannelRateLimiter}. This only bounds the calls of a whole workspace.
+         */
+        SPECIAL(600);
+
+        private final int perMinute;
+
+        Tier(int perMinute) {
+            this.perMinute = perMinute;
+        }
+
+        public int getPerMinute() {
+            return perMinute;
+        }
+    }
+
+    private static final Map<String, Tier> tiers = new HashMap<>();
+
+    static {
+        tiers.put("apps.connections.open", Tier.TIER_1);
+        tiers.put("rtm.connect", Tier.TIER_1);
+        tiers.put("auth.test", Tier.SPECIAL);
+        tiers.put("chat.postMessage", Tier.SPECIAL);
+        tiers.put("chat.update", Tier.TIER_3);
+        tiers.put("chat.delete", Tier.TIER_3);
+        tiers.put("conversations.history", Tier.TIER_3);
+        tiers.put("conversations.info", Tier.TIER_3);
+        tiers.put("conversations.list", Tier.TIER_2);
+        tiers.put("conversations.members", Tier.TIER_4);
+        tiers.put("conversations.replies", Tier.TIER_3);
+        tiers.put("reactions.add", Tier.TIER_3);
+        tiers.put("usergroups.list", Tier.TIER_2);
+        tiers.put("users.info", Tier.TIER_4);
+        tiers.put("users.list", Tier.TIER_2);
+    }
+
+    /**
+     * Number of threads making the HTTP calls.
+     */
+    @Value("${slackWebApiThreads:4}")
+    private int threads = 4;
+
+    @Autowired
+    SlackApiEndpoints slackApiEndpoints;
+
+    @Autowired
+    RestTemplate restTemplate;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<JsonNode>> inFlightReads = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "slack-web-api-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ExecutorService workers;
+
+    /**
+     * Post a message with {@code chat.postMessage}. The text is encoded as Slack expects.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param message    message with at least the channel and the text, and the {@code thread_ts} to reply in a thread
+     * @param priority   {@link Priority#INTERACTIVE} for replies to users
+     * @return future completed with an event whose {@code ok}, {@code ts} and {@code channel_id} are set
+     */
+    public CompletableFuture<Event> postMessage(String slackToken, Message message, Priority priority) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("channel", message.getChannel());
+        body.put("text", message.getText() == null ? null : MessageEncoder.encodeText(message.getText()));
+        if (message.getThreadTs() != null) {
+            body.put("thread_ts", message.getThreadTs());
+        }
+        return post(slackToken, "chat.postMessage", body, priority).thenApply(response -> {
+            Event event = new Event();
+            event.setOk(true);
+            event.setTs(response.path("ts").asText(null));
+            event.setChannelId(response.path("channel").asText(null));
+            return event;
+        });
+    }
+
+    /**
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param userId     id of the user
+     * @param priority   priority of the call
+     * @return future completed with the user, from {@code users.info}
+     */
+    public CompletableFuture<User> getUserInfo(String slackToken, String userId, Priority priority) {
+        return get(slackToken, "users.info", Collections.singletonMap("user", userId), priority)
+                .thenApply(field("user", User.class));
+    }
+
+    /**
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param channelId  id of the channel, im or group
+     * @param priority   priority of the call
+     * @return future completed with the channel, from {@code conversations.info}
+     */
+    public CompletableFuture<Channel> getConversationInfo(String slackToken, String channelId, Priority priority) {
+        return get(slackToken, "conversations.info", Collections.singletonMap("channel", channelId), priority)
+                .thenApply(field("channel", Channel.class));
+    }
+
+    /**
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param channelId  id of the channel, im or group
+     * @param limit      maximum number of messages to return
+     * @param cursor     {@code next_cursor} of the previous page, {@code null} for the latest messages
+     * @param priority   priority of the call
+     * @return future completed with a page of messages, latest first, from {@code conversations.history}
+     */
+    public CompletableFuture<ConversationHistory> getConversationHistory(String slackToken, String channelId,
+                                                                         int limit, String cursor, Priority priority) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("channel", channelId);
+        params.put("limit", limit);
+        if (cursor != null) {
+            params.put("cursor", cursor);
+        }
+        return get(slackToken, "conversations.history", params, priority).thenApply(response -> {
+            try {
+                return mapper.treeToValue(response, ConversationHistory.class);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unexpected response of conversations.history", e);
+            }
+        });
+    }
+
+    /**
+     * Call a read method with its arguments in the query string. If the same call with the same token and
+     * priority is in flight already, its future is returned instead of calling Slack again.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param method     Web API method, e.g. {@code users.info}
+     * @param params     arguments of the method
+     * @param priority   priority of the call
+     * @return future completed with the response, or failed with a {@link SlackApiException} if it's not ok
+     */
+    public CompletableFuture<JsonNode> get(String slackToken, String method, Map<String, ?> params, Priority priority) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(slackApiEndpoints.getWebApi(method));
+        params.forEach(builder::queryParam);
+        URI uri = builder.build().encode().toUri();
+        String key = slackToken + ' ' + priority + ' ' + uri;
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        CompletableFuture<JsonNode> inFlight = inFlightReads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight;
+        }
+        future.whenComplete((response, t) -> inFlightReads.remove(key, future));
+        enqueue(slackToken, new Call(method, uri, HttpMethod.GET, new HttpEntity<>(headers(slackToken, false)),
+                priority, future));
+        return future;
+    }
+
+    /**
+     * Call a method with its arguments as a JSON body.
+     *
+     * @param slackToken slack token which you get from slack for the integration you create
+     * @param method     Web API method, e.g. {@code chat.postMessage}
+     * @param body       arguments of the method
+     * @param priority   priority of the call
+     * @return future completed with the response, or failed with a {@link SlackApiException} if it's not ok
+     */
+    public CompletableFuture<JsonNode> post(String slackToken, String method, Map<String, ?> body, Priority priority) {
+        CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        enqueue(slackToken, new Call(method, URI.create(slackApiEndpoints.getWebApi(method)), HttpMethod.POST,
+                new HttpEntity<>(body, headers(slackToken, true)), priority, future));
+        return future;
+    }
+
+    private static HttpHeaders headers(String slackToken, boolean json) {
+        HttpHeaders headers = new HttpHeaders();
+        if (json) {
+            headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        }
+        headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + slackToken);
+        return headers;
+    }
+
+    private static <T> Function<JsonNode, T> field(String name, Class<T> type) {
+        return response -> {
+            try {
+                return mapper.treeToValue(response.path(name), type);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unexpected " + name + " in response: " + response, e);
+            }
+        };
+    }
+
+    private void enqueue(String slackToken, Call call) {
+        Bucket bucket = buckets.computeIfAbsent(slackToken + ' ' + call.method,
+                k -> new Bucket(tiers.getOrDefault(call.method, Tier.TIER_3)));
+        synchronized (bucket) {
+            bucket.queue.add(call);
+        }
+        drain(bucket);
+    }
+
+    /**
+     * Hand the calls of {@code bucket} to the workers as long as there are tokens, then schedule the next
+     * drain for when a token is available again.
+     */
+    private void drain(Bucket bucket) {
+        synchronized (bucket) {
+            while (!bucket.queue.isEmpty()) {
+                long waitNanos = bucket.acquire(System.nanoTime());
+                if (waitNanos > 0) {
+                    if (!bucket.drainScheduled) {
+                        bucket.drainScheduled = true;
+                        scheduler.schedule(() -> {
+                            synchronized (bucket) {
+                                bucket.drainScheduled = false;
+                            }
+                            drain(bucket);
+                        }, waitNanos, TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                }
+                Call call = bucket.queue.poll();
+                try {
+                    getWorkers().execute(() -> execute(bucket, call));
+                } catch (RejectedExecutionException e) {
+                    call.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void execute(Bucket bucket, Call call) {
+        try {
+            JsonNode response = restTemplate.exchange(call.uri, call.httpMethod, call.entity, JsonNode.class).getBody();
+            if (response == null) {
+                call.future.completeExceptionally(new SlackApiException(call.method, "empty_response"));
+            } else if (!response.path("ok").asBoolean()) {
+                call.future.completeExceptionally(new SlackApiException(call.method, response.path("error").asText()));
+            } else {
+                call.future.complete(response);
+            }
+        } catch (HttpStatusCodeException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS && call.retries < MAX_RATE_LIMITED_RETRIES) {
+                rateLimited.increment();
+                long retryAfterSeconds = retryAfter(e);
+                logger.warn("Slack rate limited {}, retrying in {} s", call.method, retryAfterSeconds);
+                call.retries++;
+                synchronized (bucket) {
+                    bucket.pause(System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfterSeconds));
+                    bucket.queue.add(call); // keeps its place as the sequence is unchanged
+                }
+                drain(bucket);
+            } else {
+                call.future.completeExceptionally(e);
+            }
+        } catch (Exception e) {
+            call.future.completeExceptionally(e);
+        }
+    }
+
+    private static long retryAfter(HttpStatusCodeException e) {
+        String retryAfter = e.getResponseHeaders() == null ? null : e.getResponseHeaders().getFirst("Retry-After");
+        try {
+            return retryAfter == null ? 1 : Math.max(1, Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException nfe) {
+            return 1;
+        }
+    }
+
+    private synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "slack-web-api-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return workers;
+    }
+
+    /**
+     * @param method Web API method
+     * @return rate limit tier of the method, tier 3 for the methods not known
+     */
+    public static Tier getTier(String method) {
+        return tiers.getOrDefault(method, Tier.TIER_3);
+    }
+
+    /**
+     * @return number of calls waiting for their rate limit.
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Bucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                queued += bucket.queue.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return number of {@code 429} answers received.
+     */
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * @return number of read calls which shared the response of an identical call in flight.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        synchronized (this) {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Token bucket and queue of the calls to one method with one token.
+     */
+    private static class Bucket {
+        final PriorityQueue<Call> queue = new PriorityQueue<>();
+        final double tokensPerNano;
+        final double capacity;
+        double tokens;
+        long refilledAt = System.nanoTime();
+        long pausedUntil;
+        boolean drainScheduled;
+
+        Bucket(Tier tier) {
+            this.tokensPerNano = tier.getPerMinute() / (double) TimeUnit.MINUTES.toNanos(1);
+            this.capacity = Math.max(1, tier.getPerMinute() / 10); // a small burst, Slack tolerates those
+            this.tokens = capacity;
+            this.pausedUntil = refilledAt;
+        }
+
+        /**
+         * Take a token.
+         *
+         * @return 0 if a token was taken, otherwise nanos to wait for one
+         */
+        long acquire(long now) {
+            if (now - pausedUntil < 0) {
+                return pausedUntil - now;
+            }
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        void pause(long until) {
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+                refilledAt = until;
+            }
+            tokens = 0;
+        }
+    }
+
+    private class Call implements Comparable<Call> {
+        final String method;
+        final URI uri;
+        final HttpMethod httpMethod;
+        final HttpEntity<?> entity;
+        final Priority priority;
+        final long seq = sequence.incrementAndGet();
+        final CompletableFuture<JsonNode> future;
+        int retries;
+
+        Call(String method, URI uri, HttpMethod httpMethod, HttpEntity<?> entity, Priority priority,
+             CompletableFuture<JsonNode> future) {
+            this.method = method;
+            this.uri = uri;
+            this.httpMethod = httpMethod;
+            this.entity = entity;
+            this.priority = priority;
+            this.future = future;
+        }
+
+        @Override
+        public int compareTo(Call other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.BotWebSocketHandler;
+import me.ramswaroop.jbot.core.common.SerialExecutor;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for Slack Bots receiving events through
+ * <a href="https://api.slack.com/apis/connections/socket">Socket Mode</a> instead of RTM. No public HTTP
+ * endpoint is needed, the bot opens a few {@link SocketModeConnection}s and Slack spreads the events over
+ * them, so one connection going down does not stop the bot. Replies are posted through the Web API.
+ * <p>
+ * Envelopes are acknowledged as soon as they are read and the events are then dispatched to the same
+ * {@link me.ramswaroop.jbot.core.common.Controller} methods as in a RTM {@link Bot}, through a
+ * {@link BotWebSocketHandler}, with the socket mode web socket session. Events of a connection are
+ * dispatched in order on a shared pool.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public abstract class SocketModeBot extends Bot {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketModeBot.class);
+
+    /**
+     * Number of Socket Mode connections to keep open, Slack allows up to 10 per app.
+     */
+    @Value("${slackSocketModeConnections:2}")
+    private int socketModeConnections = 2;
+
+    /**
+     * Number of threads dispatching events to the controllers.
+     */
+    @Value("${slackDispatchThreads:8}")
+    private int dispatchThreads = 8;
+
+    private final List<SocketModeConnection> connections = new CopyOnWriteArrayList<>();
+
+    private ExecutorService dispatchPool;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Class extending this must implement this as it's
+     * required to open Socket Mode connections.
+     *
+     * @return app level token of the Slack app, starting with {@code xapp-}
+     */
+    public abstract String getAppToken();
+
+    /**
+     * Open the Socket Mode connections. The user the bot token belongs to is fetched to spot the
+     * direct mentions.
+     */
+    @Override
+    protected void startRTMAndWebSocketConnection() {
+        slackService.authenticate(getSlackToken());
+        for (int i = 0; i < socketModeConnections; i++) {
+            SocketModeConnection connection = new SocketModeConnection(getAppToken(), slackService, client(),
+                    new BotWebSocketHandler(getSlackBot(), new SerialExecutor(getDispatchPool())),
+                    getOutboundMessageWriter(), getScheduler());
+            connections.add(connection);
+            getDispatchPool().execute(() -> {
+                try {
+                    if (!connection.start()) {
+                        logger.error("Could not open Socket Mode connection.");
+                    }
+                } catch (Exception e) {
+                    logger.error("Error opening Socket Mode connection: ", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Post the reply through the Web API.
+     */
+    @Override
+    protected boolean sendReply(WebSocketSession session, Message message, ReplyTracker.Reply reply) {
+        return postReply(session, message, reply);
+    }
+
+    /**
+     * @return the Socket Mode connections of the bot.
+     */
+    public List<SocketModeConnection> getSocketModeConnections() {
+        return Collections.unmodifiableList(connections);
+    }
+
+    private synchronized ExecutorService getDispatchPool() {
+        if (dispatchPool == null) {
+            AtomicInteger count = new AtomicInteger();
+            dispatchPool = Executors.newFixedThreadPool(dispatchThreads, r -> {
+                Thread thread = new Thread(r, "slack-socket-mode-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return dispatchPool;
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "slack-socket-mode-reconnect");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Close the Socket Mode connections and shutdown the pools.
+     */
+    @Override
+    public void destroy() {
+        for (SocketModeConnection connection : connections) {
+            connection.stop();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (dispatchPool != null) {
+            dispatchPool.shutdownNow();
+        }
+        super.destroy();
+    }
+}
@@ -0,0 +1,254 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.WebSocketConnectionManager;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A <a href="https://api.slack.com/apis/connections/socket">Socket Mode</a> connection. Slack wraps every
+ * event in an envelope which must be acknowledged within a few seconds, otherwise the event is delivered
+ * again. The envelope is acknowledged as soon as it's read, through the {@link OutboundMessageWriter},
+ * and only then the event inside it is handed to the handler, so a slow controller never delays the ack.
+ * <p>
+ * When Slack asks to refresh the connection with a {@code disconnect} envelope, a new connection is
+ * opened and the old one is closed once the new one says hello. A connection closed unexpectedly is
+ * opened again after a random delay, meanwhile the other connections of the bot get the events.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SocketModeConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(SocketModeConnection.class);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 60000;
+
+    private static final long HELLO_TIMEOUT_MILLIS = 30000;
+
+    private final String appToken;
+    private final SlackService slackService;
+    private final WebSocketClient client;
+    private final WebSocketHandler handler;
+    private final OutboundMessageWriter ackWriter;
+    private final ScheduledExecutorService scheduler;
+
+    private WebSocketConnectionManager webSocketManager;
+    private WebSocketConnectionManager retiringWebSocketManager;
+    private WebSocketConnectionManager helloWebSocketManager;
+    private volatile WebSocketSession session;
+    private volatile boolean stopped;
+    private long reconnectDelayMillis = 1000;
+
+    private final LongAdder envelopes = new LongAdder();
+    private final LongAdder acksRejected = new LongAdder();
+
+    /**
+     * @param appToken     app level token, starting with {@code xapp-}
+     * @param slackService to open the connections
+     * @param client       web socket client, can be shared
+     * @param handler      handler of the events, e.g. a {@link me.ramswaroop.jbot.core.common.BotWebSocketHandler}
+     * @param ackWriter    writer through which the envelopes are acknowledged, can be shared
+     * @param scheduler    to schedule reconnects on, can be shared
+     */
+    public SocketModeConnection(String appToken, SlackService slackService, WebSocketClient client,
+                                WebSocketHandler handler, OutboundMessageWriter ackWriter,
+                                ScheduledExecutorService scheduler) {
+        this.appToken = appToken;
+        this.slackService = slackService;
+        this.client = client;
+        this.ackWriter = ackWriter;
+        this.scheduler = scheduler;
+        this.handler = new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                if (message instanceof TextMessage) {
+                    handleEnvelope(session, getDelegate(), ((TextMessage) message).getPayload());
+                } else {
+                    super.handleMessage(session, message);
+                }
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                super.afterConnectionClosed(session, closeStatus);
+                connectionClosed(session);
+            }
+        };
+    }
+
+    /**
+     * Open a web socket connection with a new url from {@code apps.connections.open}.
+     *
+     * @return {@code false} if Slack did not return a url
+     */
+    public synchronized boolean start() {
+        stopped = false;
+        String url = slackService.openSocketModeConnection(appToken);
+        if (url == null) {
+            return false;
+        }
+        WebSocketConnectionManager started = new WebSocketConnectionManager(client, handler, url);
+        webSocketManager = started;
+        started.start();
+        scheduler.schedule(() -> helloTimeout(started), HELLO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Close the web socket connection for good.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        stop(webSocketManager);
+        stop(retiringWebSocketManager);
+        webSocketManager = null;
+        retiringWebSocketManager = null;
+        session = null;
+    }
+
+    private void handleEnvelope(WebSocketSession session, WebSocketHandler delegate, String payload) throws Exception {
+        JsonNode envelope = mapper.readTree(payload);
+        String envelopeId = envelope.path("envelope_id").asText(null);
+        if (envelopeId != null) {
+            envelopes.increment();
+            String ack = mapper.createObjectNode().put("envelope_id", envelopeId).toString();
+            if (!ackWriter.send(session, ack)) {
+                acksRejected.increment();
+                logger.warn("Outbound queue full, envelope {} not acknowledged.", envelopeId);
+            }
+        }
+        String type = envelope.path("type").asText();
+        if ("events_api".equals(type)) {
+            JsonNode event = envelope.path("payload").path("event");
+            if (!event.isMissingNode()) {
+                delegate.handleMessage(session, new TextMessage(event.toString()));
+            }
+        } else if ("hello".equals(type)) {
+            hello(session);
+        } else if ("disconnect".equals(type)) {
+            logger.info("Slack is closing Socket Mode connection, reason: {}", envelope.path("reason").asText());
+            scheduler.execute(this::refresh); // not on the socket's thread as it calls the Web API
+        } else {
+            logger.debug("Socket Mode envelope type not supported: {}", type);
+        }
+    }
+
+    private synchronized void hello(WebSocketSession session) {
+        this.session = session;
+        helloWebSocketManager = webSocketManager;
+        reconnectDelayMillis = 1000;
+        if (retiringWebSocketManager != null) {
+            stop(retiringWebSocketManager);
+            retiringWebSocketManager = null;
+        }
+    }
+
+    /**
+     * Open a new connection, the current one keeps receiving until the new one says hello.
+     */
+    private synchronized void refresh() {
+        if (stopped || retiringWebSocketManager != null) return;
+        retiringWebSocketManager = webSocketManager;
+        try {
+            if (!start()) {
+                webSocketManager = retiringWebSocketManager;
+                retiringWebSocketManager = null;
+            }
+        } catch (Exception e) {
+            logger.error("Error refreshing Socket Mode connection: ", e);
+            webSocketManager = retiringWebSocketManager;
+            retiringWebSocketManager = null;
+        }
+    }
+
+    /**
+     * Give up on a connection which did not say hello in time.
+     */
+    private synchronized void helloTimeout(WebSocketConnectionManager started) {
+        if (stopped || webSocketManager != started || helloWebSocketManager == started) {
+            return;
+        }
+        logger.error("No hello received on Socket Mode connection.");
+        if (retiringWebSocketManager != null) { // keep the old connection, it's still open
+            stop(started);
+            webSocketManager = retiringWebSocketManager;
+            retiringWebSocketManager = null;
+        } else {
+            scheduleReconnect();
+        }
+    }
+
+    private synchronized void connectionClosed(WebSocketSession closed) {
+        if (stopped || retiringWebSocketManager != null || closed != session) {
+            return; // closed by us, or replaced already
+        }
+        session = null;
+        scheduleReconnect();
+    }
+
+    private synchronized void scheduleReconnect() {
+        long delay = ThreadLocalRandom.current().nextLong(reconnectDelayMillis) + 1;
+        reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLIS);
+        logger.warn("Socket Mode connection closed, reconnecting in {} ms...", delay);
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                if (stopped) return;
+                stop(webSocketManager);
+                try {
+                    if (start()) return;
+                } catch (Exception e) {
+                    logger.error("Error reconnecting Socket Mode connection: ", e);
+                }
+                scheduleReconnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void stop(WebSocketConnectionManager manager) {
+        if (manager != null) {
+            try {
+                manager.stop();
+            } catch (Exception e) {
+                logger.error("Error closing websocket. Exception: ", e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the connection said hello and is open.
+     */
+    public boolean isOpen() {
+        WebSocketSession webSocketSession = session;
+        return webSocketSession != null && webSocketSession.isOpen();
+    }
+
+    /**
+     * @return number of envelopes received.
+     */
+    public long getEnvelopes() {
+        return envelopes.sum();
+    }
+
+    /**
+     * @return number of acks which could not be queued, Slack delivers those envelopes again.
+     */
+    public long getAcksRejected() {
+        return acksRejected.sum();
+    }
+}
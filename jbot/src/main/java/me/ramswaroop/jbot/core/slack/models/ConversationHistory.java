@@ -0,0 +1,43 @@
+package me.ramswaroop.jbot.core.slack.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A page of messages returned by {@code conversations.history}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ConversationHistory {
+    private Message[] messages;
+    @JsonProperty("has_more")
+    private boolean hasMore;
+    @JsonProperty("response_metadata")
+    private ResponseMetadata responseMetadata;
+
+    public Message[] getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Message[] messages) {
+        this.messages = messages;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public ResponseMetadata getResponseMetadata() {
+        return responseMetadata;
+    }
+
+    public void setResponseMetadata(ResponseMetadata responseMetadata) {
+        this.responseMetadata = responseMetadata;
+    }
+}
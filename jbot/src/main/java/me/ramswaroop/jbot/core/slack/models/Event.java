@@ -24,6 +24,8 @@ public class Event {
     private String botId;
     @JsonProperty("channel_id")
     private String channelId;
+    @JsonProperty("channel_type")
+    private String channelType;
     @JsonProperty("user_id")
     private String userId;
     private String text;
@@ -123,6 +125,14 @@ public class Event {
         this.channelId = channelId;
     }
 
+    public String getChannelType() {
+        return channelType;
+    }
+
+    public void setChannelType(String channelType) {
+        this.channelType = channelType;
+    }
+
     public Edited getEdited() {
         return edited;
     }
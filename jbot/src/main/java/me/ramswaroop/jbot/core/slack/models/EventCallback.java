@@ -0,0 +1,91 @@
+package me.ramswaroop.jbot.core.slack.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Envelope of the requests Slack sends to the Events API endpoint, either a {@code url_verification}
+ * with a challenge or an {@code event_callback} wrapping an {@link Event}.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class EventCallback {
+    private String token;
+    private String type;
+    private String challenge;
+    @JsonProperty("team_id")
+    private String teamId;
+    @JsonProperty("api_app_id")
+    private String apiAppId;
+    @JsonProperty("event_id")
+    private String eventId;
+    @JsonProperty("event_time")
+    private long eventTime;
+    private Event event;
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getChallenge() {
+        return challenge;
+    }
+
+    public void setChallenge(String challenge) {
+        this.challenge = challenge;
+    }
+
+    public String getTeamId() {
+        return teamId;
+    }
+
+    public void setTeamId(String teamId) {
+        this.teamId = teamId;
+    }
+
+    public String getApiAppId() {
+        return apiAppId;
+    }
+
+    public void setApiAppId(String apiAppId) {
+        this.apiAppId = apiAppId;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public long getEventTime() {
+        return eventTime;
+    }
+
+    public void setEventTime(long eventTime) {
+        this.eventTime = eventTime;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    public void setEvent(Event event) {
+        this.event = event;
+    }
+}
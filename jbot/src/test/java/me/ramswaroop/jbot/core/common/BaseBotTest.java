@@ -0,0 +1,52 @@
+package me.ramswaroop.jbot.core.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class BaseBotTest {
+
+    @Test
+    public void returnsTheMatcherOfEachEventWithoutSharingIt() throws Exception {
+        TestBot bot = new TestBot();
+        BaseBot.MethodWrapper shared = bot.eventToMethodsMap.get(EventType.MESSAGE.name()).get(0);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String text = "order " + i;
+            results.add(pool.submit((Callable<Boolean>) () -> {
+                BaseBot.MethodWrapper matched = bot.getMethodWithMatchingPatternAndFilterUnmatchedMethods(text,
+                        new ArrayList<>(bot.eventToMethodsMap.get(EventType.MESSAGE.name())));
+                Matcher matcher = matched.getMatcher();
+                assertNotSame(shared, matched);
+                assertEquals(shared.getMethod(), matched.getMethod());
+                return text.equals("order " + matcher.group(1));
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertEquals(true, result.get());
+        }
+        assertNull(shared.getMatcher());
+        pool.shutdown();
+    }
+
+    public static class TestBot extends BaseBot {
+        @Controller(events = EventType.MESSAGE, pattern = "^order (\\d+)$")
+        public void onOrder(Object event, Matcher matcher) {
+        }
+    }
+}
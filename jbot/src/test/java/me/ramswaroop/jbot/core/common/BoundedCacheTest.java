@@ -0,0 +1,69 @@
+package me.ramswaroop.jbot.core.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void keepsHotEntriesWhileColdOnesGoThrough() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("hot" + i, i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.put("cold" + i, i);
+            assertEquals(Integer.valueOf(i % 10), cache.get("hot" + i % 10));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), cache.get("hot" + i));
+        }
+        assertEquals(100, cache.size());
+        assertEquals(9910, cache.getEvictions());
+    }
+
+    @Test
+    public void evictsEntriesNotUsedSinceTheLastSweep() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.put("d", 4); // a gets a second chance, b is evicted
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void reusesTheSlotsOfRemovedEntries() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2);
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+        assertNull(cache.putIfAbsent("b", 2));
+        assertFalse(cache.remove("a", 2));
+        assertTrue(cache.remove("a", 1));
+        cache.put("c", 3);
+        assertEquals(Integer.valueOf(2), cache.remove("b"));
+        cache.put("d", 4);
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictions());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put("e", 5);
+        cache.put("f", 6);
+        assertEquals(0, cache.getEvictions());
+        assertEquals(Integer.valueOf(5), cache.get("e"));
+    }
+}
@@ -0,0 +1,77 @@
+package me.ramswaroop.jbot.core.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class HashedWheelTimerTest {
+
+    @Test
+    public void neverFiresBeforeTheDeadline() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+        int count = 200;
+        CountDownLatch fired = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            long delayMillis = i % 40; // up to 5 rounds of the wheel
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            timer.newTimeout(() -> {
+                if (System.nanoTime() < deadline) early.incrementAndGet();
+                fired.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        timer.stop();
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotFire() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+        AtomicBoolean cancelledFired = new AtomicBoolean();
+        CountDownLatch later = new CountDownLatch(1);
+        HashedWheelTimer.Timeout cancelled = timer.newTimeout(() -> cancelledFired.set(true), 10,
+                TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout expired = timer.newTimeout(later::countDown, 30, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledFired.get());
+        assertTrue(cancelled.isCancelled());
+        assertTrue(expired.isExpired());
+        assertFalse(expired.cancel());
+        timer.stop();
+    }
+
+    @Test
+    public void keepsRunningAfterAFailingTask() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("task failed");
+        }, 1, TimeUnit.MILLISECONDS);
+        timer.newTimeout(fired::countDown, 5, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        timer.stop();
+    }
+
+    @Test
+    public void timeoutsAfterStopAreCancelled() {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+        timer.stop();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.isCancelled());
+    }
+}
@@ -0,0 +1,89 @@
+package me.ramswaroop.jbot.core.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler which only records the tasks, executed ones included, for the test to run them. Cancelling
+ * the future of a task removes it.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+    public final Deque<Runnable> tasks = new ArrayDeque<>();
+    public final List<Long> delays = new ArrayList<>();
+
+    public ManualScheduler() {
+        super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        tasks.add(command);
+        delays.add(unit.toMillis(delay));
+        return new Task(command, unit.toMillis(delay));
+    }
+
+    public void runNext() {
+        tasks.poll().run();
+    }
+
+    public void runLast() {
+        tasks.pollLast().run();
+    }
+
+    private class Task implements ScheduledFuture<Object> {
+        final Runnable command;
+        final long delayMillis;
+        boolean cancelled;
+
+        Task(Runnable command, long delayMillis) {
+            this.command = command;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            cancelled = tasks.remove(command);
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || !tasks.contains(command);
+        }
+
+        @Override
+        public Object get() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.ramswaroop.jbot.core.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class SerialExecutorTest {
+
+    @Test
+    public void runsTasksInSubmissionOrderOnASharedPool() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        SerialExecutor executor = new SerialExecutor(pool);
+        List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            executor.execute(() -> {
+                ran.add(task);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) ran.get(i));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void runsTasksOfDifferentExecutorsInParallel() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        SerialExecutor first = new SerialExecutor(pool);
+        SerialExecutor second = new SerialExecutor(pool);
+        CountDownLatch secondRan = new CountDownLatch(1);
+        CountDownLatch firstDone = new CountDownLatch(1);
+        first.execute(() -> {
+            try {
+                if (secondRan.await(5, TimeUnit.SECONDS)) { // blocks the first workspace only
+                    firstDone.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.execute(secondRan::countDown);
+        assertTrue(firstDone.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void keepsGoingAfterAFailingTask() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        SerialExecutor executor = new SerialExecutor(pool);
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("controller failed");
+        });
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void dropsPendingTasksWhenThePoolRejects() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        SerialExecutor executor = new SerialExecutor(pool);
+        try {
+            executor.execute(() -> {
+            });
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertTrue(executor.isIdle());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package me.ramswaroop.jbot.core.common.configuration;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Calls go through the limiter to an interceptor answering them, no connection is opened.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class HostConnectionLimiterTest {
+
+    private static final String HOST = "graph.facebook.test";
+
+    private final HostConnectionLimiter limiter = new HostConnectionLimiter(1, 50);
+    private volatile boolean failing;
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(limiter)
+            .addInterceptor(chain -> {
+                if (failing) {
+                    throw new IOException("Connection reset");
+                }
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create("{\"ok\":true}", MediaType.get("application/json")))
+                        .build();
+            })
+            .build();
+
+    @Test
+    public void holdsTheSlotUntilTheBodyIsClosed() throws Exception {
+        Response response = call();
+        assertEquals(1, limiter.getInFlight(HOST));
+        try {
+            call();
+            fail("The slot is held by the unread response");
+        } catch (InterruptedIOException e) {
+            assertEquals(1, limiter.getTimedOut());
+        }
+
+        assertEquals("{\"ok\":true}", response.body().string()); // reads and closes the body
+        assertEquals(0, limiter.getInFlight(HOST));
+        response.close();
+        assertEquals(0, limiter.getInFlight(HOST));
+
+        call().close();
+        assertEquals(0, limiter.getInFlight(HOST));
+        assertEquals(2, limiter.getWaitLatencies().getCount()); // the timed out wait is not recorded
+    }
+
+    @Test
+    public void releasesTheSlotOfAFailedCall() throws Exception {
+        failing = true;
+        try {
+            call();
+            fail("The call fails");
+        } catch (IOException e) {
+            assertEquals("Connection reset", e.getMessage());
+        }
+        assertEquals(0, limiter.getInFlight(HOST));
+        failing = false;
+        call().close();
+        assertEquals(0, limiter.getInFlight(HOST));
+    }
+
+    private Response call() throws IOException {
+        return client.newCall(new Request.Builder().url("https://" + HOST + "/me/messages").build()).execute();
+    }
+}
@@ -0,0 +1,67 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.facebook.models.Attachment;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+import me.ramswaroop.jbot.core.facebook.models.Payload;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class AttachmentCacheTest {
+
+    @Test
+    public void sendsMediaByIdOnceUploaded() throws Exception {
+        List<String> uploads = new CopyOnWriteArrayList<>();
+        RestTemplate restTemplate = new RestTemplate() {
+            @Override
+            public <T> T postForObject(String url, Object request, Class<T> responseType, Object... uriVariables) {
+                try {
+                    uploads.add(new ObjectMapper().writeValueAsString(request));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return (T) "{\"attachment_id\":\"1857777774821032\"}";
+            }
+        };
+        Path file = Files.createTempFile("attachments", ".tsv");
+        Files.delete(file);
+        AttachmentCache cache = new AttachmentCache(restTemplate, "https://graph.facebook.com", file);
+
+        Message message = image();
+        cache.rewrite(message); // not uploaded yet, sent by url and uploaded
+        assertEquals("https://example.com/cat.png", message.getAttachment().getPayload().getUrl());
+        for (int i = 0; i < 50 && cache.size() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, uploads.size());
+        assertTrue(uploads.get(0).contains("\"is_reusable\":true"));
+        cache.shutdown();
+
+        cache = new AttachmentCache(restTemplate, "https://graph.facebook.com", file);
+        message = image();
+        cache.rewrite(message);
+        assertEquals("1857777774821032", message.getAttachment().getPayload().getAttachmentId());
+        assertNull(message.getAttachment().getPayload().getUrl());
+        assertEquals(1, cache.getHits());
+        cache.shutdown();
+        Files.delete(file);
+    }
+
+    private static Message image() {
+        return new Message().setAttachment(new Attachment().setType("image")
+                .setPayload(new Payload().setUrl("https://example.com/cat.png")));
+    }
+}
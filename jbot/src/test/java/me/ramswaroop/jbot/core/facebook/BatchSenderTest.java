@@ -0,0 +1,111 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.common.ManualScheduler;
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class BatchSenderTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<JsonNode> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void keepsOneRequestPerRecipientInABatch() throws Exception {
+        BatchSender sender = sender("{\"code\":200,\"body\":\"{\\\"message_id\\\":\\\"m\\\"}\"}",
+                "{\"code\":400,\"body\":\"{}\"}");
+
+        CompletableFuture<ResponseEntity<String>> first = sender.send(reply("1", "first"));
+        CompletableFuture<ResponseEntity<String>> second = sender.send(reply("1", "second"));
+        CompletableFuture<ResponseEntity<String>> other = sender.send(reply("2", "other"));
+        assertEquals(1, scheduler.tasks.size()); // lingers for more requests
+        assertEquals(Long.valueOf(20), scheduler.delays.get(0));
+
+        scheduler.runNext();
+        assertEquals(HttpStatus.OK, first.get().getStatusCode());
+        assertEquals("{\"message_id\":\"m\"}", first.get().getBody());
+        assertEquals(HttpStatus.BAD_REQUEST, other.get().getStatusCode());
+        assertFalse(second.isDone()); // waits for the batch of the first
+
+        scheduler.runNext();
+        assertEquals(HttpStatus.OK, second.get().getStatusCode());
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertTrue(batches.get(0).get(0).path("body").asText().contains("first"));
+        assertTrue(batches.get(1).get(0).path("body").asText().contains("second"));
+        assertEquals(3, sender.getRequests());
+        assertEquals(0, sender.getQueued());
+    }
+
+    @Test
+    public void completesEveryRequestWhateverItsCode() throws Exception {
+        BatchSender sender = sender("{\"code\":599,\"body\":\"{}\"}", "null");
+
+        CompletableFuture<ResponseEntity<String>> unknown = sender.send(reply("1", "first"));
+        CompletableFuture<ResponseEntity<String>> notRun = sender.send(reply("2", "other"));
+        scheduler.runNext();
+        assertEquals(599, unknown.get().getStatusCodeValue());
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, notRun.get().getStatusCode());
+    }
+
+    @Test
+    public void sendsAMessageSerializedAlready() throws Exception {
+        BatchSender sender = sender("{\"code\":200,\"body\":\"{}\"}");
+
+        sender.send(new Event().setMessagingType("RESPONSE").setRecipient(new User().setId("1")),
+                "{\"text\":\"a & b\"}");
+        scheduler.runNext();
+        assertEquals("recipient=%7B%22id%22%3A%221%22%7D&messaging_type=RESPONSE"
+                + "&message=%7B%22text%22%3A%22a+%26+b%22%7D", batches.get(0).get(0).path("body").asText());
+    }
+
+    /**
+     * @param responses answered to the requests of each batch in turn, the last one to the rest
+     */
+    private BatchSender sender(String... responses) {
+        return new BatchSender(new RestTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> T postForObject(String url, Object request, Class<T> responseType, Object... uriVariables) {
+                try {
+                    JsonNode batch = mapper.readTree(((MultiValueMap<String, String>) request).getFirst("batch"));
+                    batches.add(batch);
+                    StringBuilder answer = new StringBuilder("[");
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (i > 0) answer.append(',');
+                        answer.append(responses[Math.min(i, responses.length - 1)]);
+                    }
+                    return (T) answer.append(']').toString();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, "https://graph.facebook.com", "token", 50, 20, scheduler);
+    }
+
+    private static Event reply(String recipientId, String text) {
+        return new Event().setMessagingType("RESPONSE").setRecipient(new User().setId(recipientId))
+                .setMessage(new Message().setText(text));
+    }
+}
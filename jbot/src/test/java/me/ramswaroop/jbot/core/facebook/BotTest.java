@@ -0,0 +1,221 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.common.Controller;
+import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.facebook.models.Callback;
+import me.ramswaroop.jbot.core.facebook.models.Entry;
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import me.ramswaroop.jbot.core.facebook.models.Postback;
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the webhook with callbacks of postbacks, a postback of payload {@code block} holds its worker
+ * until {@link TestBot#unblock} is counted down.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class BotTest {
+
+    private final TestBot bot = new TestBot();
+
+    @Test
+    public void answersOnceQueuedAndRejectsWhatDoesNotFit() throws Exception {
+        bot.workerThreads = 1;
+        bot.queueCapacity = 3;
+        bot.overflowPolicy = Bot.OverflowPolicy.REJECT;
+
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "block"), event("2", "a")))
+                .getStatusCode());
+        assertTrue(bot.blocked.await(5, TimeUnit.SECONDS));
+        assertEquals(2, bot.getQueuedEvents());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, bot.setupWebhookEndpoint(callback(event("1", "b"),
+                event("2", "b"))).getStatusCode());
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "c"))).getStatusCode());
+
+        bot.unblock.countDown();
+        bot.awaitProcessed(3);
+        assertEquals("[1 block, 2 a, 1 c]", bot.processed.toString());
+        assertEquals(0, bot.getDroppedEvents());
+        bot.destroy();
+    }
+
+    @Test
+    public void queuesTheEventsOfAWebhookRequestWholeOrNotAtAll() throws Exception {
+        bot.workerThreads = 1;
+        bot.queueCapacity = 3;
+        bot.overflowPolicy = Bot.OverflowPolicy.REJECT;
+
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(null, body("page", "1 block", "2 a")).getStatusCode());
+        assertTrue(bot.blocked.await(5, TimeUnit.SECONDS));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, bot.setupWebhookEndpoint(null, body("page", "1 b", "2 b"))
+                .getStatusCode());
+        assertEquals(2, bot.getQueuedEvents());
+        assertEquals(HttpStatus.NOT_FOUND, bot.setupWebhookEndpoint(null, body("user", "3 b")).getStatusCode());
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(null, body("page", "1 c")).getStatusCode());
+
+        bot.unblock.countDown();
+        bot.awaitProcessed(3);
+        assertEquals("[1 block, 2 a, 1 c]", bot.processed.toString());
+        bot.destroy();
+    }
+
+    @Test
+    public void dropsOrRunsOnTheCallerWhatDoesNotFit() throws Exception {
+        bot.workerThreads = 1;
+        bot.queueCapacity = 1;
+        bot.overflowPolicy = Bot.OverflowPolicy.DROP;
+
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "block"), event("2", "a")))
+                .getStatusCode());
+        assertEquals(1, bot.getDroppedEvents());
+
+        bot.overflowPolicy = Bot.OverflowPolicy.CALLER_RUNS;
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("3", "b"))).getStatusCode());
+        assertEquals("[3 b]", bot.processed.toString()); // on this thread, the worker is blocked
+        assertEquals(Thread.currentThread().getName(), bot.threads.get(0));
+
+        bot.unblock.countDown();
+        bot.awaitProcessed(2);
+        assertEquals("[3 b, 1 block]", bot.processed.toString());
+        bot.destroy();
+    }
+
+    @Test
+    public void keepsTheOrderOfEachSender() throws Exception {
+        bot.workerThreads = 4;
+        for (int i = 0; i < 50; i++) {
+            assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "m" + i), event("2", "m" + i),
+                    event("3", "m" + i))).getStatusCode());
+        }
+        bot.awaitProcessed(150);
+        for (String sender : new String[]{"1", "2", "3"}) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                expected.add(sender + " m" + i);
+            }
+            assertEquals(expected, bot.processedBy(sender));
+        }
+        assertEquals(0, bot.getQueuedEvents());
+        bot.destroy();
+    }
+
+    @Test
+    public void processesTheEventsOfDifferentSendersInParallel() throws Exception {
+        bot.workerThreads = 2;
+        bot.rendezvous = new CyclicBarrier(2);
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "meet"), event("2", "meet")))
+                .getStatusCode()); // answered before the events are processed
+        bot.awaitProcessed(2);
+        assertEquals(0, bot.rendezvous.getNumberWaiting());
+        bot.destroy();
+    }
+
+    @Test
+    public void answersOnceProcessedWhenAskedTo() throws Exception {
+        bot.waitForProcessing = true;
+        bot.workerThreads = 2;
+        bot.rendezvous = new CyclicBarrier(2);
+        assertEquals(HttpStatus.OK, bot.setupWebhookEndpoint(callback(event("1", "meet"), event("1", "a"),
+                event("2", "meet"))).getStatusCode());
+        assertEquals(3, bot.processed.size()); // nothing left when the webhook answers
+        assertEquals(Arrays.asList("1 meet", "1 a"), bot.processedBy("1"));
+        assertEquals(0, bot.getQueuedEvents());
+        bot.destroy();
+    }
+
+    private static Callback callback(Event... events) {
+        Entry entry = new Entry();
+        entry.setId("PAGE");
+        entry.setMessaging(events);
+        Callback callback = new Callback();
+        callback.setObject("page");
+        callback.setEntry(new Entry[]{entry});
+        return callback;
+    }
+
+    /**
+     * @param postbacks sender id and payload of each postback, separated by a space
+     */
+    private static InputStream body(String object, String... postbacks) {
+        StringBuilder messaging = new StringBuilder();
+        for (String postback : postbacks) {
+            String[] fields = postback.split(" ");
+            messaging.append(messaging.length() == 0 ? "" : ",").append("{\"sender\":{\"id\":\"")
+                    .append(fields[0]).append("\"},\"postback\":{\"payload\":\"").append(fields[1]).append("\"}}");
+        }
+        String json = "{\"object\":\"" + object + "\",\"entry\":[{\"id\":\"PAGE\",\"messaging\":[" + messaging + "]}]}";
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Event event(String senderId, String payload) {
+        return new Event().setSender(new User().setId(senderId)).setPostback(new Postback().setPayload(payload));
+    }
+
+    public static class TestBot extends Bot {
+        final List<String> processed = new CopyOnWriteArrayList<>();
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Semaphore done = new Semaphore(0);
+        /**
+         * Postbacks of payload {@code meet} wait for each other on it, which they can only if processed
+         * in parallel.
+         */
+        volatile CyclicBarrier rendezvous;
+
+        @Override
+        public String getFbToken() {
+            return "fb-token";
+        }
+
+        @Override
+        public String getPageAccessToken() {
+            return "page-token";
+        }
+
+        @Controller(events = EventType.POSTBACK)
+        public void onPostback(Event event) throws Exception {
+            if ("block".equals(event.getPostback().getPayload())) {
+                blocked.countDown();
+                unblock.await(5, TimeUnit.SECONDS);
+            } else if ("meet".equals(event.getPostback().getPayload())) {
+                rendezvous.await(5, TimeUnit.SECONDS);
+            }
+            threads.add(Thread.currentThread().getName());
+            processed.add(event.getSender().getId() + " " + event.getPostback().getPayload());
+            done.release();
+        }
+
+        List<String> processedBy(String sender) {
+            List<String> events = new ArrayList<>();
+            for (String processed : this.processed) {
+                if (processed.startsWith(sender + " ")) {
+                    events.add(processed);
+                }
+            }
+            return events;
+        }
+
+        void awaitProcessed(int count) throws InterruptedException {
+            assertTrue(done.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+    }
+}
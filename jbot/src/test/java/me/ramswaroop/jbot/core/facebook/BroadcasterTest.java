@@ -0,0 +1,150 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.common.ManualScheduler;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class BroadcasterTest {
+
+    private final CountDownLatch sending = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void retriesWhenThrottledAndResumesFromTheCheckpoint() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RestTemplate restTemplate = new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType,
+                                                       Object... uriVariables) {
+                if (calls.incrementAndGet() == 1) {
+                    throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Bad Request",
+                            "{\"error\":{\"code\":613}}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                }
+                return null;
+            }
+        };
+        Path dir = Files.createTempDirectory("broadcast");
+        List<String> recipients = Arrays.asList("1", "2", "3", "4", "5");
+        Broadcaster broadcaster = new Broadcaster(restTemplate, "https://graph.facebook.com/me/messages", 2);
+
+        Broadcaster.Report report = broadcaster.start(broadcast(recipients, dir)).get(10, TimeUnit.SECONDS);
+        assertEquals(5, report.getSent());
+        assertEquals(1, report.getThrottled());
+        assertTrue(report.isCompleted());
+        assertEquals(6, calls.get());
+        List<String> results = Files.readAllLines(dir.resolve("results.tsv"));
+        assertEquals(5, results.size());
+        assertEquals("5", Files.readAllLines(dir.resolve("checkpoint")).get(0));
+
+        report = broadcaster.start(broadcast(recipients, dir)).get(10, TimeUnit.SECONDS);
+        assertEquals(5, report.getSkipped());
+        assertEquals(6, calls.get());
+    }
+
+    @Test
+    public void reportsWhatWasSentWhenStoppedAndFlushesTheResultsInBetween() throws Exception {
+        ManualScheduler timer = new ManualScheduler();
+        Broadcaster broadcaster = new Broadcaster(blockingOnSecondMessage(),
+                "https://graph.facebook.com/me/messages", 1, timer);
+        Path dir = Files.createTempDirectory("broadcast");
+        List<String> recipients = Arrays.asList("1", "2", "3", "4", "5");
+        Broadcast broadcast = broadcast(recipients, dir);
+
+        CompletableFuture<Broadcaster.Report> future = broadcaster.start(broadcast);
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        timer.runNext(); // flush
+        assertEquals(Collections.singletonList("0\t1\tok"), Files.readAllLines(dir.resolve("results.tsv")));
+        assertFalse(Files.exists(dir.resolve("checkpoint")));
+
+        assertTrue(broadcaster.stop(broadcast));
+        release.countDown();
+        Broadcaster.Report report = future.get(5, TimeUnit.SECONDS);
+        assertFalse(report.isCompleted());
+        assertEquals(2, report.getSent()); // the message in flight is answered
+        assertEquals("2", Files.readAllLines(dir.resolve("checkpoint")).get(0));
+        assertFalse(broadcaster.stop(broadcast));
+
+        report = broadcaster.start(broadcast(recipients, dir)).get(5, TimeUnit.SECONDS);
+        assertTrue(report.isCompleted());
+        assertEquals(2, report.getSkipped());
+        assertEquals(3, report.getSent());
+        broadcaster.shutdown();
+    }
+
+    @Test
+    public void stopsTheBroadcastsOnShutdown() throws Exception {
+        Broadcaster broadcaster = new Broadcaster(blockingOnSecondMessage(),
+                "https://graph.facebook.com/me/messages", 1);
+        Path dir = Files.createTempDirectory("broadcast");
+
+        CompletableFuture<Broadcaster.Report> future = broadcaster.start(broadcast(Arrays.asList("1", "2", "3"),
+                dir));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        Thread shutdown = new Thread(broadcaster::shutdown);
+        shutdown.start();
+        while (shutdown.getState() != Thread.State.TIMED_WAITING) { // waits for the broadcast to stop
+            Thread.yield();
+        }
+        release.countDown();
+        shutdown.join();
+        Broadcaster.Report report = future.get(5, TimeUnit.SECONDS);
+        assertFalse(report.isCompleted());
+        assertEquals(2, report.getSent());
+        assertEquals("2", Files.readAllLines(dir.resolve("checkpoint")).get(0));
+    }
+
+    /**
+     * Counts {@link #sending} down on the second message, and holds it until {@link #release} is.
+     */
+    private RestTemplate blockingOnSecondMessage() {
+        AtomicInteger calls = new AtomicInteger();
+        return new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> postForEntity(String url, Object request, Class<T> responseType,
+                                                       Object... uriVariables) {
+                if (calls.incrementAndGet() == 2) {
+                    sending.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static Broadcast broadcast(List<String> recipients, Path dir) {
+        return new Broadcast.Builder()
+                .recipients(recipients.iterator())
+                .message(new Message().setText("Hello!"))
+                .messagesPerSecond(1000)
+                .checkpointFile(dir.resolve("checkpoint"))
+                .resultFile(dir.resolve("results.tsv"))
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class CallbackReaderTest {
+
+    private static final String CALLBACK = "{\"object\":\"page\",\"entry\":[{\"id\":\"1854538851225832\"," +
+            "\"time\":1520772895257,\"messaging\":[{\"sender\":{\"id\":\"1\"},\"postback\":{\"payload\":\"hi\"}}," +
+            "{\"sender\":{\"id\":\"2\"},\"message\":{\"text\":\"hello\"}}]},{\"id\":\"1854538851225832\"," +
+            "\"messaging\":[{\"sender\":{\"id\":\"3\"},\"read\":{\"watermark\":1}}]}]}";
+
+    @Test
+    public void verifiesTheSignatureAndReadsEachEvent() throws Exception {
+        byte[] body = CALLBACK.getBytes(StandardCharsets.UTF_8);
+        CallbackReader reader = new CallbackReader("app_secret");
+
+        assertNull(reader.read(new ByteArrayInputStream(body), "sha256=00"));
+        byte[] read = reader.read(new ByteArrayInputStream(body), "sha256=" + sign(body, "app_secret"));
+
+        List<Event> events = new ArrayList<>();
+        assertTrue(reader.readEvents(read, events::add));
+        assertEquals(3, events.size());
+        assertEquals("hi", events.get(0).getPostback().getPayload());
+        assertEquals("hello", events.get(1).getMessage().getText());
+        assertEquals("3", events.get(2).getSender().getId());
+    }
+
+    @Test
+    public void countsTheEventsOfPageCallbacks() throws Exception {
+        CallbackReader reader = new CallbackReader(null);
+        assertEquals(3, reader.countEvents(CALLBACK.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, reader.countEvents(CALLBACK.replace("\"page\"", "\"user\"").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String sign(byte[] body, String secret) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : mac.doFinal(body)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
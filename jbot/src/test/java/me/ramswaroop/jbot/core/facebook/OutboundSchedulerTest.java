@@ -0,0 +1,100 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class OutboundSchedulerTest {
+
+    @Test
+    public void sendsInOrderPerRecipientWithinThePageLimit() throws Exception {
+        OutboundScheduler scheduler = new OutboundScheduler(10, 1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> firstResponse = new CompletableFuture<>();
+
+        CompletableFuture<String> first = scheduler.submit("page", "1", () -> {
+            sent.add("1:first");
+            return firstResponse;
+        });
+        CompletableFuture<String> second = scheduler.submit("page", "1", () -> {
+            sent.add("1:second");
+            return CompletableFuture.completedFuture("second");
+        });
+        CompletableFuture<String> other = scheduler.submit("page", "2", () -> {
+            sent.add("2:other");
+            return CompletableFuture.completedFuture("other");
+        });
+
+        Thread.sleep(100);
+        assertEquals(1, sent.size()); // one message in flight for the page
+        assertEquals(2, scheduler.getQueued());
+
+        firstResponse.complete("first");
+        assertEquals("first", first.get(1, TimeUnit.SECONDS));
+        assertEquals("other", other.get(1, TimeUnit.SECONDS));
+        assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        // recipient 2 waited first, so it goes before the second message to recipient 1
+        assertEquals("1:first", sent.get(0));
+        assertEquals("2:other", sent.get(1));
+        assertEquals("1:second", sent.get(2));
+        Thread.sleep(50);
+        assertEquals(0, scheduler.getRecipients());
+        scheduler.destroy();
+    }
+
+    @Test
+    public void servesThePagesInTurnWithinTheOverallLimit() throws Exception {
+        OutboundScheduler scheduler = new OutboundScheduler(3, 1);
+        BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        Map<String, CompletableFuture<String>> responses = new ConcurrentHashMap<>();
+        List<CompletableFuture<String>> submitted = new ArrayList<>();
+        for (String message : new String[]{"A/1", "A/2", "B/1", "C/1", "D/1"}) {
+            responses.put(message, new CompletableFuture<>());
+            String[] pageAndRecipient = message.split("/");
+            submitted.add(scheduler.submit(pageAndRecipient[0], pageAndRecipient[1], () -> {
+                sent.add(message);
+                return responses.get(message);
+            }));
+        }
+        Set<String> first = new HashSet<>(); // sent in parallel
+        for (int i = 0; i < 3; i++) {
+            first.add(sent.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("A/1", "B/1", "C/1")), first);
+        assertEquals(3, scheduler.getInFlight());
+
+        responses.get("B/1").complete("ok"); // page A is still full, D goes
+        assertEquals("D/1", sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(3, scheduler.getInFlight());
+        assertEquals(1, scheduler.getQueued());
+
+        responses.get("A/1").complete("ok");
+        assertEquals("A/2", sent.poll(5, TimeUnit.SECONDS));
+        for (CompletableFuture<String> response : responses.values()) {
+            response.complete("ok");
+        }
+        for (CompletableFuture<String> future : submitted) {
+            assertEquals("ok", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(0, scheduler.getRecipients());
+        scheduler.destroy();
+    }
+}
@@ -0,0 +1,38 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.facebook.models.Attachment;
+import me.ramswaroop.jbot.core.facebook.models.Button;
+import me.ramswaroop.jbot.core.facebook.models.Message;
+import me.ramswaroop.jbot.core.facebook.models.Payload;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class TemplateRegistryTest {
+
+    @Test
+    public void splicesRecipientAndPlaceholders() throws Exception {
+        TemplateRegistry templates = new TemplateRegistry();
+        templates.register("welcome", new Message().setAttachment(new Attachment().setType("template")
+                .setPayload(new Payload().setTemplateType("button").setText("Hi {{name}}, pick one")
+                        .setButtons(new Button[]{new Button().setType("postback").setTitle("Go")
+                                .setPayload("go")}))));
+
+        JsonNode body = new ObjectMapper().readTree(templates.render("welcome", "1373801119391393",
+                Collections.singletonMap("name", "Jane \"JJ\"")));
+
+        assertEquals("RESPONSE", body.path("messaging_type").asText());
+        assertEquals("1373801119391393", body.path("recipient").path("id").asText());
+        JsonNode payload = body.path("message").path("attachment").path("payload");
+        assertEquals("Hi Jane \"JJ\", pick one", payload.path("text").asText());
+        assertEquals("go", payload.path("buttons").get(0).path("payload").asText());
+    }
+}
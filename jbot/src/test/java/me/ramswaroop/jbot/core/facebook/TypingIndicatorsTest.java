@@ -0,0 +1,92 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.common.ManualScheduler;
+import me.ramswaroop.jbot.core.facebook.models.Event;
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class TypingIndicatorsTest {
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<String> actions = new CopyOnWriteArrayList<>();
+    private final User user = new User().setId("1373801119391393");
+
+    @Test
+    public void skipsIndicatorsMadeRedundantByTheReply() {
+        TypingIndicators indicators = new TypingIndicators(this::record, 100, scheduler);
+
+        indicators.typingOn(user);
+        indicators.messageSent(user); // replied within the window, nothing to send
+        assertTrue(scheduler.tasks.isEmpty());
+        assertEquals(0, actions.size());
+
+        indicators.typingOn(user);
+        indicators.typingOn(user);
+        assertEquals(1, scheduler.tasks.size());
+        scheduler.runNext(); // the window is over
+        indicators.messageSent(user); // no typing_off needed
+        assertEquals("[typing_on]", actions.toString());
+        assertEquals(3, indicators.getCollapsed());
+        assertEquals(1, indicators.getSent());
+    }
+
+    @Test
+    public void sendsTypingOffOnlyOnceTheIndicatorIsShown() {
+        TypingIndicators indicators = new TypingIndicators(this::record, 100, scheduler);
+
+        indicators.typingOn(user);
+        indicators.typingOff(user); // the on never went out
+        assertEquals(0, actions.size());
+
+        indicators.typingOn(user);
+        scheduler.runNext();
+        assertEquals(Long.valueOf(20000), scheduler.delays.get(scheduler.delays.size() - 1)); // expires
+        indicators.typingOff(user);
+        assertEquals("[typing_on, typing_off]", actions.toString());
+        assertEquals(1, indicators.getCollapsed());
+    }
+
+    @Test
+    public void queuesIndicatorsBehindTheMessagesToTheRecipient() throws Exception {
+        OutboundScheduler outbound = new OutboundScheduler(10, 10);
+        BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        CompletableFuture<Object> messageResponse = new CompletableFuture<>();
+        TypingIndicators indicators = new TypingIndicators(action -> outbound.submit("page",
+                action.getRecipient().getId(), () -> {
+                    sent.add(action.getSenderAction());
+                    return CompletableFuture.completedFuture(null);
+                }), 100, scheduler);
+
+        outbound.submit("page", user.getId(), () -> {
+            sent.add("message");
+            return messageResponse;
+        });
+        assertEquals("message", sent.poll(5, TimeUnit.SECONDS));
+        indicators.typingOn(user);
+        scheduler.runNext();
+        assertEquals(1, outbound.getQueued()); // waits for the message to be answered
+
+        messageResponse.complete("ok");
+        assertEquals("typing_on", sent.poll(5, TimeUnit.SECONDS));
+        outbound.destroy();
+    }
+
+    private CompletableFuture<?> record(Event action) {
+        actions.add(action.getSenderAction());
+        return CompletableFuture.completedFuture(null);
+    }
+}
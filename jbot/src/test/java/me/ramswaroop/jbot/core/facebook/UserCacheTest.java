@@ -0,0 +1,90 @@
+package me.ramswaroop.jbot.core.facebook;
+
+import me.ramswaroop.jbot.core.facebook.models.User;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class UserCacheTest {
+
+    @Test
+    public void sharesConcurrentLookupsAndRemembersUnknownUsers() throws Exception {
+        UserCache cache = new UserCache(100, 3600, 60);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread first = new Thread(() -> cache.get("1", () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new User().setId("1");
+        }));
+        first.start();
+        loading.await();
+        Thread second = new Thread(() -> cache.get("1", () -> {
+            calls.incrementAndGet();
+            return new User().setId("1");
+        }));
+        second.start();
+        while (cache.getCoalesced() == 0) { // the second lookup waits for the first call
+            Thread.yield();
+        }
+        release.countDown();
+        first.join();
+        second.join();
+        assertEquals("1", cache.get("1", () -> null).getId());
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getCoalesced());
+        assertEquals(1, cache.getHits());
+
+        int errors = 0;
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("2", () -> {
+                    calls.incrementAndGet();
+                    throw new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Bad Request",
+                            "{\"error\":{\"code\": 100}}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                });
+            } catch (HttpClientErrorException e) {
+                assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+                errors++;
+            }
+        }
+        assertEquals(2, errors);
+        assertEquals(2, calls.get());
+        cache.shutdown();
+    }
+
+    @Test
+    public void keepsTheProfilesInUseWhenFull() {
+        UserCache cache = new UserCache(100, 3600, 0);
+        AtomicInteger hotCalls = new AtomicInteger();
+        for (int i = 0; i < 10000; i++) {
+            String id = "cold-" + i;
+            cache.get(id, () -> new User().setId(id));
+            assertEquals("hot", cache.get("hot", () -> {
+                hotCalls.incrementAndGet();
+                return new User().setId("hot");
+            }).getId());
+        }
+        assertEquals(1, hotCalls.get());
+        assertEquals(100, cache.size());
+        assertEquals(9901, cache.getEvictions());
+        cache.shutdown();
+    }
+}
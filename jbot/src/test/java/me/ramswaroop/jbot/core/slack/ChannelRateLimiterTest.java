@@ -0,0 +1,153 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class ChannelRateLimiterTest {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long HOUR_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void releasesABurstThenOneMessagePerInterval() {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(HOUR_MILLIS, 2, 100, 10, false, clock::get);
+        assertTrue(limiter.submit(message("C1", "a"), this::send));
+        clock.addAndGet(HOUR_NANOS / 2);
+        assertTrue(limiter.submit(message("C2", "b"), this::send));
+        assertTrue(limiter.submit(message("C1", "c"), this::send)); // second of the burst
+        clock.addAndGet(HOUR_NANOS / 10);
+        assertTrue(limiter.submit(message("C1", "d"), this::send)); // 0.4h early
+        assertEquals(3, sent.size());
+        assertEquals(1, limiter.getDelayedMessages());
+        limiter.shutdown();
+    }
+
+    @Test
+    public void conformsOnceTheTheoreticalArrivalTimeIsReached() {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(HOUR_MILLIS, 2, 100, 10, false, clock::get);
+        limiter.submit(message("C1", "a"), this::send); // tat 1h
+        clock.addAndGet(HOUR_NANOS / 2);
+        limiter.submit(message("C1", "b"), this::send); // tat 2h
+        clock.addAndGet(HOUR_NANOS / 2);
+        limiter.submit(message("C1", "c"), this::send); // 2h - 1h of tolerance, conforms exactly
+        assertEquals(3, sent.size());
+        assertEquals(0, limiter.getDelayedMessages());
+        limiter.shutdown();
+    }
+
+    @Test
+    public void releasesQueuedMessagesInOrder() throws Exception {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(10, 1, 100, 10, false);
+        CountDownLatch released = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.submit(message("C1", "m" + i), message -> {
+                send(message);
+                released.countDown();
+                return true;
+            }));
+        }
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        assertEquals(4, limiter.getDelayedMessages());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("m" + i, sent.get(i));
+        }
+        limiter.shutdown();
+    }
+
+    @Test
+    public void mergesQueuedMessagesAndBoundsTheQueue() {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(HOUR_MILLIS, 1, 100, 2, true, clock::get);
+        List<ChannelRateLimiter.Sender> merged = new ArrayList<>();
+        ChannelRateLimiter.Sender waiting = new ChannelRateLimiter.Sender() {
+            @Override
+            public boolean send(Message message) {
+                return ChannelRateLimiterTest.this.send(message);
+            }
+
+            @Override
+            public void merged(ChannelRateLimiter.Sender next) {
+                merged.add(next);
+            }
+        };
+        Message queued = message("C1", "b");
+        assertTrue(limiter.submit(message("C1", "a"), this::send));
+        assertTrue(limiter.submit(queued, waiting));
+        assertTrue(limiter.submit(message("C1", "c"), this::send));
+        assertEquals("b\nc", queued.getText());
+        assertEquals(1, merged.size());
+        assertEquals(1, limiter.getMergedMessages());
+
+        Message attachment = message("C1", null); // can't be merged
+        assertTrue(limiter.submit(attachment, this::send));
+        assertFalse(limiter.submit(message("C1", null), this::send));
+        assertEquals(1, limiter.getRejectedMessages());
+        assertEquals(1, sent.size());
+        limiter.shutdown();
+    }
+
+    @Test
+    public void keepsAtMostMaxTrackedChannels() {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(HOUR_MILLIS, 1, 2, 10, false, clock::get);
+        limiter.submit(message("C1", "a"), this::send);
+        limiter.submit(message("C2", "b"), this::send);
+        clock.addAndGet(2 * HOUR_NANOS);
+        limiter.submit(message("C3", "c"), this::send); // C1 and C2 are idle
+        assertEquals(1, limiter.getTrackedChannels());
+
+        limiter.submit(message("C4", "d"), this::send);
+        assertFalse(limiter.submit(message("C5", "e"), this::send)); // C3 and C4 are not idle
+        assertEquals(2, limiter.getTrackedChannels());
+        assertEquals(4, sent.size());
+
+        limiter.submit(message("C4", "f"), this::send); // queued
+        clock.addAndGet(HOUR_NANOS);
+        assertTrue(limiter.submit(message("C5", "g"), this::send)); // C3 is idle
+        assertFalse(limiter.submit(message("C6", "h"), this::send)); // C4 has a message queued
+        assertEquals(2, limiter.getTrackedChannels());
+        assertEquals(5, sent.size());
+        assertEquals(2, limiter.getRejectedMessages());
+        limiter.shutdown();
+    }
+
+    @Test
+    public void rejectsMessagesOnceShutdown() {
+        ChannelRateLimiter limiter = new ChannelRateLimiter(HOUR_MILLIS, 1, 100, 10, false, clock::get);
+        assertTrue(limiter.submit(message("C1", "a"), this::send));
+        assertTrue(limiter.submit(message("C1", "b"), this::send)); // queued
+        limiter.shutdown();
+        assertFalse(limiter.submit(message("C1", "c"), this::send));
+        assertFalse(limiter.submit(message("C2", "d"), this::send));
+        assertEquals(1, sent.size());
+        assertEquals(2, limiter.getRejectedMessages());
+        assertEquals(0, limiter.getTrackedChannels());
+    }
+
+    private boolean send(Message message) {
+        sent.add(message.getText());
+        return true;
+    }
+
+    private static Message message(String channel, String text) {
+        Message message = new Message(text);
+        message.setChannel(channel);
+        return message;
+    }
+}
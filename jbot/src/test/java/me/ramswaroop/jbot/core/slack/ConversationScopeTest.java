@@ -0,0 +1,108 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.Controller;
+import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class ConversationScopeTest {
+
+    @Test
+    public void keysEventsByChannelThreadAndUser() {
+        Event message = event("U1", "1.1", null, "hi");
+        assertEquals("C1", ConversationScope.CHANNEL.key(message));
+        assertEquals("C1/U1", ConversationScope.CHANNEL_USER.key(message));
+        assertEquals("C1/1.1/", ConversationScope.THREAD.key(message));
+        assertEquals("C1/1.1/U1", ConversationScope.THREAD_USER.key(message));
+
+        Event reply = event("U2", "1.5", "1.1", "hi");
+        assertEquals("C1/1.1/", ConversationScope.THREAD.key(reply));
+        assertEquals("C1/1.1/U2", ConversationScope.THREAD_USER.key(reply));
+
+        Event noUser = event(null, "1.1", null, "hi");
+        assertNull(ConversationScope.CHANNEL_USER.key(noUser));
+        assertNull(ConversationScope.THREAD_USER.key(noUser));
+        noUser.setChannelId(null);
+        assertNull(ConversationScope.CHANNEL.key(noUser));
+    }
+
+    @Test
+    public void runsConversationsOfDifferentUsersInAThreadSideBySide() {
+        TestBot bot = new TestBot();
+        bot.handleEvent(null, event("U1", "1.1", null, "order"));
+        bot.handleEvent(null, event("U2", "1.2", "1.1", "order"));
+        bot.handleEvent(null, event("U1", "1.3", "1.1", "pizza"));
+        bot.handleEvent(null, event("U1", "2.0", null, "pasta")); // not in the thread
+        bot.handleEvent(null, event("U2", "1.4", "1.1", "pasta"));
+        bot.handleEvent(null, event("U1", "1.5", "1.1", "pasta")); // the conversation of U1 is over
+
+        assertEquals("[U1 order, U2 order, U1 ordered pizza, U2 ordered pasta]", bot.handled.toString());
+    }
+
+    @Test
+    public void repliesWithoutAHeartbeatService() throws Exception {
+        TestBot bot = new TestBot(); // no Spring context, as in the tests of the bots
+        RecordingSession session = new RecordingSession("s1");
+        bot.reply(session, event("U1", "1.1", null, "hi"), "hello");
+        String frame = session.nextSent();
+        assertTrue(frame, frame.contains("\"text\":\"hello\""));
+        bot.destroy();
+    }
+
+    private static Event event(String userId, String ts, String threadTs, String text) {
+        Event event = new Event();
+        event.setType("message");
+        event.setChannelId("C1");
+        event.setUserId(userId);
+        event.setTs(ts);
+        event.setThreadTs(threadTs);
+        event.setText(text);
+        return event;
+    }
+
+    public static class TestBot extends Bot {
+        final List<String> handled = new ArrayList<>();
+
+        TestBot() {
+            slackService = new SlackService();
+            User user = new User();
+            user.setId("UBOT");
+            slackService.setCurrentUser(user);
+        }
+
+        @Override
+        public String getSlackToken() {
+            return "xoxb-test";
+        }
+
+        @Override
+        public Bot getSlackBot() {
+            return this;
+        }
+
+        @Controller(events = EventType.MESSAGE, pattern = "^order$", next = "choose")
+        public void order(WebSocketSession session, Event event) {
+            handled.add(event.getUserId() + " order");
+            startConversation(event, "choose", ConversationScope.THREAD_USER);
+        }
+
+        @Controller(events = EventType.MESSAGE)
+        public void choose(WebSocketSession session, Event event) {
+            handled.add(event.getUserId() + " ordered " + event.getText());
+            stopConversation(event);
+        }
+    }
+}
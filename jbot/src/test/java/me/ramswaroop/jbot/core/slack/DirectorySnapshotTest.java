@@ -0,0 +1,44 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class DirectorySnapshotTest {
+
+    @Test
+    public void writeAppendAndLoad() throws Exception {
+        Path path = Files.createTempDirectory("jbot").resolve("bot.snapshot");
+        User user = new User();
+        user.setId("UEADGH12S");
+        user.setName("SlackBot");
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(path);
+        snapshot.write(user, "dXNlcjpVMDYxTkZUVDI=", Arrays.asList("D1E79BACV", "D0NDSV5B8"));
+        snapshot.append("D2F80CBDW");
+
+        DirectorySnapshot loaded = new DirectorySnapshot(path);
+        assertTrue(loaded.load());
+        assertEquals("UEADGH12S", loaded.getUserId());
+        assertEquals("SlackBot", loaded.getUserName());
+        assertEquals("dXNlcjpVMDYxTkZUVDI=", loaded.getCursor());
+        assertEquals(Arrays.asList("D1E79BACV", "D0NDSV5B8", "D2F80CBDW"), loaded.getImChannelIds());
+    }
+
+    @Test
+    public void loadMissingSnapshot() throws Exception {
+        Path path = Files.createTempDirectory("jbot").resolve("missing.snapshot");
+        assertFalse(new DirectorySnapshot(path).load());
+    }
+}
@@ -0,0 +1,111 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.Controller;
+import me.ramswaroop.jbot.core.common.EventType;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class EventsApiBotTest {
+
+    private final TestBot bot = new TestBot();
+
+    @Test
+    public void dispatchesRetriesOnceAndThreadRepliesAfterTheirChannel() throws Exception {
+        assertEquals(HttpStatus.OK, post(message("Ev1", "1.1", null), null).getStatusCode());
+        assertEquals(HttpStatus.OK, post(message("Ev1", "1.1", null), 1).getStatusCode());
+        assertEquals(HttpStatus.OK, post(message("Ev2", "1.2", "1.1"), null).getStatusCode());
+        assertEquals(HttpStatus.OK, post(message("Ev1", "1.1", null), 2).getStatusCode());
+
+        assertTrue(bot.received.await(5, TimeUnit.SECONDS));
+        assertEquals("[1.1, 1.2]", bot.handled.toString());
+        bot.destroy();
+    }
+
+    @Test
+    public void answersTheUrlVerificationChallenge() {
+        ResponseEntity<String> response = post("{\"type\":\"url_verification\",\"challenge\":\"3eZbrw1a\"}", null);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("3eZbrw1a", response.getBody());
+        bot.destroy();
+    }
+
+    @Test
+    public void rejectsRequestsNotSignedBySlack() {
+        byte[] body = message("Ev1", "1.1", null).getBytes(StandardCharsets.UTF_8);
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String signature = new SlackRequestVerifier("another secret").sign(timestamp, body);
+        assertEquals(HttpStatus.FORBIDDEN, bot.receiveEvent(body, timestamp, signature, null).getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, bot.receiveEvent(body, null, null, null).getStatusCode());
+
+        TestBot unconfigured = new TestBot();
+        unconfigured.signingSecret = "";
+        signature = new SlackRequestVerifier("secret").sign(timestamp, body);
+        assertEquals(HttpStatus.FORBIDDEN, unconfigured.receiveEvent(body, timestamp, signature, null).getStatusCode());
+        assertEquals(0, bot.handled.size() + unconfigured.handled.size());
+        bot.destroy();
+    }
+
+    private ResponseEntity<String> post(String callback, Integer retryNum) {
+        byte[] body = callback.getBytes(StandardCharsets.UTF_8);
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String signature = new SlackRequestVerifier(bot.signingSecret).sign(timestamp, body);
+        return bot.receiveEvent(body, timestamp, signature, retryNum);
+    }
+
+    private static String message(String eventId, String ts, String threadTs) {
+        return "{\"type\":\"event_callback\",\"event_id\":\"" + eventId + "\",\"event\":{\"type\":\"message\","
+                + "\"channel\":\"C1\",\"user\":\"U2\",\"text\":\"hi\",\"ts\":\"" + ts + "\""
+                + (threadTs == null ? "" : ",\"thread_ts\":\"" + threadTs + "\"") + "}}";
+    }
+
+    static class TestBot extends EventsApiBot {
+        final List<String> handled = new CopyOnWriteArrayList<>();
+        final CountDownLatch received = new CountDownLatch(2);
+        String signingSecret = "secret";
+
+        TestBot() {
+            slackService = new SlackService();
+            User user = new User();
+            user.setId("U1");
+            slackService.setCurrentUser(user);
+        }
+
+        @Override
+        public String getSlackToken() {
+            return "xoxb-test";
+        }
+
+        @Override
+        public Bot getSlackBot() {
+            return this;
+        }
+
+        @Override
+        protected String getSigningSecret() {
+            return signingSecret;
+        }
+
+        @Controller(events = EventType.MESSAGE)
+        public void onMessage(WebSocketSession session, Event event) {
+            handled.add(event.getTs());
+            received.countDown();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.File;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uploads go to an interceptor answering them, no connection is opened.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class FileUploadServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger streamed = new AtomicInteger();
+
+    @Test
+    public void keepsAtMostMaxConcurrentUploadsInFlight() throws Exception {
+        FileUploadService service = service();
+        List<CompletableFuture<File>> uploads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = ("report " + i).getBytes(StandardCharsets.UTF_8);
+            uploads.add(service.upload(new FileUpload.Builder()
+                    .token("xoxb")
+                    .channels("C1")
+                    .inputStream(new ByteArrayInputStream(content), "report-" + i + ".txt", content.length)
+                    .build()));
+        }
+        assertEquals(4, service.getInFlight());
+        assertEquals(6, service.getWaiting());
+
+        release.countDown();
+        for (CompletableFuture<File> upload : uploads) {
+            assertEquals("F1", upload.get(5, TimeUnit.SECONDS).getId());
+        }
+        assertTrue("at most 4 uploads in flight, was " + maxConcurrent.get(), maxConcurrent.get() <= 4);
+        assertEquals(0, service.getInFlight());
+        assertEquals(0, service.getWaiting());
+        assertEquals(10, streamed.get());
+    }
+
+    private FileUploadService service() {
+        FileUploadService service = new FileUploadService();
+        service.slackApiEndpoints = new SlackApiEndpoints() {
+            @Override
+            public String getFilesUploadApi() {
+                return "https://slack.test/api/files.upload";
+            }
+        };
+        service.okHttpClient = new OkHttpClient.Builder().addInterceptor(chain -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                Buffer body = new Buffer();
+                chain.request().body().writeTo(body);
+                if (body.readUtf8().contains("report ")) {
+                    streamed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create("{\"ok\":true,\"file\":{\"id\":\"F1\"}}",
+                            MediaType.get("application/json")))
+                    .build();
+        }).build();
+        return service;
+    }
+}
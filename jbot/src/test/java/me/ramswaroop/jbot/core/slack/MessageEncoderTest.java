@@ -0,0 +1,89 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.slack.models.Edited;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class MessageEncoderTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void encodesTextAndWritesSameJsonAsJackson() throws Exception {
+        Message message = new Message("Tom & Jerry <3 \"quotes\" \\ tab\t\nnew line \u0001 \u00fcn\u00efc\u00f6d\u00e9 >");
+        message.setType("message");
+        message.setChannel("D1E79BACV");
+        message.setThreadTs("1482960137.003543");
+        message.setId(-42);
+
+        String frame = MessageEncoder.encode(message);
+
+        Message expected = new Message(MessageEncoder.encodeText(message.getText()));
+        expected.setType("message");
+        expected.setChannel("D1E79BACV");
+        expected.setThreadTs("1482960137.003543");
+        expected.setId(-42);
+        assertEquals(mapper.writeValueAsString(expected), frame);
+        assertEquals("Tom &amp; Jerry &lt;3", mapper.readValue(frame, Message.class).getText().substring(0, 21));
+    }
+
+    @Test
+    public void writesRepliesAndLargeTexts() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("<&>");
+        }
+        Edited edited = new Edited();
+        edited.setTs("1482960137.003543");
+        Message message = new Message(text.toString());
+        message.setReplies(new Edited[]{edited, null});
+
+        String frame = MessageEncoder.encode(message);
+
+        message.setText(MessageEncoder.encodeText(text.toString()));
+        assertEquals(mapper.writeValueAsString(message), frame);
+    }
+
+    @Test
+    public void writesEveryPropertyLikeJackson() throws Exception {
+        Message message = new Message();
+        Message expected = new Message();
+        int property = 0;
+        for (Method setter : Message.class.getMethods()) {
+            if (!setter.getName().startsWith("set") || setter.getParameterCount() != 1) {
+                continue;
+            }
+            Class<?> type = setter.getParameterTypes()[0];
+            Object value;
+            if (type == String.class) {
+                value = setter.getName() + " <&> \"\u001f\u007f\u2028" + property;
+            } else if (type == int.class || type == Integer.class) {
+                value = -property;
+            } else if (type == boolean.class || type == Boolean.class) {
+                value = property % 2 == 0;
+            } else if (type == Edited[].class) {
+                Edited edited = new Edited();
+                edited.setUser("U" + property);
+                value = new Edited[]{edited};
+            } else {
+                throw new AssertionError("No value for " + setter);
+            }
+            setter.invoke(message, value);
+            setter.invoke(expected, value);
+            property++;
+        }
+        expected.setText(MessageEncoder.encodeText(message.getText()));
+
+        assertEquals(mapper.writeValueAsString(expected), MessageEncoder.encode(message));
+        assertEquals(mapper.writeValueAsString(new Message()), MessageEncoder.encode(new Message()));
+    }
+}
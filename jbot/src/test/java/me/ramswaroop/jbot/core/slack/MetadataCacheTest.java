@@ -0,0 +1,93 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Channel;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class MetadataCacheTest {
+
+    @Test
+    public void loadsOnceAndUpdatesOnUserChange() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<User> load = new CompletableFuture<>();
+        MetadataCache cache = new MetadataCache(new SlackWebApiClient() {
+            @Override
+            public CompletableFuture<User> getUserInfo(String slackToken, String userId, Priority priority) {
+                loads.incrementAndGet();
+                return load;
+            }
+        }, "xoxb", 100);
+
+        CompletableFuture<User> first = cache.getUser("U1");
+        CompletableFuture<User> second = cache.getUser("U1");
+        load.complete(user("U1", "ram"));
+        assertEquals("ram", first.get(1, TimeUnit.SECONDS).getName());
+        assertEquals("ram", second.get(1, TimeUnit.SECONDS).getName());
+        assertEquals(1, loads.get());
+
+        Event event = new Event();
+        event.setType("user_change");
+        event.setUser(user("U1", "swaroop"));
+        assertTrue(cache.update(event));
+        assertEquals("swaroop", cache.getUser("U1").get(1, TimeUnit.SECONDS).getName());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void evictsWhenFull() {
+        MetadataCache cache = new MetadataCache(new SlackWebApiClient(), "xoxb", 2);
+        for (int i = 0; i < 5; i++) {
+            Event event = new Event();
+            event.setType("team_join");
+            event.setUser(user("U" + i, "user" + i));
+            cache.update(event);
+        }
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    public void loadsARenamedChannelAgain() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache cache = new MetadataCache(new SlackWebApiClient() {
+            @Override
+            public CompletableFuture<Channel> getConversationInfo(String slackToken, String channelId,
+                                                                  Priority priority) {
+                Channel channel = new Channel();
+                channel.setId(channelId);
+                channel.setName("name" + loads.incrementAndGet());
+                return CompletableFuture.completedFuture(channel);
+            }
+        }, "xoxb", 100);
+        assertEquals("name1", cache.getChannel("C1").get(1, TimeUnit.SECONDS).getName());
+        assertEquals("name1", cache.getChannel("C1").get(1, TimeUnit.SECONDS).getName());
+
+        Event event = new Event();
+        event.setType("channel_rename");
+        event.setChannelId("C1");
+        assertTrue(cache.update(event));
+        assertEquals("name2", cache.getChannel("C1").get(1, TimeUnit.SECONDS).getName());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals("name3", cache.getChannel("C1").get(1, TimeUnit.SECONDS).getName());
+    }
+
+    private static User user(String id, String name) {
+        User user = new User();
+        user.setId(id);
+        user.setName(name);
+        return user;
+    }
+}
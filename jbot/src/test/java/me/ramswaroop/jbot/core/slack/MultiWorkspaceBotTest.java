@@ -0,0 +1,53 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class MultiWorkspaceBotTest {
+
+    @Test
+    public void failsTheRepliesOfSessionsOfNoWorkspace() throws Exception {
+        TestBot bot = new TestBot();
+        RecordingSession session = new RecordingSession("s1");
+        assertNull(bot.getSlackToken(session));
+
+        Message message = new Message("hi");
+        message.setChannel("C1");
+        ReplyTracker.Reply reply = bot.getReplyTracker().newReply();
+        assertFalse(bot.postReply(session, message, reply));
+        try {
+            reply.getFuture().get(1, TimeUnit.SECONDS);
+            fail("reply posted without a token");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SlackReplyException);
+        }
+        bot.destroy();
+    }
+
+    static class TestBot extends MultiWorkspaceBot {
+
+        @Override
+        public Collection<String> getSlackTokens() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Bot getSlackBot() {
+            return this;
+        }
+    }
+}
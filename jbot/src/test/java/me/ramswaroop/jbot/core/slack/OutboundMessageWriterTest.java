@@ -0,0 +1,58 @@
+package me.ramswaroop.jbot.core.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class OutboundMessageWriterTest {
+
+    @Test
+    public void writesFramesInOrder() throws Exception {
+        OutboundMessageWriter writer = new OutboundMessageWriter("test-writer", 100);
+        RecordingSession session = new RecordingSession("s1");
+        for (int i = 0; i < 50; i++) {
+            assertTrue(writer.send(session, "frame-" + i));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("frame-" + i, session.nextSent());
+        }
+        writer.stop();
+    }
+
+    @Test
+    public void doesNotRestartOnceStopped() throws Exception {
+        OutboundMessageWriter writer = new OutboundMessageWriter("test-writer", 100);
+        RecordingSession session = new RecordingSession("s1");
+        assertTrue(writer.send(session, "before"));
+        assertEquals("before", session.nextSent());
+
+        writer.stop();
+        assertFalse(writer.send(session, "after"));
+        assertFalse(writer.sendPing(session, "ping"));
+        writer.start();
+        assertFalse(writer.send(session, "after start"));
+        assertEquals(0, writer.getQueueDepth());
+        assertEquals(3, writer.getFramesRejected());
+        assertNull(session.pollSent());
+    }
+
+    @Test
+    public void dropsFramesOfClosedSessions() throws Exception {
+        OutboundMessageWriter writer = new OutboundMessageWriter("test-writer", 100);
+        RecordingSession closed = new RecordingSession("closed");
+        RecordingSession open = new RecordingSession("open");
+        closed.close();
+        assertTrue(writer.send(closed, "lost"));
+        assertTrue(writer.send(open, "sent"));
+        assertEquals("sent", open.nextSent());
+        assertNull(closed.pollSent());
+        writer.stop();
+    }
+}
@@ -0,0 +1,91 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.ManualScheduler;
+import org.junit.Test;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the {@link ReconnectEngine} with a scheduler which only records the tasks and a manual clock.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class ReconnectEngineTest {
+
+    private final AtomicLong clock = new AtomicLong(1000000);
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final ReconnectEngine engine = new ReconnectEngine(scheduler, clock::get);
+
+    @Test
+    public void backsOffExponentiallyThenOpensTheCircuit() {
+        TestConnection connection = new TestConnection();
+        engine.reconnect(connection, "Test");
+        engine.reconnect(connection, "Test"); // in progress already
+        assertEquals(1, scheduler.tasks.size());
+
+        for (int failures = 0; failures < 5; failures++) {
+            long delay = scheduler.delays.get(failures);
+            assertTrue("delay " + delay + " after " + failures + " failures", delay < 1000L << failures);
+            assertEquals(ReconnectEngine.CircuitState.CLOSED, engine.getCircuitState(connection));
+            scheduler.runNext();
+        }
+        assertEquals(5, connection.attempts);
+        assertEquals(5, connection.getBackoff().getFailures());
+        assertEquals(ReconnectEngine.CircuitState.OPEN, engine.getCircuitState(connection));
+        assertEquals(300000L, (long) scheduler.delays.get(5));
+
+        clock.addAndGet(100000); // woken up early, waits for the rest of the open time
+        scheduler.runNext();
+        assertEquals(5, connection.attempts);
+        assertEquals(200000L, (long) scheduler.delays.get(6));
+
+        clock.addAndGet(200000);
+        assertEquals(ReconnectEngine.CircuitState.HALF_OPEN, engine.getCircuitState(connection));
+        connection.succeed = true;
+        scheduler.runNext(); // the single half open attempt
+        assertEquals(6, connection.attempts);
+        connection.getBackoff().connected(); // hello
+        assertEquals(ReconnectEngine.CircuitState.CLOSED, engine.getCircuitState(connection));
+        assertFalse(connection.getBackoff().isReconnecting());
+
+        scheduler.runNext(); // hello timeout of the attempt, the hello came
+        assertEquals(0, connection.getBackoff().getFailures());
+        assertTrue(scheduler.tasks.isEmpty());
+    }
+
+    @Test
+    public void countsAMissingHelloAsAFailure() {
+        TestConnection connection = new TestConnection();
+        connection.succeed = true;
+        engine.reconnect(connection, "Test");
+        scheduler.runNext();
+        assertEquals(1, connection.attempts);
+        assertEquals(30000L, (long) scheduler.delays.get(1));
+
+        scheduler.runNext(); // no hello in time
+        assertEquals(1, connection.getBackoff().getFailures());
+        assertTrue(connection.getBackoff().isReconnecting());
+        assertTrue(scheduler.delays.get(2) < 2000);
+    }
+
+    private static class TestConnection extends RtmConnection {
+        int attempts;
+        boolean succeed;
+
+        TestConnection() {
+            super("xoxb-test", null, null, new TextWebSocketHandler(), null, null);
+        }
+
+        @Override
+        synchronized boolean reconnectNow(boolean hotStandby) {
+            attempts++;
+            return succeed;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.HashedWheelTimer;
+import me.ramswaroop.jbot.core.slack.models.Error;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class ReplyTrackerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+
+    @Test
+    public void completesOnAckAndFailsOnError() throws Exception {
+        ReplyTracker tracker = new ReplyTracker(4, 10000, timer);
+        ReplyTracker.Reply first = tracker.newReply();
+        ReplyTracker.Reply second = tracker.newReply();
+        int firstId = first.send();
+        int secondId = second.send();
+        assertEquals(firstId + 1, secondId);
+        assertEquals(2, tracker.getPending());
+
+        assertTrue(tracker.acknowledge(ack(firstId, true)));
+        assertEquals(firstId, first.getFuture().get(1, TimeUnit.SECONDS).getReplyTo());
+        assertFalse(tracker.acknowledge(ack(firstId, true)));
+
+        Event error = ack(secondId, false);
+        error.setError(new Error());
+        assertTrue(tracker.acknowledge(error));
+        assertTrue(second.getFuture().isCompletedExceptionally());
+        try {
+            second.getFuture().get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SlackReplyException);
+        }
+        assertEquals(0, tracker.getPending());
+        assertEquals(1, tracker.getAcknowledged());
+        assertEquals(1, tracker.getFailed());
+        assertEquals(1, tracker.getLatencies().getCount());
+        timer.stop();
+    }
+
+    @Test
+    public void timesOut() throws Exception {
+        ReplyTracker tracker = new ReplyTracker(4, 100, timer);
+        ReplyTracker.Reply reply = tracker.newReply();
+        int id = reply.send();
+        try {
+            reply.getFuture().get(2, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(reply.getFuture().isCompletedExceptionally());
+        CountDownLatch counted = new CountDownLatch(1); // the timer runs the timeouts in order
+        timer.newTimeout(counted::countDown, 0, TimeUnit.MILLISECONDS);
+        assertTrue(counted.await(2, TimeUnit.SECONDS));
+        assertEquals(1, tracker.getTimedOut());
+        assertEquals(0, tracker.getPending());
+        assertFalse(tracker.acknowledge(ack(id, true)));
+        timer.stop();
+    }
+
+    @Test
+    public void doesNotTimeOutWhileRateLimited() throws Exception {
+        ReplyTracker tracker = new ReplyTracker(64, 100, timer);
+        ChannelRateLimiter limiter = new ChannelRateLimiter(20, 1, 100, 100, false);
+        List<ReplyTracker.Reply> replies = new ArrayList<>();
+        CountDownLatch acknowledged = new CountDownLatch(15); // counted once the tracker counted the ack
+        for (int i = 0; i < 15; i++) { // the last one is released about 300 ms later
+            ReplyTracker.Reply reply = tracker.newReply();
+            replies.add(reply);
+            Message message = new Message("m" + i);
+            message.setChannel("C1");
+            assertTrue(limiter.submit(message, m -> {
+                boolean waiting = tracker.acknowledge(ack(reply.send(), true));
+                acknowledged.countDown();
+                return waiting;
+            }));
+        }
+        assertTrue(acknowledged.await(5, TimeUnit.SECONDS));
+        for (ReplyTracker.Reply reply : replies) {
+            assertTrue(reply.getFuture().get(5, TimeUnit.SECONDS).isOk());
+        }
+        assertEquals(15, tracker.getAcknowledged());
+        assertEquals(0, tracker.getTimedOut());
+        assertEquals(0, tracker.getFailed());
+        limiter.shutdown();
+        timer.stop();
+    }
+
+    private static Event ack(int replyTo, boolean ok) {
+        Event event = new Event();
+        event.setReplyTo(replyTo);
+        event.setOk(ok);
+        return event;
+    }
+}
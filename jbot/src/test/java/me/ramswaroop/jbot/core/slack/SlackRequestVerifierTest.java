@@ -0,0 +1,45 @@
+package me.ramswaroop.jbot.core.slack;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackRequestVerifierTest {
+
+    private static final byte[] BODY = ("token=xyzz0WbapA4vBCDEFasx0q6G&team_id=T1DC2JH3J&team_domain=testteamnow"
+            + "&channel_id=G8PSS9T3V&channel_name=foobar&user_id=U2CERLKJA&user_name=roadrunner&command=%2Fwebhook-collect"
+            + "&text=&response_url=https%3A%2F%2Fhooks.slack.com%2Fcommands%2FT1DC2JH3J%2F397700885554%2F96rGlfmibIGlgcZRskXaIFfN"
+            + "&trigger_id=398738663015.47445629121.803a0bc887a14d10d2c447fce8b6703c").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void acceptsTheExampleRequestOfTheSlackDocs() {
+        SlackRequestVerifier verifier = new SlackRequestVerifier("8f742231b10e8888abcd99yyyzzz85a5", () -> 1531420618);
+        String signature = "v0=a2114d57b48eac39b9ad189dd8316235a7b4a8d21a10bd27519666489c69b503";
+        assertEquals(signature, verifier.sign("1531420618", BODY));
+        assertTrue(verifier.verify("1531420618", signature, BODY));
+    }
+
+    @Test
+    public void rejectsTamperedStaleOrUnsignedRequests() {
+        SlackRequestVerifier verifier = new SlackRequestVerifier("secret", () -> 1000000);
+        String signature = verifier.sign("1000000", BODY);
+        byte[] tampered = BODY.clone();
+        tampered[0] = 'T';
+        assertFalse(verifier.verify("1000000", signature, tampered));
+        assertFalse(verifier.verify("1000001", signature, BODY));
+        assertFalse(verifier.verify("1000000", null, BODY));
+        assertFalse(verifier.verify("not a number", signature, BODY));
+
+        SlackRequestVerifier later = new SlackRequestVerifier("secret", () -> 1000000 + 301);
+        assertFalse(later.verify("1000000", signature, BODY));
+        assertFalse(new SlackRequestVerifier("", () -> 1000000).verify("1000000", signature, BODY));
+    }
+}
@@ -0,0 +1,79 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.RTM;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackServiceTest {
+
+    @Test
+    public void keepsTheCheckpointWhenTheListingFails() throws Exception {
+        Path dir = Files.createTempDirectory("jbot");
+        Path path = dir.resolve(DigestUtils.md5DigestAsHex("xoxb".getBytes(StandardCharsets.UTF_8)) + ".snapshot");
+        User user = new User();
+        user.setId("UEADGH12S");
+        new DirectorySnapshot(path).write(user, "c1", Arrays.asList("D1E79BACV"));
+
+        CountDownLatch listed = new CountDownLatch(1);
+        Thread[] reconciler = new Thread[1];
+        SlackService service = new SlackService();
+        service.directorySnapshotDir = dir.toString();
+        service.slackApiEndpoints = new SlackApiEndpoints() {
+            @Override
+            public String getRtmConnectApi() {
+                return "rtm.connect";
+            }
+
+            @Override
+            public String getImListApi() {
+                return "conversations.list";
+            }
+        };
+        service.restTemplate = new RestTemplate() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> ResponseEntity<T> getForEntity(String url, Class<T> responseType, Object... uriVariables) {
+                if (url.equals("rtm.connect")) {
+                    RTM rtm = new RTM();
+                    rtm.setSelf(user);
+                    rtm.setUrl("wss://slack.test");
+                    return ResponseEntity.ok((T) rtm);
+                }
+                assertEquals("c1", uriVariables[2]);
+                reconciler[0] = Thread.currentThread();
+                listed.countDown();
+                return ResponseEntity.ok((T) new Event()); // not ok, no channels
+            }
+        };
+
+        service.connectRTM("xoxb");
+        assertTrue(listed.await(5, TimeUnit.SECONDS));
+        reconciler[0].join(5000);
+        assertFalse(reconciler[0].isAlive());
+
+        DirectorySnapshot snapshot = new DirectorySnapshot(path);
+        assertTrue(snapshot.load());
+        assertEquals("c1", snapshot.getCursor());
+        assertEquals(Arrays.asList("D1E79BACV"), snapshot.getImChannelIds());
+        assertEquals(Arrays.asList("D1E79BACV"), service.getImChannelIds());
+    }
+}
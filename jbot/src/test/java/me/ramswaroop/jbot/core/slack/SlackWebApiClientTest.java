@@ -0,0 +1,165 @@
+package me.ramswaroop.jbot.core.slack;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import me.ramswaroop.jbot.core.slack.models.Event;
+import me.ramswaroop.jbot.core.slack.models.Message;
+import me.ramswaroop.jbot.core.slack.models.User;
+import org.junit.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author agent
+ * @since 4.1.2
+ */
+public class SlackWebApiClientTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void coalescesIdenticalReads() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        SlackWebApiClient client = client(new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> exchange(URI url, HttpMethod method, HttpEntity<?> requestEntity,
+                                                  Class<T> responseType) {
+                calls.incrementAndGet();
+                try {
+                    release.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ok(responseType, "{\"ok\":true,\"user\":{\"id\":\"U1\",\"name\":\"ram\"}}");
+            }
+        });
+        CompletableFuture<User> first = client.getUserInfo("xoxb", "U1", SlackWebApiClient.Priority.BACKGROUND);
+        CompletableFuture<User> second = client.getUserInfo("xoxb", "U1", SlackWebApiClient.Priority.BACKGROUND);
+        release.countDown();
+        assertEquals("ram", first.get(1, TimeUnit.SECONDS).getName());
+        assertEquals("U1", second.get(1, TimeUnit.SECONDS).getId());
+        assertEquals(1, calls.get());
+        assertEquals(1, client.getCoalesced());
+        client.destroy();
+    }
+
+    @Test
+    public void doesNotMakeInteractiveReadsWaitForBackgroundOnes() throws Exception {
+        CountDownLatch backgroundSent = new CountDownLatch(1);
+        CountDownLatch releaseBackground = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        SlackWebApiClient client = client(new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> exchange(URI url, HttpMethod method, HttpEntity<?> requestEntity,
+                                                  Class<T> responseType) {
+                if (calls.incrementAndGet() == 1) {
+                    backgroundSent.countDown();
+                    try {
+                        releaseBackground.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return ok(responseType, "{\"ok\":true,\"user\":{\"id\":\"U1\",\"name\":\"ram\"}}");
+            }
+        });
+        CompletableFuture<User> background = client.getUserInfo("xoxb", "U1", SlackWebApiClient.Priority.BACKGROUND);
+        assertTrue(backgroundSent.await(5, TimeUnit.SECONDS));
+        CompletableFuture<User> interactive = client.getUserInfo("xoxb", "U1", SlackWebApiClient.Priority.INTERACTIVE);
+        assertEquals("ram", interactive.get(2, TimeUnit.SECONDS).getName());
+        assertFalse(background.isDone());
+        releaseBackground.countDown();
+        assertEquals("ram", background.get(2, TimeUnit.SECONDS).getName());
+        assertEquals(2, calls.get());
+        assertEquals(0, client.getCoalesced());
+        client.destroy();
+    }
+
+    @Test
+    public void postsToManyChannelsWithoutThrottlingThemAsOne() throws Exception {
+        SlackWebApiClient client = client(new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> exchange(URI url, HttpMethod method, HttpEntity<?> requestEntity,
+                                                  Class<T> responseType) {
+                return ok(responseType, "{\"ok\":true,\"channel\":\"C1\",\"ts\":\"1.2\"}");
+            }
+        });
+        List<CompletableFuture<Event>> posted = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Message message = new Message("hi");
+            message.setChannel("C" + i);
+            posted.add(client.postMessage("xoxb", message, SlackWebApiClient.Priority.INTERACTIVE));
+        }
+        for (CompletableFuture<Event> future : posted) {
+            assertTrue(future.get(2, TimeUnit.SECONDS).isOk());
+        }
+        assertEquals(0, client.getQueued());
+        client.destroy();
+    }
+
+    @Test
+    public void retriesAfterRateLimited() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SlackWebApiClient client = client(new RestTemplate() {
+            @Override
+            public <T> ResponseEntity<T> exchange(URI url, HttpMethod method, HttpEntity<?> requestEntity,
+                                                  Class<T> responseType) {
+                if (calls.incrementAndGet() == 1) {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.set("Retry-After", "1");
+                    throw new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests",
+                            headers, null, null);
+                }
+                return ok(responseType, "{\"ok\":true,\"channel\":\"C1\",\"ts\":\"1.2\"}");
+            }
+        });
+        long start = System.nanoTime();
+        Message message = new Message("hi");
+        message.setChannel("C1");
+        assertEquals("1.2", client.postMessage("xoxb", message, SlackWebApiClient.Priority.INTERACTIVE)
+                .get(5, TimeUnit.SECONDS).getTs());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(2, calls.get());
+        assertEquals(1, client.getRateLimited());
+        client.destroy();
+    }
+
+    private static SlackWebApiClient client(RestTemplate restTemplate) {
+        SlackWebApiClient client = new SlackWebApiClient();
+        client.restTemplate = restTemplate;
+        client.slackApiEndpoints = new SlackApiEndpoints() {
+            @Override
+            public String getWebApi(String method) {
+                return "https://slack.com/api/" + method;
+            }
+        };
+        return client;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<T> ok(Class<T> type, String json) {
+        try {
+            return ResponseEntity.ok((T) mapper.readValue(json, JsonNode.class));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package me.ramswaroop.jbot.core.slack;
+
+import me.ramswaroop.jbot.core.common.ManualScheduler;
+import org.junit.Test;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link SocketModeConnection} with a web socket client which opens {@link RecordingSession}s.
+ *
+ * @author agent
+ * @since 4.1.2
+ */
+public class SocketModeConnectionTest {
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final OutboundMessageWriter ackWriter = new OutboundMessageWriter("test-acks", 100);
+    private final TestClient client = new TestClient();
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch controllerReleased = new CountDownLatch(1);
+    private final SocketModeConnection connection = new SocketModeConnection("xapp-test", new TestSlackService(),
+            client, new TextWebSocketHandler() {
+        @Override
+        protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+            events.add(message.getPayload());
+            controllerReleased.await(5, TimeUnit.SECONDS);
+        }
+    }, ackWriter, scheduler);
+
+    @Test
+    public void acknowledgesTheEnvelopeBeforeTheControllerReturns() throws Exception {
+        assertTrue(connection.start());
+        RecordingSession session = client.sessions.get(0);
+        receive(0, "{\"type\":\"hello\"}");
+        assertTrue(connection.isOpen());
+
+        CompletableFuture<Void> dispatch = CompletableFuture.runAsync(() -> receive(0,
+                "{\"envelope_id\":\"e1\",\"type\":\"events_api\",\"payload\":{\"event\":{\"type\":\"message\"}}}"));
+        assertEquals("{\"envelope_id\":\"e1\"}", session.nextSent());
+        assertFalse(dispatch.isDone()); // the controller is still running
+        controllerReleased.countDown();
+        dispatch.get(5, TimeUnit.SECONDS);
+        assertEquals("[{\"type\":\"message\"}]", events.toString());
+        assertEquals(1, connection.getEnvelopes());
+        connection.stop();
+        ackWriter.stop();
+    }
+
+    @Test
+    public void keepsTheOldConnectionUntilTheNewOneSaysHello() throws Exception {
+        controllerReleased.countDown();
+        assertTrue(connection.start());
+        receive(0, "{\"type\":\"hello\"}");
+        receive(0, "{\"type\":\"disconnect\",\"reason\":\"refresh_requested\"}");
+        scheduler.runLast(); // the refresh
+        assertEquals(2, client.sessions.size());
+
+        receive(0, "{\"envelope_id\":\"e1\",\"type\":\"events_api\",\"payload\":{\"event\":{\"n\":1}}}");
+        assertEquals("{\"envelope_id\":\"e1\"}", client.sessions.get(0).nextSent()); // acked on the old one
+        assertTrue(client.sessions.get(0).isOpen());
+        receive(1, "{\"type\":\"hello\"}");
+        assertFalse(client.sessions.get(0).isOpen());
+        assertTrue(client.sessions.get(1).isOpen());
+        receive(1, "{\"envelope_id\":\"e2\",\"type\":\"events_api\",\"payload\":{\"event\":{\"n\":2}}}");
+        assertEquals("[{\"n\":1}, {\"n\":2}]", events.toString());
+        assertEquals("{\"envelope_id\":\"e2\"}", client.sessions.get(1).nextSent());
+        connection.stop();
+        ackWriter.stop();
+    }
+
+    @Test
+    public void keepsTheOldConnectionIfTheNewOneNeverSaysHello() throws Exception {
+        assertTrue(connection.start());
+        receive(0, "{\"type\":\"hello\"}");
+        receive(0, "{\"type\":\"disconnect\",\"reason\":\"refresh_requested\"}");
+        scheduler.runLast(); // the refresh
+        scheduler.runLast(); // hello timeout of the new connection
+        assertFalse(client.sessions.get(1).isOpen());
+        assertTrue(client.sessions.get(0).isOpen());
+        assertTrue(connection.isOpen());
+        connection.stop();
+        assertFalse(client.sessions.get(0).isOpen());
+        ackWriter.stop();
+    }
+
+    private void receive(int session, String payload) {
+        try {
+            client.handlers.get(session).handleMessage(client.sessions.get(session), new TextMessage(payload));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class TestSlackService extends SlackService {
+        private int urls;
+
+        @Override
+        public String openSocketModeConnection(String appToken) {
+            return "wss://wss.slack.test/link/" + ++urls;
+        }
+    }
+
+    private static class TestClient implements WebSocketClient {
+        final List<WebSocketHandler> handlers = new CopyOnWriteArrayList<>();
+        final List<RecordingSession> sessions = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ListenableFuture<WebSocketSession> doHandshake(WebSocketHandler handler, String uriTemplate,
+                                                             Object... uriVariables) {
+            return doHandshake(handler, null, URI.create(uriTemplate));
+        }
+
+        @Override
+        public ListenableFuture<WebSocketSession> doHandshake(WebSocketHandler handler, WebSocketHttpHeaders headers,
+                                                             URI uri) {
+            RecordingSession session = new RecordingSession(uri.toString());
+            handlers.add(handler);
+            sessions.add(session);
+            SettableListenableFuture<WebSocketSession> future = new SettableListenableFuture<>();
+            future.set(session);
+            return future;
+        }
+    }
+}